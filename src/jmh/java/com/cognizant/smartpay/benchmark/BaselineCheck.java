@@ -0,0 +1,92 @@
+package com.cognizant.smartpay.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH JSON result file against a baseline and exits non-zero when a
+ * benchmark got slower by more than the tolerance.
+ *
+ * Usage: BaselineCheck &lt;result.json&gt; &lt;baseline.json&gt; [tolerance percent]
+ */
+public final class BaselineCheck {
+
+    private BaselineCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path resultFile = Path.of(args[0]);
+        Path baselineFile = Path.of(args[1]);
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        if (!Files.exists(resultFile)) {
+            System.out.println("No benchmark results at " + resultFile + ", nothing to compare");
+            return;
+        }
+        if (!Files.exists(baselineFile)) {
+            System.out.println("No baseline at " + baselineFile + ", copy " + resultFile + " there to create one");
+            return;
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, JsonNode> baseline = index(mapper.readTree(baselineFile.toFile()));
+        Map<String, JsonNode> results = index(mapper.readTree(resultFile.toFile()));
+
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> entry : new TreeMap<>(results).entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("NEW        %s%n", entry.getKey());
+                continue;
+            }
+
+            double old = before.path("primaryMetric").path("score").asDouble();
+            double now = entry.getValue().path("primaryMetric").path("score").asDouble();
+            String unit = entry.getValue().path("primaryMetric").path("scoreUnit").asText();
+
+            // Throughput modes are better when higher, time modes when lower
+            boolean higherIsBetter = "thrpt".equals(entry.getValue().path("mode").asText());
+            double change = old == 0 ? 0 : (now - old) / old * 100;
+            double slowdown = higherIsBetter ? -change : change;
+
+            boolean regressed = slowdown > tolerance;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-10s %s: %.3f -> %.3f %s (%+.1f%%)%n",
+                    regressed ? "REGRESSED" : "OK", entry.getKey(), old, now, unit, change);
+        }
+
+        if (regressions > 0) {
+            System.out.printf("%d benchmark(s) regressed by more than %.1f%%%n", regressions, tolerance);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Results keyed by benchmark name and parameters
+     */
+    private static Map<String, JsonNode> index(JsonNode runs) {
+        Map<String, JsonNode> byKey = new HashMap<>();
+        for (JsonNode run : runs) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText());
+            new TreeMap<>(toMap(run.path("params"))).forEach((name, value) ->
+                    key.append(' ').append(name).append('=').append(value));
+            byKey.put(key.toString(), run);
+        }
+        return byKey;
+    }
+
+    private static Map<String, String> toMap(JsonNode params) {
+        Map<String, String> map = new HashMap<>();
+        params.fields().forEachRemaining(field -> map.put(field.getKey(), field.getValue().asText()));
+        return map;
+    }
+}
@@ -0,0 +1,168 @@
+package com.cognizant.smartpay.benchmark;
+
+import com.cognizant.smartpay.service.ScanFrame;
+import com.cognizant.smartpay.service.ScanFrameListener;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sends the same scan bursts to a running instance over HTTP
+ * (/api/scan/addtocart) and over the binary TCP listener, and prints the
+ * throughput of each. Every sender uses its own lane and fresh random EPCs,
+ * so nothing is dropped as a duplicate before the queue.
+ *
+ * Start the app with app.rfid.listener.enabled=true first.
+ *
+ * Usage: ScanLoadGenerator [host] [http port] [tcp port] [bursts per sender]
+ * [tags per burst] [senders]
+ */
+public final class ScanLoadGenerator {
+
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+
+    private ScanLoadGenerator() {
+    }
+
+    /**
+     * Outcome of one sender
+     */
+    private record Tally(long accepted, long busy, long failed) {
+    }
+
+    /**
+     * One sender's whole run
+     */
+    private interface Sender {
+        Tally send(int sender) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int httpPort = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int tcpPort = args.length > 2 ? Integer.parseInt(args[2]) : 7070;
+        int bursts = args.length > 3 ? Integer.parseInt(args[3]) : 5000;
+        int tagsPerBurst = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+        int senders = args.length > 5 ? Integer.parseInt(args[5]) : 4;
+
+        System.out.printf("%d senders x %d bursts x %d tags%n", senders, bursts, tagsPerBurst);
+
+        run("http", senders, bursts, tagsPerBurst, sender -> http(host, httpPort, sender, bursts, tagsPerBurst));
+        run("tcp", senders, bursts, tagsPerBurst, sender -> tcp(host, tcpPort, sender, bursts, tagsPerBurst));
+    }
+
+    private static void run(String name, int senders, int bursts, int tagsPerBurst, Sender sender) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(senders);
+        try {
+            List<Future<Tally>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < senders; i++) {
+                int index = i;
+                results.add(pool.submit((Callable<Tally>) () -> sender.send(index)));
+            }
+
+            long accepted = 0;
+            long busy = 0;
+            long failed = 0;
+            for (Future<Tally> result : results) {
+                Tally tally = result.get();
+                accepted += tally.accepted();
+                busy += tally.busy();
+                failed += tally.failed();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long total = (long) senders * bursts;
+            System.out.printf("%-5s %8.0f bursts/s %10.0f tags/s  accepted %d, busy %d, failed %d, %.2f s%n",
+                    name, total / seconds, total * tagsPerBurst / seconds, accepted, busy, failed, seconds);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Tally http(String host, int port, int sender, int bursts, int tagsPerBurst) throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        ObjectMapper mapper = new ObjectMapper();
+        Random random = new Random(sender);
+        URI uri = URI.create("http://" + host + ":" + port + "/api/scan/addtocart?laneId=load-http-" + sender);
+
+        long accepted = 0;
+        long busy = 0;
+        long failed = 0;
+        for (int i = 0; i < bursts; i++) {
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(epcs(random, tagsPerBurst))))
+                    .build();
+            int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (status == 200 || status == 202) {
+                accepted++;
+            } else if (status == 429) {
+                busy++;
+            } else {
+                failed++;
+            }
+        }
+        return new Tally(accepted, busy, failed);
+    }
+
+    private static Tally tcp(String host, int port, int sender, int bursts, int tagsPerBurst) throws IOException {
+        Random random = new Random(sender);
+        String laneId = "load-tcp-" + sender;
+
+        long accepted = 0;
+        long busy = 0;
+        long failed = 0;
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+
+            for (int i = 0; i < bursts; i++) {
+                ByteBuffer frame = new ScanFrame(laneId, i, epcs(random, tagsPerBurst)).encode();
+                out.writeInt(frame.remaining());
+                out.write(frame.array(), 0, frame.remaining());
+                out.flush();
+
+                byte status = in.readByte();
+                if (status == ScanFrameListener.ACCEPTED) {
+                    accepted++;
+                } else if (status == ScanFrameListener.BUSY) {
+                    busy++;
+                } else {
+                    failed++;
+                }
+            }
+        }
+        return new Tally(accepted, busy, failed);
+    }
+
+    /**
+     * Random 96-bit EPCs
+     */
+    private static List<String> epcs(Random random, int count) {
+        List<String> epcs = new ArrayList<>(count);
+        byte[] epc = new byte[12];
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(epc);
+            epcs.add(HEX.formatHex(epc));
+        }
+        return epcs;
+    }
+}
@@ -0,0 +1,204 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.SmartPayApplication;
+import com.cognizant.smartpay.dto.BulkRegistrationResponse;
+import com.cognizant.smartpay.dto.FingerprintAuthRequest;
+import com.cognizant.smartpay.dto.RegistrationRequest;
+import com.cognizant.smartpay.entity.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link BiometricService#authenticateFingerprint} against an
+ * embedded H2 database in MySQL mode, with the full Spring context (caches,
+ * filter, gallery, template store) but no web server. Overrides are passed as
+ * command-line arguments so they take precedence over application.properties.
+ *
+ * The gallery is filled with random external scanner templates and one WebAuthn
+ * credential. The scanner probe matches the last enrolled template, which is
+ * the worst case for a first-match search. Challenges are not required, so the
+ * same signed assertion can be replayed on every call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthenticationFlowBenchmark {
+
+    private static final String RP_ID = "20.219.97.165.nip.io";
+    private static final String ORIGIN = "https://" + RP_ID;
+    private static final int TEMPLATE_SIZE = 512;
+
+    @Param({"100", "1000"})
+    int gallerySize;
+
+    private ConfigurableApplicationContext context;
+    private BiometricService biometricService;
+
+    private FingerprintAuthRequest scannerRequest;
+    private FingerprintAuthRequest webAuthnRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Path store = Path.of("target", "jmh-templates-" + gallerySize + ".dat");
+        Files.deleteIfExists(store);
+
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        context = new SpringApplicationBuilder(SmartPayApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:bench" + gallerySize + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.cognizant.smartpay=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+                        "--app.webauthn.rp-id=" + RP_ID,
+                        "--app.webauthn.allowed-origins=" + ORIGIN,
+                        "--app.webauthn.require-challenge=false",
+                        "--app.biometric.template-store.path=" + store,
+                        // The benchmark schema has no RFID tables
+                        "--app.rfid.tag-cache.refresh-ms=3600000");
+        biometricService = context.getBean(BiometricService.class);
+
+        Random random = new Random(42);
+        List<RegistrationRequest> registrations = new ArrayList<>(gallerySize + 1);
+        byte[] lastTemplate = null;
+        for (int i = 0; i < gallerySize; i++) {
+            lastTemplate = new byte[TEMPLATE_SIZE];
+            random.nextBytes(lastTemplate);
+            registrations.add(registration(i, Map.of(
+                    "method", "external_usb",
+                    "fingerprintTemplate", Base64.getEncoder().encodeToString(lastTemplate))));
+        }
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        KeyPair keyPair = generator.generateKeyPair();
+        String credentialId = "bench-credential-" + gallerySize;
+        registrations.add(registration(gallerySize, Map.of(
+                "method", "webauthn",
+                "credentialId", credentialId,
+                "publicKey", Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()))));
+
+        ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+        BulkRegistrationResponse response = context.getBean(BulkRegistrationService.class).registerAll(
+                new ByteArrayInputStream(objectMapper.writeValueAsBytes(registrations)));
+        if (response.getCreated() != registrations.size()) {
+            throw new IllegalStateException("Seeding failed: " + response.getResults());
+        }
+
+        byte[] probe = lastTemplate.clone();
+        for (int i = 0; i < TEMPLATE_SIZE / 10; i++) {
+            probe[random.nextInt(TEMPLATE_SIZE)] ^= (byte) (1 + random.nextInt(255));
+        }
+        scannerRequest = new FingerprintAuthRequest(
+                Map.of("fingerprintTemplate", Base64.getEncoder().encodeToString(probe)),
+                Map.of("method", "external_usb"));
+
+        webAuthnRequest = new FingerprintAuthRequest(
+                assertion(credentialId, keyPair),
+                Map.of("method", "webauthn"));
+
+        // Fail fast rather than measure the exception path
+        scannerAuthentication();
+        webAuthnAuthentication();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public User scannerAuthentication() {
+        return biometricService.authenticateFingerprint(scannerRequest);
+    }
+
+    @Benchmark
+    public User webAuthnAuthentication() {
+        return biometricService.authenticateFingerprint(webAuthnRequest);
+    }
+
+    private static RegistrationRequest registration(int index, Map<String, Object> fingerprintData) {
+        RegistrationRequest request = new RegistrationRequest();
+        request.setName("Bench User " + index);
+        request.setEmail("bench" + index + "@example.com");
+        request.setInitialWalletBalance(new BigDecimal("1000.00"));
+        request.setFingerprintData(fingerprintData);
+        request.setDeviceType("benchmark");
+        request.setEnrolledAt("2024-01-01T00:00:00Z");
+        return request;
+    }
+
+    /**
+     * A signed assertion as a browser would send it
+     */
+    private static Map<String, Object> assertion(String credentialId, KeyPair keyPair) throws Exception {
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+
+        // rpIdHash || flags (UP, UV) || signature counter; 0 is an authenticator
+        // without a counter, so the same assertion can be measured repeatedly
+        byte[] authenticatorData = ByteBuffer.allocate(37)
+                .put(sha256.digest(RP_ID.getBytes(StandardCharsets.UTF_8)))
+                .put((byte) 0x05)
+                .putInt(0)
+                .array();
+
+        byte[] challenge = new byte[32];
+        new Random(7).nextBytes(challenge);
+        byte[] clientDataJson = ("{\"type\":\"webauthn.get\",\"challenge\":\""
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(challenge)
+                + "\",\"origin\":\"" + ORIGIN + "\",\"crossOrigin\":false}").getBytes(StandardCharsets.UTF_8);
+
+        Signature signer = Signature.getInstance("SHA256withECDSA");
+        signer.initSign(keyPair.getPrivate());
+        signer.update(authenticatorData);
+        signer.update(sha256.digest(clientDataJson));
+
+        return Map.of(
+                "credentialId", credentialId,
+                "authenticatorData", Base64.getEncoder().encodeToString(authenticatorData),
+                "clientDataJSON", Base64.getEncoder().encodeToString(clientDataJson),
+                "signature", Base64.getEncoder().encodeToString(signer.sign()));
+    }
+}
@@ -0,0 +1,152 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.dto.CartItemResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and serializing a large cart, against embedded H2: rows mapped to
+ * two HashMaps each as the cart endpoint used to, rows mapped to records by a
+ * cold {@link CartAggregates} load, and the records of a warm aggregate.
+ *
+ * Run with -prof gc to compare bytes allocated per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CartSerializationBenchmark {
+
+    private static final long USER_ID = 1L;
+
+    private static final String MAP_ROWS_SQL = """
+            SELECT
+                ci.cart_item_id as id,
+                ci.quantity,
+                p.product_id as productId,
+                p.name as productName,
+                p.brand,
+                p.category_id as categoryId,
+                p.selling_price as price,
+                p.mrp,
+                p.unit,
+                p.image_url as imageUrl,
+                ci.subtotal,
+                rt.rfid_tag
+            FROM cart c
+            JOIN cart_items ci ON c.cart_id = ci.cart_id
+            JOIN products p ON ci.product_id = p.product_id
+            LEFT JOIN rfid_tags rt ON p.product_id = rt.product_id
+            WHERE c.user_id = ? AND c.is_active = 1
+            ORDER BY ci.added_at DESC
+            """;
+
+    @Param({"200"})
+    int lines;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private CartAggregates warm;
+    // Nobody subscribes, so nothing is pushed
+    private final CartUpdateStream updates = new CartUpdateStream(100, 0, 1, 10000, 64);
+    // The response stream belongs to the container, as in Spring's message converter
+    private final ObjectMapper objectMapper = new ObjectMapper().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private final OutputStream discard = OutputStream.nullOutputStream();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:cart" + lines + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        jdbcTemplate.execute("""
+                CREATE TABLE products (product_id BIGINT PRIMARY KEY, name VARCHAR(100), brand VARCHAR(100),
+                    category_id VARCHAR(20), selling_price DECIMAL(10, 2), mrp DECIMAL(10, 2), unit VARCHAR(20),
+                    image_url VARCHAR(200))""");
+        jdbcTemplate.execute("CREATE TABLE rfid_tags (rfid_tag VARCHAR(64), product_id BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE cart (cart_id BIGINT PRIMARY KEY, user_id BIGINT, is_active TINYINT)");
+        jdbcTemplate.execute("""
+                CREATE TABLE cart_items (cart_item_id BIGINT PRIMARY KEY, cart_id BIGINT, product_id BIGINT,
+                    quantity INT, subtotal DECIMAL(10, 2), added_at TIMESTAMP)""");
+        jdbcTemplate.execute("CREATE INDEX cart_items_cart ON cart_items (cart_id)");
+        jdbcTemplate.execute("CREATE INDEX rfid_tags_product ON rfid_tags (product_id)");
+
+        jdbcTemplate.update("INSERT INTO cart VALUES (1, ?, 1)", USER_ID);
+        for (int i = 1; i <= lines; i++) {
+            jdbcTemplate.update("INSERT INTO products VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                    i, "Product " + i, "Brand " + (i % 10), String.valueOf(i % 5), 9.99 + i, 12.49 + i, "pc",
+                    "https://cdn.example.com/products/" + i + ".png");
+            jdbcTemplate.update("INSERT INTO rfid_tags VALUES (?, ?)", String.format("E2801160%016X", i), i);
+            jdbcTemplate.update("INSERT INTO cart_items VALUES (?, 1, ?, ?, ?, TIMESTAMPADD(SECOND, ?, NOW()))",
+                    i, i, 1 + i % 3, (9.99 + i) * (1 + i % 3), i);
+        }
+
+        warm = new CartAggregates(jdbcTemplate, updates, Long.MAX_VALUE);
+        warm.items(USER_ID);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public void hashMapRows() throws IOException {
+        List<Map<String, Object>> items = jdbcTemplate.query(MAP_ROWS_SQL, (rs, rowNum) -> {
+            Map<String, Object> item = new HashMap<>();
+            item.put("id", rs.getLong("id"));
+            item.put("userId", USER_ID);
+            item.put("quantity", rs.getInt("quantity"));
+
+            Map<String, Object> product = new HashMap<>();
+            product.put("id", rs.getLong("productId"));
+            product.put("name", rs.getString("productName"));
+            product.put("brand", rs.getString("brand"));
+            product.put("category", rs.getString("categoryId"));
+            product.put("price", rs.getBigDecimal("price"));
+            product.put("mrp", rs.getBigDecimal("mrp"));
+            product.put("unit", rs.getString("unit"));
+            product.put("imageUrl", rs.getString("imageUrl"));
+            product.put("rfidTag", rs.getString("rfid_tag"));
+            item.put("item", product);
+            return item;
+        }, USER_ID);
+        objectMapper.writeValue(discard, items);
+    }
+
+    @Benchmark
+    public void recordRowsColdLoad() throws IOException {
+        List<CartItemResponse> items = new CartAggregates(jdbcTemplate, updates, Long.MAX_VALUE).items(USER_ID);
+        objectMapper.writeValue(discard, items);
+    }
+
+    @Benchmark
+    public void recordsFromAggregate() throws IOException {
+        objectMapper.writeValue(discard, warm.items(USER_ID));
+    }
+}
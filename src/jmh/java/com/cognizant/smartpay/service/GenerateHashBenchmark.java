@@ -0,0 +1,53 @@
+package com.cognizant.smartpay.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SHA-256 hex hashing of enrollment inputs: a WebAuthn credential ID (32 bytes,
+ * base64url) and base64 scanner templates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GenerateHashBenchmark {
+
+    /**
+     * Size of the raw value before base64 encoding
+     */
+    @Param({"32", "512", "1024"})
+    int inputBytes;
+
+    private String input;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        byte[] raw = new byte[inputBytes];
+        new Random(42).nextBytes(raw);
+        input = inputBytes == 32
+                ? Base64.getUrlEncoder().withoutPadding().encodeToString(raw)
+                : Base64.getEncoder().encodeToString(raw);
+    }
+
+    @Benchmark
+    public String generateHash() {
+        return BiometricService.generateHash(input);
+    }
+}
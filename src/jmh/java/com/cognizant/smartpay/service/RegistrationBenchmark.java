@@ -0,0 +1,142 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.SmartPayApplication;
+import com.cognizant.smartpay.dto.BulkRegistrationResponse;
+import com.cognizant.smartpay.dto.RegistrationRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registrations per second through the single-user path behind
+ * POST /api/auth/register ({@link BiometricService#registerNewUser}, one call
+ * per user) and the bulk import behind POST /api/auth/register/bulk
+ * ({@link BulkRegistrationService#registerAll}, one call for the batch).
+ * Both run against embedded H2 in MySQL mode with the full Spring context but
+ * no web server, so the single-user path is not charged for its extra HTTP
+ * round trips. Every invocation registers {@value #ROWS} new users.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegistrationBenchmark {
+
+    private static final int ROWS = 500;
+    private static final int TEMPLATE_SIZE = 512;
+
+    private ConfigurableApplicationContext context;
+    private BiometricService biometricService;
+    private BulkRegistrationService bulkRegistrationService;
+    private ObjectMapper objectMapper;
+
+    private final Random random = new Random(42);
+    private int nextUser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Path store = Path.of("target", "jmh-templates-registration.dat");
+        Files.deleteIfExists(store);
+
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        context = new SpringApplicationBuilder(SmartPayApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:registration;MODE=MySQL;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.cognizant.smartpay=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+                        "--app.webauthn.require-challenge=false",
+                        "--app.biometric.template-store.path=" + store,
+                        // The benchmark schema has no RFID tables
+                        "--app.rfid.tag-cache.refresh-ms=3600000");
+        biometricService = context.getBean(BiometricService.class);
+        bulkRegistrationService = context.getBean(BulkRegistrationService.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public Object singleRegistrations() {
+        Object last = null;
+        for (RegistrationRequest request : nextRegistrations()) {
+            last = biometricService.registerNewUser(request);
+        }
+        return last;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public BulkRegistrationResponse bulkRegistration() throws Exception {
+        BulkRegistrationResponse response = bulkRegistrationService.registerAll(
+                new ByteArrayInputStream(objectMapper.writeValueAsBytes(nextRegistrations())));
+        if (response.getCreated() != ROWS) {
+            throw new IllegalStateException("Bulk registration rejected rows: " + response.getRejected());
+        }
+        return response;
+    }
+
+    /**
+     * Users not registered yet, each with an external scanner template
+     */
+    private List<RegistrationRequest> nextRegistrations() {
+        List<RegistrationRequest> requests = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            int user = nextUser++;
+            byte[] template = new byte[TEMPLATE_SIZE];
+            random.nextBytes(template);
+
+            RegistrationRequest request = new RegistrationRequest();
+            request.setName("Bench User " + user);
+            request.setEmail("register" + user + "@example.com");
+            request.setPhone(String.valueOf(9_000_000_000L + user));
+            request.setInitialWalletBalance(new BigDecimal("1000.00"));
+            request.setFingerprintData(Map.of(
+                    "method", "external_usb",
+                    "fingerprintTemplate", Base64.getEncoder().encodeToString(template)));
+            request.setDeviceType("benchmark");
+            request.setEnrolledAt("2024-01-01T00:00:00Z");
+            requests.add(request);
+        }
+        return requests;
+    }
+}
@@ -0,0 +1,100 @@
+package com.cognizant.smartpay.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Template matching: one 1:1 comparison, and 1:N searches over galleries of
+ * realistic size where the match is the last template or there is none, both
+ * first-match and ranked.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TemplateMatcherBenchmark {
+
+    /**
+     * ISO/IEC 19794-2 minutiae templates are typically a few hundred bytes to 1 KB
+     */
+    @Param({"256", "512", "1024"})
+    int templateSize;
+
+    @Param({"100", "1000", "10000"})
+    int gallerySize;
+
+    private TemplateMatcher matcher;
+    private List<ByteBuffer> gallery;
+    private byte[] probe;
+    private byte[] unknownProbe;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        matcher = new TemplateMatcher(512, 0);
+
+        Random random = new Random(42);
+        gallery = new ArrayList<>(gallerySize);
+        byte[] last = null;
+        for (int i = 0; i < gallerySize; i++) {
+            last = new byte[templateSize];
+            random.nextBytes(last);
+            gallery.add(ByteBuffer.wrap(last).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN));
+        }
+
+        // A fresh capture of the last enrolled finger: about 10% of the bytes differ
+        probe = last.clone();
+        for (int i = 0; i < templateSize / 10; i++) {
+            probe[random.nextInt(templateSize)] ^= (byte) (1 + random.nextInt(255));
+        }
+
+        unknownProbe = new byte[templateSize];
+        random.nextBytes(unknownProbe);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        matcher.shutdown();
+    }
+
+    @Benchmark
+    public int score() {
+        return matcher.score(probe, gallery.get(gallerySize - 1));
+    }
+
+    @Benchmark
+    public Optional<ByteBuffer> identifyLastEnrolled() {
+        return matcher.findFirst(probe, gallery, Function.identity(), 85);
+    }
+
+    @Benchmark
+    public Optional<ByteBuffer> identifyUnknown() {
+        return matcher.findFirst(unknownProbe, gallery, Function.identity(), 85);
+    }
+
+    @Benchmark
+    public TemplateMatcher.Ranking<ByteBuffer> rankLastEnrolled() {
+        return matcher.rank(probe, gallery, Function.identity(), 80, 5);
+    }
+}
@@ -0,0 +1,44 @@
+package com.cognizant.smartpay.config;
+
+import com.cognizant.smartpay.exception.AuthenticationFailedException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Guards /api/admin/** with a shared admin token sent in the X-Admin-Token header.
+ * Fails closed: when app.admin.token is not set, every admin request is rejected.
+ */
+@Component
+@Slf4j
+public class AdminTokenInterceptor implements HandlerInterceptor {
+
+    static final String HEADER = "X-Admin-Token";
+
+    private final byte[] token;
+
+    public AdminTokenInterceptor(@Value("${app.admin.token:}") String token) {
+        this.token = token.isBlank() ? null : token.getBytes(StandardCharsets.UTF_8);
+        if (this.token == null) {
+            log.info("app.admin.token is not set, admin endpoints are locked");
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String presented = request.getHeader(HEADER);
+        if (token == null || presented == null
+                || !MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8))) {
+            log.warn("Rejected admin request {} {} from {}",
+                    request.getMethod(), request.getRequestURI(), request.getRemoteAddr());
+            throw new AuthenticationFailedException("Admin token missing or invalid");
+        }
+        return true;
+    }
+}
@@ -0,0 +1,21 @@
+package com.cognizant.smartpay.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Puts every admin endpoint behind {@link AdminTokenInterceptor}
+ */
+@Configuration
+@RequiredArgsConstructor
+public class AdminWebConfig implements WebMvcConfigurer {
+
+    private final AdminTokenInterceptor adminTokenInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(adminTokenInterceptor).addPathPatterns("/api/admin/**");
+    }
+}
@@ -0,0 +1,12 @@
+package com.cognizant.smartpay.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables scheduled background tasks (stats flushing, cache refresh)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
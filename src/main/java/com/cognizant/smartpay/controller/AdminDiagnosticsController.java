@@ -0,0 +1,59 @@
+package com.cognizant.smartpay.controller;
+
+import com.cognizant.smartpay.service.BiometricService;
+import com.cognizant.smartpay.service.CredentialFilter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin diagnostics. Only registered when app.admin.diagnostics-enabled=true, and
+ * every request must carry the admin token (see AdminTokenInterceptor).
+ */
+@RestController
+@RequestMapping("/api/admin/diagnostics")
+@ConditionalOnProperty(name = "app.admin.diagnostics-enabled", havingValue = "true")
+@Slf4j
+@RequiredArgsConstructor
+public class AdminDiagnosticsController {
+
+    private final BiometricService biometricService;
+    private final CredentialFilter credentialFilter;
+
+    /**
+     * List all stored credential IDs
+     *
+     * GET /api/admin/diagnostics/credentials
+     */
+    @GetMapping("/credentials")
+    public ResponseEntity<?> getCredentialDiagnostics() {
+        List<String> credentialIds = biometricService.getActiveCredentialIds();
+        log.info("Total active credentials: {}", credentialIds.size());
+
+        return ResponseEntity.ok(Map.of(
+                "totalActive", credentialIds.size(),
+                "credentialIds", credentialIds,
+                "filter", credentialFilter.getStats()));
+    }
+
+    /**
+     * Deactivate an enrolled biometric
+     *
+     * DELETE /api/admin/diagnostics/biometrics/{biometricId}
+     */
+    @DeleteMapping("/biometrics/{biometricId}")
+    public ResponseEntity<?> deactivateBiometric(@PathVariable Long biometricId) {
+        log.info("Received deactivation request for biometric: {}", biometricId);
+        biometricService.deactivateBiometric(biometricId);
+        return ResponseEntity.ok(Map.of("success", true, "message", "Biometric deactivated"));
+    }
+}
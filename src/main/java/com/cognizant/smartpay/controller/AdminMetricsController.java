@@ -0,0 +1,93 @@
+package com.cognizant.smartpay.controller;
+
+import com.cognizant.smartpay.service.CartEpcs;
+import com.cognizant.smartpay.service.CartService;
+import com.cognizant.smartpay.service.CredentialCache;
+import com.cognizant.smartpay.service.CredentialFilter;
+import com.cognizant.smartpay.service.LaneSessionRegistry;
+import com.cognizant.smartpay.service.RFIDTagCache;
+import com.cognizant.smartpay.service.ReaderSequences;
+import com.cognizant.smartpay.service.ScanDeduplicator;
+import com.cognizant.smartpay.service.ScanFrameListener;
+import com.cognizant.smartpay.service.ScanIngestQueue;
+import com.cognizant.smartpay.service.TemplateMatcher;
+import com.cognizant.smartpay.service.VerificationStatsWriter;
+import com.cognizant.smartpay.service.WebAuthnVerifier;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Performance counters. They reveal gallery and credential sizes, lane
+ * sessions, watched carts and queue depths, so every request must carry the admin token (see
+ * AdminTokenInterceptor).
+ */
+@RestController
+@RequestMapping("/api/admin/metrics")
+@RequiredArgsConstructor
+public class AdminMetricsController {
+
+    private final TemplateMatcher templateMatcher;
+    private final CredentialCache credentialCache;
+    private final CredentialFilter credentialFilter;
+    private final VerificationStatsWriter verificationStats;
+    private final WebAuthnVerifier webAuthnVerifier;
+    private final RFIDTagCache rfidTagCache;
+    private final ScanDeduplicator scanDeduplicator;
+    private final ScanIngestQueue scanIngestQueue;
+    private final LaneSessionRegistry laneSessionRegistry;
+    private final CartEpcs cartEpcs;
+    private final ReaderSequences readerSequences;
+    // Only present when the binary reader listener is enabled
+    private final ObjectProvider<ScanFrameListener> scanFrameListener;
+    private final CartService cartService;
+
+    /**
+     * Authentication performance counters
+     *
+     * GET /api/admin/metrics/auth
+     */
+    @GetMapping("/auth")
+    public ResponseEntity<Map<String, Object>> getAuthMetrics() {
+        return ResponseEntity.ok(Map.of(
+                "matcher", templateMatcher.getStats(),
+                "credentialCache", credentialCache.getStats(),
+                "credentialFilter", credentialFilter.getStats(),
+                "verificationStats", verificationStats.getStats(),
+                "webauthn", webAuthnVerifier.getStats()));
+    }
+
+    /**
+     * RFID scan path counters
+     *
+     * GET /api/admin/metrics/scan
+     */
+    @GetMapping("/scan")
+    public ResponseEntity<Map<String, Object>> getScanMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("tagCache", rfidTagCache.getStats());
+        metrics.put("dedup", scanDeduplicator.getStats());
+        metrics.put("ingest", scanIngestQueue.getStats());
+        metrics.put("sessions", laneSessionRegistry.getStats());
+        metrics.put("cartEpcs", cartEpcs.getStats());
+        metrics.put("sequences", readerSequences.getStats());
+        scanFrameListener.ifAvailable(listener -> metrics.put("listener", listener.getStats()));
+        return ResponseEntity.ok(metrics);
+    }
+
+    /**
+     * Cart cache and push counters
+     *
+     * GET /api/admin/metrics/cart
+     */
+    @GetMapping("/cart")
+    public ResponseEntity<Map<String, Object>> getCartMetrics() {
+        return ResponseEntity.ok(cartService.getStats());
+    }
+}
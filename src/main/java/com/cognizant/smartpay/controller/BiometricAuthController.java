@@ -3,14 +3,21 @@ package com.cognizant.smartpay.controller;
 import com.cognizant.smartpay.dto.*;
 import com.cognizant.smartpay.entity.User;
 import com.cognizant.smartpay.service.BiometricService;
+import com.cognizant.smartpay.service.BulkRegistrationService;
+import com.cognizant.smartpay.service.WebAuthnVerifier;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+
 /**
  * REST Controller for biometric authentication
  */
@@ -24,8 +31,13 @@ public class BiometricAuthController {
 
     private final JdbcTemplate jdbcTemplate;
     private final BiometricService biometricService;
+    private final BulkRegistrationService bulkRegistrationService;
+    private final WebAuthnVerifier webAuthnVerifier;
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(BiometricAuthController.class);
 
+    private static final int DEFAULT_CREDENTIAL_PAGE = 500;
+    private static final int MAX_CREDENTIAL_PAGE = 5000;
+
     /**
      * Authenticate user with fingerprint
      *
@@ -50,6 +62,16 @@ public class BiometricAuthController {
         }
     }
 
+    /**
+     * Issue a single-use WebAuthn challenge
+     *
+     * POST /api/auth/challenge
+     */
+    @PostMapping("/challenge")
+    public ResponseEntity<?> issueChallenge() {
+        return ResponseEntity.ok(java.util.Map.of("challenge", webAuthnVerifier.issueChallenge()));
+    }
+
     /**
      * Enroll new fingerprint
      *
@@ -103,16 +125,64 @@ public class BiometricAuthController {
     }
 
     /**
-     * Get all registered credential IDs for WebAuthn authentication
+     * Register many users at once from a JSON array of registration requests.
+     * The body is read as a stream; the response has one result per row.
+     *
+     * POST /api/auth/register/bulk
+     */
+    @PostMapping(value = "/register/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkRegistrationResponse> registerUsers(HttpServletRequest request) throws IOException {
+        log.info("Received bulk registration request");
+
+        BulkRegistrationResponse response = bulkRegistrationService.registerAll(request.getInputStream());
+        HttpStatus status = response.getCreated() > 0 ? HttpStatus.CREATED : HttpStatus.OK;
+        return ResponseEntity.status(status).body(response);
+    }
+
+    /**
+     * Get registered credential IDs for WebAuthn authentication
+     *
+     * GET /api/auth/credentials                      - all IDs (legacy list)
+     * GET /api/auth/credentials?after={id}&limit={n} - one page, keyset paginated
+     * GET /api/auth/credentials?since={version}      - IDs added or revoked since a version
      *
-     * GET /api/auth/credentials
+     * Every response carries the credential set version as its ETag. Paged and
+     * delta reads report failures as errors: an empty body would read as a
+     * successful sync with nothing in it. since cannot be combined with after
+     * or limit.
      */
     @GetMapping("/credentials")
-    public ResponseEntity<?> getCredentials() {
+    public ResponseEntity<?> getCredentials(
+            @RequestParam(required = false) String since,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (since != null && (after != null || limit != null)) {
+            throw new IllegalArgumentException("since cannot be combined with after or limit");
+        }
+
+        // The ETag describes the whole set, so individual pages are never answered with 304
+        if (after != null || limit != null) {
+            int pageSize = Math.max(1, Math.min(limit == null ? DEFAULT_CREDENTIAL_PAGE : limit, MAX_CREDENTIAL_PAGE));
+            CredentialPage page = biometricService.getCredentialPage(after, pageSize);
+            return ResponseEntity.ok().eTag(ETags.of(page.getVersion())).body(page);
+        }
+
+        String etag = ETags.of(biometricService.getCredentialVersion());
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        if (since != null) {
+            CredentialDelta delta = biometricService.getCredentialChanges(since);
+            return ResponseEntity.ok().eTag(ETags.of(delta.getVersion())).body(delta);
+        }
+
         try {
             java.util.List<String> credentials = biometricService.getAllActiveCredentials();
-            return ResponseEntity.ok(credentials);
+            return ResponseEntity.ok().eTag(etag).body(credentials);
         } catch (Exception e) {
+            // Legacy list: older kiosks expect an array; without an ETag it is never cached
             log.error("Failed to get credentials", e);
             return ResponseEntity.ok(java.util.Collections.emptyList());
         }
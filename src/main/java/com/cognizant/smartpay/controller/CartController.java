@@ -1,15 +1,29 @@
 package com.cognizant.smartpay.controller;
 
+import com.cognizant.smartpay.dto.CartBatchRequest;
+import com.cognizant.smartpay.dto.CartItemResponse;
+import com.cognizant.smartpay.dto.CartTotalResponse;
+import com.cognizant.smartpay.dto.CartView;
 import com.cognizant.smartpay.service.CartService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
 
 /**
  * REST Controller for cart operations
+ *
+ * Cart reads carry the cart version as their ETag and are answered with 304
+ * when If-None-Match is "*" or lists it, weak or strong. The version is read before the body,
+ * so a body is never older than its ETag. A cart that is not cached is loaded
+ * once and answered 200: a cart loaded now has a new version, so no tag can
+ * match it.
  */
 @RestController
 @RequestMapping("/api/cart")
@@ -23,9 +37,21 @@ public class CartController {
      * GET /api/cart/{userId}
      */
     @GetMapping("/{userId}")
-    public ResponseEntity<?> getCart(@PathVariable Long userId) {
-        List<Map<String, Object>> cartItems = cartService.getCartItems(userId);
-        return ResponseEntity.ok(cartItems);
+    public ResponseEntity<?> getCart(
+            @PathVariable Long userId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Long version = cartService.getCartVersion(userId);
+        if (version == null) {
+            CartView view = cartService.getCartView(userId);
+            return ResponseEntity.ok().eTag(ETags.of(view.version())).body(view.items());
+        }
+        String etag = ETags.of(version);
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        List<CartItemResponse> cartItems = cartService.getCartItems(userId);
+        return ResponseEntity.ok().eTag(etag).body(cartItems);
     }
 
     /**
@@ -33,9 +59,49 @@ public class CartController {
      * GET /api/cart/{userId}/total
      */
     @GetMapping("/{userId}/total")
-    public ResponseEntity<?> getCartTotal(@PathVariable Long userId) {
-        Map<String, Object> total = cartService.getCartTotal(userId);
-        return ResponseEntity.ok(total);
+    public ResponseEntity<?> getCartTotal(
+            @PathVariable Long userId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Long version = cartService.getCartVersion(userId);
+        if (version == null) {
+            CartView view = cartService.getCartView(userId);
+            return ResponseEntity.ok().eTag(ETags.of(view.version())).body(view.total());
+        }
+        String etag = ETags.of(version);
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        CartTotalResponse total = cartService.getCartTotal(userId);
+        return ResponseEntity.ok().eTag(etag).body(total);
+    }
+
+    /**
+     * Get cart items and total for a user in one call
+     * GET /api/cart/{userId}/view
+     */
+    @GetMapping("/{userId}/view")
+    public ResponseEntity<?> getCartView(
+            @PathVariable Long userId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Long version = cartService.getCartVersion(userId);
+        if (version != null && ETags.matches(ifNoneMatch, ETags.of(version))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(ETags.of(version)).build();
+        }
+
+        // Items, total and version are read together, so the ETag is exact
+        CartView view = cartService.getCartView(userId);
+        return ResponseEntity.ok().eTag(ETags.of(view.version())).body(view);
+    }
+
+    /**
+     * Subscribe to cart changes as server-sent events: a "cart" event with the
+     * whole cart, then "delta" events as it changes
+     * GET /api/cart/{userId}/events
+     */
+    @GetMapping(value = "/{userId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(@PathVariable Long userId) {
+        return cartService.subscribe(userId);
     }
 
     /**
@@ -52,6 +118,19 @@ public class CartController {
         return ResponseEntity.ok(Map.of("success", true, "message", "Cart item updated"));
     }
 
+    /**
+     * Update and remove several cart items at once; returns the cart afterwards
+     * POST /api/cart/{userId}/batch
+     */
+    @PostMapping("/{userId}/batch")
+    public ResponseEntity<?> updateCartItems(
+            @PathVariable Long userId,
+            @RequestBody CartBatchRequest request) {
+        cartService.updateCartItems(userId, request);
+        CartView view = cartService.getCartView(userId);
+        return ResponseEntity.ok().eTag(ETags.of(view.version())).body(view);
+    }
+
     /**
      * Remove item from cart
      * DELETE /api/cart/{userId}/item/{cartItemId}
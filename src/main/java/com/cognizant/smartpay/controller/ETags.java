@@ -0,0 +1,42 @@
+package com.cognizant.smartpay.controller;
+
+/**
+ * ETags for versioned resources and If-None-Match handling.
+ */
+final class ETags {
+
+    private ETags() {
+    }
+
+    /**
+     * Strong ETag for a version number
+     */
+    static String of(long version) {
+        return of(String.valueOf(version));
+    }
+
+    static String of(String version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Whether If-None-Match matches the ETag: "*", or any listed tag. Tags are
+     * compared weakly, as RFC 9110 asks for If-None-Match, so a W/ prefix is
+     * ignored.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
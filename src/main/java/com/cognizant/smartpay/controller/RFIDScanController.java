@@ -1,11 +1,16 @@
 package com.cognizant.smartpay.controller;
 
 import com.cognizant.smartpay.service.RFIDScanService;
+import com.cognizant.smartpay.service.ScanIngestQueue;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
@@ -19,9 +24,28 @@ public class RFIDScanController {
     @Autowired
     RFIDScanService rfidScanService;
 
+    @Autowired
+    ScanIngestQueue scanIngestQueue;
+
+    @Value("${app.rfid.ingest.async:true}")
+    boolean asyncIngest;
+
     @PostMapping("/addtocart")
-    public ResponseEntity<?> addScannedProudctToCart(@RequestBody List<String> scannedTags){
-        rfidScanService.processScannedTags(scannedTags);
-        return ResponseEntity.ok(Map.of("success", true, "message", "scanned tag processed success fully"));
+    public ResponseEntity<?> addScannedProudctToCart(@RequestBody List<String> scannedTags,
+                                                     @RequestParam(value = "laneId", required = false) String laneId,
+                                                     @RequestParam(value = "readerId", required = false) String readerId,
+                                                     @RequestParam(value = "sequence", required = false) Long sequence){
+        if (!asyncIngest) {
+            rfidScanService.processScannedTags(laneId, readerId, sequence, scannedTags);
+            return ResponseEntity.ok(Map.of("success", true, "message", "scanned tag processed success fully"));
+        }
+
+        if (!scanIngestQueue.submit(laneId, readerId, sequence, scannedTags)) {
+            // Backpressure: the lane is behind, the reader should resend shortly
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(Map.of("success", false, "message", "scan queue is full, retry shortly"));
+        }
+        return ResponseEntity.accepted().body(Map.of("success", true, "message", "scanned tags queued"));
     }
 }
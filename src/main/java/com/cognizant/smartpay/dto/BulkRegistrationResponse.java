@@ -0,0 +1,24 @@
+package com.cognizant.smartpay.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for bulk registration response
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkRegistrationResponse {
+
+    private int total;
+    private int created;
+    private int rejected;
+    private long elapsedMillis;
+    private List<BulkRegistrationResult> results;
+}
@@ -0,0 +1,27 @@
+package com.cognizant.smartpay.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for the outcome of one row of a bulk registration
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkRegistrationResult {
+
+    /**
+     * Zero-based position of the row in the request
+     */
+    private int index;
+    private String email;
+
+    /**
+     * CREATED, DUPLICATE, INVALID or FAILED
+     */
+    private String status;
+    private Long userId;
+    private String message;
+}
@@ -0,0 +1,34 @@
+package com.cognizant.smartpay.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for several cart line changes applied together
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartBatchRequest {
+
+    /**
+     * New quantities for lines in the cart
+     */
+    private List<QuantityChange> updates;
+
+    /**
+     * Cart item IDs of lines to remove
+     */
+    private List<Long> removals;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class QuantityChange {
+        private Long cartItemId;
+        private Integer quantity;
+    }
+}
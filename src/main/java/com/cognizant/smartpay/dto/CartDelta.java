@@ -0,0 +1,13 @@
+package com.cognizant.smartpay.dto;
+
+import java.util.List;
+
+/**
+ * DTO for the changes to a cart since the last event. Lines are sent whole,
+ * so a kiosk replaces its copy of each changed line and drops removed ones.
+ * When cleared is true the cart was checked out or emptied first. The
+ * version is the cart's after these changes.
+ */
+public record CartDelta(boolean cleared, List<CartItemResponse> changed, List<Long> removed,
+                        CartTotalResponse total, long version) {
+}
@@ -0,0 +1,21 @@
+package com.cognizant.smartpay.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * DTO for one line of a shopper's cart, with the product nested under
+ * {@code item} for frontend compatibility
+ */
+public record CartItemResponse(Long id, Long userId, int quantity, Product item) {
+
+    /**
+     * Product details shown on a cart line
+     */
+    public record Product(Long id, String name, String brand, String category, BigDecimal price,
+                          BigDecimal mrp, String unit, String imageUrl, String rfidTag) {
+    }
+
+    public CartItemResponse withQuantity(int newQuantity) {
+        return new CartItemResponse(id, userId, newQuantity, item);
+    }
+}
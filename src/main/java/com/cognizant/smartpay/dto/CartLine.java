@@ -0,0 +1,10 @@
+package com.cognizant.smartpay.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * DTO for a cart line being paid for, as listed on the invoice
+ */
+public record CartLine(Long cartId, Long productId, int quantity, BigDecimal subtotal,
+                       BigDecimal unitPrice, String productName, String productBrand) {
+}
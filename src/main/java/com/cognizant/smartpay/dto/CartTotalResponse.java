@@ -0,0 +1,14 @@
+package com.cognizant.smartpay.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * DTO for a cart total with breakdown. Prices are inclusive of tax.
+ */
+public record CartTotalResponse(BigDecimal subtotal, BigDecimal discount, BigDecimal tax,
+                                BigDecimal total, int itemCount) {
+
+    public static CartTotalResponse of(BigDecimal subtotal, int itemCount) {
+        return new CartTotalResponse(subtotal, BigDecimal.ZERO, BigDecimal.ZERO, subtotal, itemCount);
+    }
+}
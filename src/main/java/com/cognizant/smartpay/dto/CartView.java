@@ -0,0 +1,9 @@
+package com.cognizant.smartpay.dto;
+
+import java.util.List;
+
+/**
+ * DTO for a whole cart: its lines, newest first, total and version
+ */
+public record CartView(List<CartItemResponse> items, CartTotalResponse total, long version) {
+}
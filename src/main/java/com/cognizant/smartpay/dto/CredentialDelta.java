@@ -0,0 +1,26 @@
+package com.cognizant.smartpay.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for credential changes since a given version
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CredentialDelta {
+
+    private String version;
+
+    /**
+     * True when the requested version is unknown and the kiosk must reload all pages
+     */
+    private Boolean fullResync;
+
+    private List<String> added;
+    private List<String> revoked;
+}
@@ -0,0 +1,24 @@
+package com.cognizant.smartpay.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for one page of active credential IDs
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CredentialPage {
+
+    private String version;
+    private List<String> credentials;
+
+    /**
+     * Cursor for the next page, null on the last page
+     */
+    private Long nextAfter;
+}
@@ -58,6 +58,9 @@ public class Biometric {
     @Column(name = "verification_count", nullable = false)
     private Integer verificationCount = 0;
 
+    @Column(name = "sign_count", nullable = false)
+    private Long signCount = 0L;
+
     @Column(name = "is_active", nullable = false)
     private Boolean isActive = true;
 
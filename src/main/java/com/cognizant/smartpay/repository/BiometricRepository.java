@@ -1,7 +1,9 @@
 package com.cognizant.smartpay.repository;
 
 import com.cognizant.smartpay.entity.Biometric;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -45,4 +47,47 @@ public interface BiometricRepository extends JpaRepository<Biometric, Long> {
      */
     @Query("SELECT b FROM Biometric b JOIN FETCH b.user WHERE b.credentialId = :credentialId AND b.isActive = true")
     Optional<Biometric> findByCredentialIdWithUser(@Param("credentialId") String credentialId);
+
+    /**
+     * Active credential IDs, without loading templates or keys
+     */
+    @Query("SELECT b.credentialId FROM Biometric b WHERE b.isActive = true AND b.credentialId IS NOT NULL")
+    List<String> findActiveCredentialIds();
+
+    /**
+     * Active credentials after the given biometric ID, in ID order (keyset pagination)
+     */
+    @Query("SELECT b.biometricId AS biometricId, b.credentialId AS credentialId FROM Biometric b " +
+            "WHERE b.isActive = true AND b.credentialId IS NOT NULL AND b.credentialId <> '' " +
+            "AND b.biometricId > :after ORDER BY b.biometricId")
+    List<CredentialRow> findActiveCredentialsAfter(@Param("after") Long after, Pageable pageable);
+
+    /**
+     * Deactivate a biometric unless it already is; returns the rows changed
+     */
+    @Modifying
+    @Query("UPDATE Biometric b SET b.isActive = false WHERE b.biometricId = :biometricId AND b.isActive = true")
+    int deactivateIfActive(@Param("biometricId") Long biometricId);
+
+    /**
+     * The stored WebAuthn signature counter of a biometric
+     */
+    @Query("SELECT b.signCount FROM Biometric b WHERE b.biometricId = :biometricId")
+    Optional<Long> findSignCount(@Param("biometricId") Long biometricId);
+
+    /**
+     * Raise the stored signature counter if the new one is higher; returns the rows changed
+     */
+    @Modifying
+    @Query("UPDATE Biometric b SET b.signCount = :signCount WHERE b.biometricId = :biometricId AND b.signCount < :signCount")
+    int advanceSignCount(@Param("biometricId") Long biometricId, @Param("signCount") long signCount);
+
+    /**
+     * Projection of a credential without templates or keys
+     */
+    interface CredentialRow {
+        Long getBiometricId();
+
+        String getCredentialId();
+    }
 }
@@ -1,5 +1,7 @@
 package com.cognizant.smartpay.service;
 
+import com.cognizant.smartpay.dto.CredentialDelta;
+import com.cognizant.smartpay.dto.CredentialPage;
 import com.cognizant.smartpay.dto.EnrollmentRequest;
 import com.cognizant.smartpay.dto.EnrollmentResponse;
 import com.cognizant.smartpay.dto.FingerprintAuthRequest;
@@ -13,14 +15,18 @@ import com.cognizant.smartpay.repository.UserRepository;
 import com.cognizant.smartpay.repository.WalletRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.security.MessageDigest;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -35,6 +41,26 @@ public class BiometricService {
     private final BiometricRepository biometricRepository;
     private final UserRepository userRepository;
     private final WalletRepository walletRepository;
+    private final FingerprintGallery fingerprintGallery;
+    private final TemplateMatcher templateMatcher;
+    private final CredentialCache credentialCache;
+    private final CredentialFilter credentialFilter;
+    private final VerificationStatsWriter verificationStats;
+    private final WebAuthnVerifier webAuthnVerifier;
+    private final CredentialChangeLog credentialChangeLog;
+    private final LaneSessionRegistry laneSessions;
+
+    @Value("${app.biometric.match-threshold:85}")
+    private int matchThreshold;
+
+    @Value("${app.biometric.identification.margin:5}")
+    private int matchMargin;
+
+    @Value("${app.biometric.identification.top-k:5}")
+    private int topK;
+
+    @Value("${app.biometric.identification.mode:ranked}")
+    private String identificationMode;
 
     /**
      * Authenticate user using fingerprint data
@@ -65,6 +91,13 @@ public class BiometricService {
         Optional<Wallet> walletOpt = walletRepository.findByUserId(user.getUserId());
         walletOpt.ifPresent(wallet -> user.setWalletBalance(wallet.getBalance()));
         user.setLoginStatus("Y");
+
+        // Scans from this lane now go to this user's cart
+        // Kiosks may send the lane ID as a number
+        String laneId = Objects.toString(deviceInfo.get("laneId"), null);
+        Long userId = user.getUserId();
+        TransactionCallbacks.afterCommit(() -> laneSessions.open(laneId, userId));
+
         log.info("User authenticated successfully: {}", user.getEmail());
         return user;
     }
@@ -84,38 +117,44 @@ public class BiometricService {
 
             log.info("Attempting to authenticate with credential ID: {}", credentialId);
 
-            // Find biometric record by credential ID
-            Optional<Biometric> biometricOpt = biometricRepository
-                    .findByCredentialIdAndIsActive(credentialId, true);
-
-            if (!biometricOpt.isPresent()) {
-                log.warn("Credential not found: {}. Checking all active credentials...", credentialId);
-                // Debug: List all active credentials
-                List<Biometric> allBiometrics = biometricRepository.findAllByIsActive(true);
-                log.info("Total active biometrics: {}", allBiometrics.size());
-                for (Biometric b : allBiometrics) {
-                    log.info("Stored credential ID: {}", b.getCredentialId());
-                }
+            // Unknown credential IDs are rejected without touching the database
+            if (!credentialFilter.mightContain(credentialId)) {
+                log.warn("Credential not found: {}", credentialId);
                 throw new BiometricNotFoundException("Credential not found or inactive");
             }
 
-            Biometric biometric = biometricOpt.get();
+            // Resolve the credential, from the cache when we have seen it recently
+            Optional<CredentialCache.CredentialSnapshot> credentialOpt = credentialCache.get(credentialId);
 
-            // In production, verify signature here using WebAuthn library
-            // For now, we trust the credential ID match
-            boolean verified = verifyWebAuthnSignature(fingerprintData, biometric);
+            if (!credentialOpt.isPresent()) {
+                log.warn("Credential not found: {}", credentialId);
+                throw new BiometricNotFoundException("Credential not found or inactive");
+            }
+
+            CredentialCache.CredentialSnapshot credential = credentialOpt.get();
+
+            if (!credential.enabled()) {
+                throw new AuthenticationFailedException("User is disabled");
+            }
+
+            // Verify the assertion signature against the stored public key
+            boolean verified = verifyWebAuthnSignature(fingerprintData, credential);
 
             if (!verified) {
                 throw new AuthenticationFailedException("Signature verification failed");
             }
 
-            // Update verification stats
-            biometric.setLastVerifiedAt(LocalDateTime.now());
-            biometric.setVerificationCount(biometric.getVerificationCount() + 1);
-            biometricRepository.save(biometric);
+            // A replayed or cloned assertion does not advance the counter
+            if (!advanceSignCount(credential.biometricId(), WebAuthnVerifier.signCount(fingerprintData))) {
+                throw new AuthenticationFailedException("Signature counter did not increase");
+            }
+
+            // Counted once the login commits; a disabled user or a rollback is not a verification
+            Long biometricId = credential.biometricId();
+            TransactionCallbacks.afterCommit(() -> verificationStats.record(biometricId));
 
             // Get user
-            User user = userRepository.findById(biometric.getUserId())
+            User user = userRepository.findById(credential.userId())
                     .orElseThrow(() -> new BiometricNotFoundException("User not found"));
 
             return user;
@@ -141,36 +180,52 @@ public class BiometricService {
 
             byte[] capturedTemplate = Base64.getDecoder().decode(templateBase64);
 
-            // Get all active enrolled fingerprints
-            List<Biometric> enrolledBiometrics = biometricRepository.findAllByIsActive(true);
-
-            if (enrolledBiometrics.isEmpty()) {
+            // Enrolled fingerprints are held in memory by the gallery
+            if (fingerprintGallery.isEmpty()) {
                 throw new BiometricNotFoundException("No enrolled fingerprints found");
             }
 
-            // Match against each enrolled fingerprint
-            for (Biometric biometric : enrolledBiometrics) {
-                byte[] storedTemplate = biometric.getFingerprintTemplate();
+            if ("first".equals(identificationMode)) {
+                return firstMatch(capturedTemplate);
+            }
 
-                // Simple matching algorithm (in production, use vendor SDK)
-                int matchScore = matchTemplates(capturedTemplate, storedTemplate);
+            // A runner-up within the margin of the threshold makes the best match ambiguous,
+            // so candidates down to threshold - margin are scored as well
+            int floor = Math.max(0, matchThreshold - matchMargin);
+            List<FingerprintGallery.Entry> candidates = fingerprintGallery.candidates(capturedTemplate, floor);
 
-                log.debug("Match score for user {}: {}", biometric.getUserId(), matchScore);
+            TemplateMatcher.Ranking<FingerprintGallery.Entry> ranking = templateMatcher.rank(
+                    capturedTemplate, candidates, FingerprintGallery.Entry::template, floor, Math.max(2, topK));
 
-                // Threshold: 85%
-                if (matchScore >= 85) {
-                    // Match found!
-                    log.info("Fingerprint matched for user: {}", biometric.getUserId());
+            Optional<TemplateMatcher.Match<FingerprintGallery.Entry>> best = ranking.best();
 
-                    biometric.setLastVerifiedAt(LocalDateTime.now());
-                    biometric.setVerificationCount(biometric.getVerificationCount() + 1);
-                    biometricRepository.save(biometric);
+            // Several fingers of the same user may match; only another user makes it ambiguous
+            Long bestUserId = best.map(m -> m.candidate().userId()).orElse(null);
+            Optional<TemplateMatcher.Match<FingerprintGallery.Entry>> runnerUp = ranking.matches().stream()
+                    .filter(m -> !m.candidate().userId().equals(bestUserId))
+                    .findFirst();
+            int runnerUpScore = runnerUp.map(TemplateMatcher.Match::score).orElse(0);
 
-                    User user = userRepository.findById(biometric.getUserId())
-                            .orElseThrow(() -> new BiometricNotFoundException("User not found"));
+            log.info("Fingerprint identification: best {}, runner-up {}, {} comparisons against {} enrolled templates",
+                    best.map(TemplateMatcher.Match::score).orElse(0), runnerUpScore,
+                    ranking.comparisons(), fingerprintGallery.size());
 
-                    return user;
+            if (best.isPresent() && best.get().score() >= matchThreshold) {
+                if (runnerUp.isPresent() && best.get().score() - runnerUpScore < matchMargin) {
+                    log.warn("Ambiguous fingerprint match: top scores {} and {} are within {}",
+                            best.get().score(), runnerUpScore, matchMargin);
+                    throw new AuthenticationFailedException("Fingerprint match is ambiguous");
                 }
+
+                FingerprintGallery.Entry candidate = best.get().candidate();
+                log.info("Fingerprint matched for user: {} (score {})", candidate.userId(), best.get().score());
+
+                TransactionCallbacks.afterCommit(() -> verificationStats.record(candidate.biometricId()));
+
+                User user = userRepository.findById(candidate.userId())
+                        .orElseThrow(() -> new BiometricNotFoundException("User not found"));
+
+                return user;
             }
 
             // No match found
@@ -184,43 +239,47 @@ public class BiometricService {
     }
 
     /**
-     * Verify WebAuthn signature (simplified version)
+     * Legacy identification: the first enrolled template reaching the threshold
      */
-    private boolean verifyWebAuthnSignature(Map<String, Object> fingerprintData, Biometric biometric) {
-        // In production, use Yubico WebAuthn library to verify ECDSA signature
-        // For now, we assume credential ID match is sufficient
+    private User firstMatch(byte[] capturedTemplate) {
+        List<FingerprintGallery.Entry> candidates = fingerprintGallery.candidates(capturedTemplate, matchThreshold);
 
-        // This is a placeholder - implement full WebAuthn verification in production
-        String signature = (String) fingerprintData.get("signature");
-        String authenticatorData = (String) fingerprintData.get("authenticatorData");
+        Optional<FingerprintGallery.Entry> matched = templateMatcher.findFirst(
+                capturedTemplate, candidates, FingerprintGallery.Entry::template, matchThreshold);
 
-        return signature != null && authenticatorData != null;
+        if (matched.isEmpty()) {
+            log.warn("No matching fingerprint found");
+            throw new AuthenticationFailedException("Fingerprint not recognized");
+        }
+
+        FingerprintGallery.Entry candidate = matched.get();
+        log.info("Fingerprint matched for user: {} (score {})", candidate.userId(),
+                templateMatcher.score(capturedTemplate, candidate.template()));
+
+        TransactionCallbacks.afterCommit(() -> verificationStats.record(candidate.biometricId()));
+
+        return userRepository.findById(candidate.userId())
+                .orElseThrow(() -> new BiometricNotFoundException("User not found"));
     }
 
     /**
-     * Match fingerprint templates (simplified version)
+     * Verify WebAuthn assertion (client data, authenticator data and signature)
      */
-    private int matchTemplates(byte[] template1, byte[] template2) {
-        // This is a simplified matching algorithm
-        // In production, use vendor SDK (DigitalPersona, Mantra, etc.)
-
-        if (template1 == null || template2 == null) {
-            return 0;
-        }
-
-        if (template1.length != template2.length) {
-            return 0;
-        }
+    private boolean verifyWebAuthnSignature(Map<String, Object> fingerprintData,
+                                            CredentialCache.CredentialSnapshot credential) {
+        return webAuthnVerifier.verify(credential.biometricId(), credential.publicKey(), fingerprintData);
+    }
 
-        // Simple byte-by-byte comparison
-        int matches = 0;
-        for (int i = 0; i < template1.length; i++) {
-            if (template1[i] == template2[i]) {
-                matches++;
-            }
+    /**
+     * Store an assertion's signature counter if it is higher than the stored
+     * one. Authenticators without a counter always send 0, which is accepted
+     * only while the stored counter is 0 as well.
+     */
+    private boolean advanceSignCount(Long biometricId, long signCount) {
+        if (signCount == 0) {
+            return biometricRepository.findSignCount(biometricId).orElse(0L) == 0;
         }
-
-        return (int) ((double) matches / template1.length * 100);
+        return biometricRepository.advanceSignCount(biometricId, signCount) == 1;
     }
 
     /**
@@ -252,7 +311,8 @@ public class BiometricService {
             biometric.setCredentialId(credentialId);
 
             if (publicKeyB64 != null) {
-                biometric.setPublicKey(Base64.getDecoder().decode(publicKeyB64));
+                biometric.setPublicKey(WebAuthnVerifier.enrollmentKey(
+                        Base64.getDecoder().decode(publicKeyB64), publicKeyAlgorithm(fingerprintData)));
             }
 
             // Generate hash
@@ -275,6 +335,7 @@ public class BiometricService {
         biometric.setEnrolledAt(LocalDateTime.now());
 
         biometric = biometricRepository.save(biometric);
+        publishEnrollment(biometric);
 
         // Update user biometric status
         user.setBiometricEnabled(true);
@@ -337,46 +398,11 @@ public class BiometricService {
 
         // Enroll biometric
         try {
-            Biometric biometric = new Biometric();
-            biometric.setUserId(user.getUserId());
-            biometric.setDeviceType(request.getDeviceType());
-
-            Map<String, Object> fingerprintData = request.getFingerprintData();
-            String method = (String) fingerprintData.get("method");
-
-            if ("webauthn".equals(method)) {
-                String credentialId = (String) fingerprintData.get("credentialId");
-                biometric.setCredentialId(credentialId);
-                biometric.setEnrollmentMethod("webauthn");
-
-                // Decode public key from base64 if present
-                String publicKeyB64 = (String) fingerprintData.get("publicKey");
-                if (publicKeyB64 != null && !publicKeyB64.isEmpty()) {
-                    byte[] publicKey = Base64.getDecoder().decode(publicKeyB64);
-                    biometric.setPublicKey(publicKey);
-                } else {
-                    biometric.setPublicKey(new byte[0]);
-                }
-
-                biometric.setFingerprintHash(generateHash(credentialId));
-                biometric.setFingerprintTemplate(new byte[0]);
-
-                log.info("Enrolled WebAuthn credential ID: {}", credentialId);
-            } else if ("external_usb".equals(method)) {
-                String templateB64 = (String) fingerprintData.get("fingerprintTemplate");
-                byte[] template = Base64.getDecoder().decode(templateB64);
-                biometric.setFingerprintTemplate(template);
-                biometric.setFingerprintHash(generateHash(templateB64));
-                biometric.setEnrollmentMethod("external_usb");
-            } else {
-                throw new IllegalArgumentException("Unsupported biometric method: " + method);
-            }
+            Biometric biometric = newRegistrationBiometric(
+                    user.getUserId(), request.getDeviceType(), request.getFingerprintData());
 
-            biometric.setIsActive(true);
-            biometric.setVerificationCount(0);
-            biometric.setEnrolledAt(LocalDateTime.now());
-
-            biometricRepository.save(biometric);
+            biometric = biometricRepository.save(biometric);
+            publishEnrollment(biometric);
             log.info("Biometric enrolled for user: {}", user.getUserId());
 
             // Update user biometric status
@@ -395,21 +421,160 @@ public class BiometricService {
         return user;
     }
 
+    /**
+     * Build the biometric record for a registration request (not yet saved)
+     */
+    Biometric newRegistrationBiometric(Long userId, String deviceType, Map<String, Object> fingerprintData) {
+        Biometric biometric = new Biometric();
+        biometric.setUserId(userId);
+        biometric.setDeviceType(deviceType);
+
+        String method = (String) fingerprintData.get("method");
+
+        if ("webauthn".equals(method)) {
+            String credentialId = (String) fingerprintData.get("credentialId");
+            biometric.setCredentialId(credentialId);
+            biometric.setEnrollmentMethod("webauthn");
+
+            // Decode public key from base64 if present
+            String publicKeyB64 = (String) fingerprintData.get("publicKey");
+            if (publicKeyB64 != null && !publicKeyB64.isEmpty()) {
+                byte[] publicKey = Base64.getDecoder().decode(publicKeyB64);
+                biometric.setPublicKey(WebAuthnVerifier.enrollmentKey(publicKey, publicKeyAlgorithm(fingerprintData)));
+            } else {
+                biometric.setPublicKey(new byte[0]);
+            }
+
+            biometric.setFingerprintHash(generateHash(credentialId));
+            biometric.setFingerprintTemplate(new byte[0]);
+        } else if ("external_usb".equals(method)) {
+            String templateB64 = (String) fingerprintData.get("fingerprintTemplate");
+            byte[] template = Base64.getDecoder().decode(templateB64);
+            biometric.setFingerprintTemplate(template);
+            biometric.setFingerprintHash(generateHash(templateB64));
+            biometric.setEnrollmentMethod("external_usb");
+        } else {
+            throw new IllegalArgumentException("Unsupported biometric method: " + method);
+        }
+
+        biometric.setIsActive(true);
+        biometric.setVerificationCount(0);
+        biometric.setEnrolledAt(LocalDateTime.now());
+        return biometric;
+    }
+
+    /**
+     * Make a saved enrollment visible to the in-memory lookups once the transaction commits
+     */
+    void publishEnrollment(Biometric biometric) {
+        String credentialId = biometric.getCredentialId();
+        if (credentialId != null) {
+            log.info("Enrolled WebAuthn credential ID: {}", credentialId);
+            credentialCache.invalidate(credentialId);
+            credentialFilter.add(credentialId);
+            credentialChangeLog.recordAdded(credentialId);
+        }
+        fingerprintGallery.add(biometric.getBiometricId(), biometric.getUserId(), biometric.getFingerprintTemplate());
+    }
+
+    /**
+     * Deactivate an enrolled biometric
+     */
+    @Transactional
+    public void deactivateBiometric(Long biometricId) {
+        log.info("Deactivating biometric: {}", biometricId);
+
+        Biometric biometric = biometricRepository.findById(biometricId)
+                .orElseThrow(() -> new BiometricNotFoundException("Biometric not found"));
+
+        // Only the request that actually deactivates it updates the in-memory lookups;
+        // removing a credential from the filter twice would clear counters other credentials share
+        if (biometricRepository.deactivateIfActive(biometricId) == 0) {
+            log.info("Biometric {} is already inactive", biometricId);
+            return;
+        }
+
+        credentialCache.invalidate(biometric.getCredentialId());
+        credentialFilter.remove(biometric.getCredentialId());
+        webAuthnVerifier.invalidateKey(biometricId);
+        credentialChangeLog.recordRevoked(biometric.getCredentialId());
+        fingerprintGallery.remove(biometricId);
+    }
+
     /**
      * Get all active credential IDs for WebAuthn authentication
      */
     public List<String> getAllActiveCredentials() {
-        List<Biometric> biometrics = biometricRepository.findAllByIsActive(true);
-        return biometrics.stream()
-                .map(Biometric::getCredentialId)
-                .filter(id -> id != null && !id.isEmpty())
+        return biometricRepository.findActiveCredentialIds().stream()
+                .filter(id -> !id.isEmpty())
+                .collect(java.util.stream.Collectors.toList());
+    }
+
+    /**
+     * Current version of the active credential set
+     */
+    public String getCredentialVersion() {
+        return credentialChangeLog.currentVersion();
+    }
+
+    /**
+     * One page of active credential IDs, ordered by biometric ID
+     */
+    public CredentialPage getCredentialPage(Long after, int limit) {
+        // Read the version first: anything that changes during the scan shows up in the next delta
+        String version = credentialChangeLog.currentVersion();
+
+        List<BiometricRepository.CredentialRow> rows = biometricRepository.findActiveCredentialsAfter(
+                after == null ? 0L : after, PageRequest.of(0, limit + 1));
+
+        boolean hasMore = rows.size() > limit;
+        if (hasMore) {
+            rows = rows.subList(0, limit);
+        }
+
+        List<String> credentials = rows.stream()
+                .map(BiometricRepository.CredentialRow::getCredentialId)
                 .collect(java.util.stream.Collectors.toList());
+        Long nextAfter = hasMore ? rows.get(rows.size() - 1).getBiometricId() : null;
+
+        return new CredentialPage(version, credentials, nextAfter);
+    }
+
+    /**
+     * Credentials added or revoked since the given version
+     */
+    public CredentialDelta getCredentialChanges(String since) {
+        String version = credentialChangeLog.currentVersion();
+
+        return credentialChangeLog.changesSince(since)
+                .map(changes -> {
+                    List<String> added = new ArrayList<>();
+                    List<String> revoked = new ArrayList<>();
+                    changes.forEach((credentialId, isAdded) -> (isAdded ? added : revoked).add(credentialId));
+                    return new CredentialDelta(version, false, added, revoked);
+                })
+                .orElseGet(() -> new CredentialDelta(version, true, List.of(), List.of()));
+    }
+
+    /**
+     * Active credential IDs for admin diagnostics
+     */
+    public List<String> getActiveCredentialIds() {
+        return biometricRepository.findActiveCredentialIds();
+    }
+
+    /**
+     * The COSE alg the browser reported for a new credential, if sent
+     */
+    private static Integer publicKeyAlgorithm(Map<String, Object> fingerprintData) {
+        Object alg = fingerprintData.get("publicKeyAlgorithm");
+        return alg instanceof Number number ? number.intValue() : null;
     }
 
     /**
      * Generate SHA-256 hash
      */
-    private String generateHash(String input) {
+    static String generateHash(String input) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             byte[] hash = digest.digest(input.getBytes());
@@ -440,5 +605,7 @@ public class BiometricService {
         user.setStatus("ACTIVE");   // safety (optional but recommended)
         user.setUpdatedAt(LocalDateTime.now());
         userRepository.save(user);
+        credentialCache.invalidateUser(userId);
+        TransactionCallbacks.afterCommit(() -> laneSessions.close(userId));
     }
 }
@@ -0,0 +1,335 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.dto.BulkRegistrationResponse;
+import com.cognizant.smartpay.dto.BulkRegistrationResult;
+import com.cognizant.smartpay.dto.RegistrationRequest;
+import com.cognizant.smartpay.entity.Biometric;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk user + biometric registration.
+ *
+ * Reads a JSON array of registration requests as a stream and processes it in
+ * chunks. Each chunk is checked for duplicates with one IN query per column and
+ * written with JDBC batches (users, wallets, biometrics) in one transaction,
+ * instead of the two lookups and several single-row saves of the single-user
+ * path. Every row gets its own result entry: rows that are not objects or do
+ * not bind are reported as INVALID, and broken JSON ends the import with an
+ * INVALID entry at the row where it broke, after the rows before it are written.
+ */
+@Service
+@Slf4j
+public class BulkRegistrationService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final BiometricService biometricService;
+    private final int chunkSize;
+
+    /**
+     * A valid row waiting to be inserted
+     */
+    private record PendingRow(int index, RegistrationRequest request, Biometric biometric) {
+    }
+
+    public BulkRegistrationService(
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            ObjectMapper objectMapper,
+            Validator validator,
+            BiometricService biometricService,
+            @Value("${app.registration.bulk-chunk-size:500}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.biometricService = biometricService;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Register every user in a JSON array of {@link RegistrationRequest}s
+     */
+    public BulkRegistrationResponse registerAll(InputStream body) throws IOException {
+        long start = System.currentTimeMillis();
+
+        List<BulkRegistrationResult> results = new ArrayList<>();
+        Set<String> seenEmails = new HashSet<>();
+        Set<String> seenPhones = new HashSet<>();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Request body must be a JSON array of registrations");
+            }
+
+            List<PendingRow> chunk = new ArrayList<>(chunkSize);
+            int index = 0;
+            try {
+                while (true) {
+                    JsonToken token = parser.nextToken();
+                    if (token == JsonToken.END_ARRAY) {
+                        if (parser.nextToken() != null) {
+                            results.add(invalid(index, null, "Unexpected content after the closing ]"));
+                        }
+                        break;
+                    }
+                    if (token == null) {
+                        results.add(invalid(index, null, "Input ended before the closing ]"));
+                        break;
+                    }
+                    if (token != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        results.add(invalid(index++, null, "Row must be a JSON object, not " + token));
+                        continue;
+                    }
+
+                    JsonNode node = objectMapper.readTree(parser);
+                    RegistrationRequest request;
+                    try {
+                        request = objectMapper.treeToValue(node, RegistrationRequest.class);
+                    } catch (JsonProcessingException e) {
+                        results.add(invalid(index++, node.path("email").textValue(),
+                                "Malformed row: " + e.getOriginalMessage()));
+                        continue;
+                    }
+
+                    PendingRow row = prepare(index++, request, seenEmails, seenPhones, results);
+                    if (row != null) {
+                        chunk.add(row);
+                    }
+                    if (chunk.size() == chunkSize) {
+                        results.addAll(insertChunk(chunk));
+                        chunk.clear();
+                    }
+                }
+            } catch (JsonProcessingException e) {
+                // The parser cannot resume after broken JSON: report where it
+                // broke, and still write and report the rows read before it
+                results.add(invalid(index, null,
+                        "Malformed JSON, this and later rows were not read: " + e.getOriginalMessage()));
+            }
+            if (!chunk.isEmpty()) {
+                results.addAll(insertChunk(chunk));
+            }
+        }
+
+        results.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+        int created = (int) results.stream().filter(r -> "CREATED".equals(r.getStatus())).count();
+        long elapsed = System.currentTimeMillis() - start;
+
+        log.info("Bulk registration finished: {} rows, {} created in {} ms", results.size(), created, elapsed);
+
+        return BulkRegistrationResponse.builder()
+                .total(results.size())
+                .created(created)
+                .rejected(results.size() - created)
+                .elapsedMillis(elapsed)
+                .results(results)
+                .build();
+    }
+
+    private static BulkRegistrationResult invalid(int index, String email, String message) {
+        return new BulkRegistrationResult(index, email, "INVALID", null, message);
+    }
+
+    /**
+     * Validate a row and check it against earlier rows of the same import
+     */
+    private PendingRow prepare(int index, RegistrationRequest request, Set<String> seenEmails,
+                               Set<String> seenPhones, List<BulkRegistrationResult> results) {
+        Set<ConstraintViolation<RegistrationRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            String message = violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+            results.add(new BulkRegistrationResult(index, request.getEmail(), "INVALID", null, message));
+            return null;
+        }
+
+        Biometric biometric;
+        try {
+            biometric = biometricService.newRegistrationBiometric(null, request.getDeviceType(), request.getFingerprintData());
+        } catch (Exception e) {
+            results.add(new BulkRegistrationResult(index, request.getEmail(), "INVALID", null,
+                    "Invalid fingerprint data: " + e.getMessage()));
+            return null;
+        }
+
+        String phone = normalizePhone(request.getPhone());
+        if (!seenEmails.add(request.getEmail().toLowerCase(Locale.ROOT))) {
+            results.add(new BulkRegistrationResult(index, request.getEmail(), "DUPLICATE", null,
+                    "Email appears more than once in this import"));
+            return null;
+        }
+        if (phone != null && !seenPhones.add(phone)) {
+            results.add(new BulkRegistrationResult(index, request.getEmail(), "DUPLICATE", null,
+                    "Phone number appears more than once in this import"));
+            return null;
+        }
+
+        return new PendingRow(index, request, biometric);
+    }
+
+    /**
+     * Drop rows that already exist, then insert the rest in one transaction
+     */
+    private List<BulkRegistrationResult> insertChunk(List<PendingRow> chunk) {
+        List<BulkRegistrationResult> results = new ArrayList<>();
+
+        Set<String> existingEmails = findExisting("email",
+                chunk.stream().map(row -> row.request().getEmail()).toList());
+        Set<String> existingPhones = findExisting("phone",
+                chunk.stream().map(row -> normalizePhone(row.request().getPhone())).filter(p -> p != null).toList());
+
+        List<PendingRow> fresh = new ArrayList<>();
+        for (PendingRow row : chunk) {
+            String phone = normalizePhone(row.request().getPhone());
+            if (existingEmails.contains(row.request().getEmail().toLowerCase(Locale.ROOT))) {
+                results.add(new BulkRegistrationResult(row.index(), row.request().getEmail(), "DUPLICATE", null,
+                        "User with email " + row.request().getEmail() + " already exists"));
+            } else if (phone != null && existingPhones.contains(phone)) {
+                results.add(new BulkRegistrationResult(row.index(), row.request().getEmail(), "DUPLICATE", null,
+                        "User with phone number " + phone + " already exists"));
+            } else {
+                fresh.add(row);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return results;
+        }
+
+        try {
+            Map<String, Long> userIds = transactionTemplate.execute(status -> insertRows(fresh));
+            for (PendingRow row : fresh) {
+                results.add(new BulkRegistrationResult(row.index(), row.request().getEmail(), "CREATED",
+                        userIds.get(row.request().getEmail().toLowerCase(Locale.ROOT)), "User registered successfully"));
+            }
+        } catch (Exception e) {
+            log.error("Bulk registration chunk of {} rows failed", fresh.size(), e);
+            for (PendingRow row : fresh) {
+                results.add(new BulkRegistrationResult(row.index(), row.request().getEmail(), "FAILED", null,
+                        "Registration failed: " + e.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Batch-insert users, wallets and biometrics; returns user IDs by lower-cased email
+     */
+    private Map<String, Long> insertRows(List<PendingRow> rows) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO users (name, email, phone, biometric_enabled, enabled, status, created_at, updated_at)
+                VALUES (?, ?, ?, 1, 1, 'ACTIVE', ?, ?)
+                """,
+                rows.stream().map(row -> new Object[]{
+                        row.request().getName(), row.request().getEmail(), row.request().getPhone(), now, now
+                }).toList());
+
+        // Emails are unique, so one lookup recovers every generated ID
+        Map<String, Long> userIds = new HashMap<>();
+        List<String> emails = rows.stream().map(row -> row.request().getEmail()).toList();
+        jdbcTemplate.query("SELECT user_id, email FROM users WHERE email IN (" + placeholders(emails) + ")",
+                rs -> {
+                    userIds.put(rs.getString("email").toLowerCase(Locale.ROOT), rs.getLong("user_id"));
+                },
+                emails.toArray());
+
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO wallet (user_id, balance, currency, created_at, updated_at)
+                VALUES (?, ?, 'INR', ?, ?)
+                """,
+                rows.stream().map(row -> new Object[]{
+                        userIds.get(row.request().getEmail().toLowerCase(Locale.ROOT)),
+                        row.request().getInitialWalletBalance(), now, now
+                }).toList());
+
+        List<Biometric> biometrics = new ArrayList<>(rows.size());
+        for (PendingRow row : rows) {
+            Biometric biometric = row.biometric();
+            biometric.setUserId(userIds.get(row.request().getEmail().toLowerCase(Locale.ROOT)));
+            biometrics.add(biometric);
+        }
+
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO biometrics (user_id, fingerprint_hash, fingerprint_template, device_type,
+                    enrollment_method, credential_id, public_key, enrolled_at, verification_count, sign_count, is_active)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, 0, 0, 1)
+                """,
+                biometrics.stream().map(b -> new Object[]{
+                        b.getUserId(), b.getFingerprintHash(), b.getFingerprintTemplate(), b.getDeviceType(),
+                        b.getEnrollmentMethod(), b.getCredentialId(), b.getPublicKey(), now
+                }).toList());
+
+        // Recover biometric IDs so the in-memory lookups can be updated after commit
+        Map<Long, Long> biometricIds = new HashMap<>();
+        List<Long> ids = new ArrayList<>(userIds.values());
+        jdbcTemplate.query("SELECT biometric_id, user_id FROM biometrics WHERE user_id IN (" + placeholders(ids) + ")",
+                rs -> {
+                    biometricIds.put(rs.getLong("user_id"), rs.getLong("biometric_id"));
+                },
+                ids.toArray());
+
+        for (Biometric biometric : biometrics) {
+            biometric.setBiometricId(biometricIds.get(biometric.getUserId()));
+            biometricService.publishEnrollment(biometric);
+        }
+
+        return userIds;
+    }
+
+    /**
+     * Values of the given users column that already exist, lower-cased
+     */
+    private Set<String> findExisting(String column, List<String> values) {
+        if (values.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> existing = new HashSet<>();
+        jdbcTemplate.query("SELECT " + column + " FROM users WHERE " + column + " IN (" + placeholders(values) + ")",
+                rs -> {
+                    existing.add(rs.getString(1).toLowerCase(Locale.ROOT));
+                },
+                values.toArray());
+        return existing;
+    }
+
+    private static String normalizePhone(String phone) {
+        return phone == null || phone.trim().isEmpty() ? null : phone;
+    }
+
+    private static String placeholders(Collection<?> values) {
+        return String.join(",", Collections.nCopies(values.size(), "?"));
+    }
+}
@@ -0,0 +1,472 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.dto.CartItemResponse;
+import com.cognizant.smartpay.dto.CartTotalResponse;
+import com.cognizant.smartpay.dto.CartView;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory copy of each shopper's active cart: its lines and running subtotal.
+ *
+ * Kiosks poll the cart and its total after every scan, and each poll used to
+ * join cart, cart_items, products and rfid_tags and then run a SUM. Reads are
+ * now served from this copy; the database stays the durable store. A cart is
+ * loaded on its first read (and again after a restart or eviction), and every
+ * write to cart_items is applied to the loaded copy once its transaction
+ * commits, with absolute quantities and subtotals so that applying a change
+ * twice is harmless.
+ *
+ * Each user's copy is guarded by its own monitor. A load holds it while it
+ * queries, so a change committed meanwhile is applied on top of the loaded
+ * lines rather than overwritten by them. A change to a line whose user is not
+ * known yet, because the load has not read that line, is noted instead, and
+ * the load reads its lines again. It also makes loads single-flight:
+ * reads that arrive while a cart is loading wait for that load and share its
+ * result instead of querying again. Those are counted as coalesced.
+ *
+ * Every load and every applied change gives the cart a new version, for
+ * kiosks to tell whether their copy is current. Versions come from one
+ * counter seeded from the clock, so they keep increasing across evictions
+ * and restarts.
+ *
+ * Applied changes are handed to {@link CartUpdateStream} for kiosks
+ * subscribed to the cart; a watched cart is never swept.
+ */
+@Component
+@Slf4j
+public class CartAggregates {
+
+    private static final String SELECT_LINES = """
+            SELECT
+                ci.cart_item_id,
+                ci.quantity,
+                ci.subtotal,
+                p.product_id,
+                p.name,
+                p.brand,
+                p.category_id,
+                p.selling_price,
+                p.mrp,
+                p.unit,
+                p.image_url,
+                (SELECT MIN(rt.rfid_tag) FROM rfid_tags rt WHERE rt.product_id = p.product_id) AS rfid_tag
+            FROM cart_items ci
+            JOIN products p ON ci.product_id = p.product_id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CartUpdateStream updates;
+    private final long idleMillis;
+
+    private final Map<Long, Aggregate> byUser = new ConcurrentHashMap<>();
+    private final Map<Long, Long> userByCartItem = new ConcurrentHashMap<>();
+    // Lines changed while a load was running, with the time of the change
+    private final Map<Long, Long> changedWhileLoading = new ConcurrentHashMap<>();
+    private final AtomicInteger loading = new AtomicInteger();
+    private final AtomicLong versions = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder changesApplied = new LongAdder();
+
+    /**
+     * One cart line: the response for it, built once, and what totals need
+     */
+    private record Line(long cartItemId, BigDecimal subtotal, CartItemResponse item) {
+
+        Line withQuantity(int newQuantity, BigDecimal newSubtotal) {
+            return new Line(cartItemId, newSubtotal, item.withQuantity(newQuantity));
+        }
+    }
+
+    /**
+     * Active cart of one user. Guarded by its own monitor.
+     */
+    private static final class Aggregate {
+        // Also read without the monitor, to tell coalesced reads from hits
+        volatile boolean loaded;
+        boolean retired;
+        Long cartId;
+        // Oldest first, as added
+        final LinkedHashMap<Long, Line> lines = new LinkedHashMap<>();
+        BigDecimal subtotal = BigDecimal.ZERO;
+        long version;
+        long lastUsed = System.currentTimeMillis();
+
+        CartTotalResponse total() {
+            return CartTotalResponse.of(subtotal, lines.size());
+        }
+
+        void put(Line line) {
+            Line previous = lines.put(line.cartItemId(), line);
+            if (previous != null) {
+                subtotal = subtotal.subtract(previous.subtotal());
+            }
+            subtotal = subtotal.add(line.subtotal());
+        }
+
+        Line remove(long cartItemId) {
+            Line previous = lines.remove(cartItemId);
+            if (previous != null) {
+                subtotal = subtotal.subtract(previous.subtotal());
+            }
+            return previous;
+        }
+    }
+
+    public CartAggregates(JdbcTemplate jdbcTemplate,
+                          CartUpdateStream updates,
+                          @Value("${app.cart.aggregate.idle-ms:1800000}") long idleMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.updates = updates;
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Lines of the user's active cart, newest first. The responses are shared
+     * and immutable; only the list is new.
+     */
+    public List<CartItemResponse> items(Long userId) {
+        List<CartItemResponse> items = new ArrayList<>();
+        withLoaded(userId, aggregate -> addItems(aggregate, items));
+        return items;
+    }
+
+    /**
+     * Subtotal and line count of the user's active cart
+     */
+    public CartTotalResponse total(Long userId) {
+        CartTotalResponse[] total = new CartTotalResponse[1];
+        withLoaded(userId, aggregate -> total[0] = aggregate.total());
+        return total[0];
+    }
+
+    /**
+     * Lines, total and version of the user's active cart, read together
+     */
+    public CartView view(Long userId) {
+        List<CartItemResponse> items = new ArrayList<>();
+        CartView[] view = new CartView[1];
+        withLoaded(userId, aggregate -> {
+            addItems(aggregate, items);
+            view[0] = new CartView(items, aggregate.total(), aggregate.version);
+        });
+        return view[0];
+    }
+
+    /**
+     * Current version of the user's active cart
+     */
+    public long version(Long userId) {
+        long[] version = new long[1];
+        withLoaded(userId, aggregate -> version[0] = aggregate.version);
+        return version[0];
+    }
+
+    /**
+     * Version of the user's cart if it is cached, or null without loading it.
+     * A cart loaded later gets a new version, so no tag handed out before can
+     * match it.
+     */
+    public Long cachedVersion(Long userId) {
+        Aggregate aggregate = byUser.get(userId);
+        if (aggregate == null || !aggregate.loaded) {
+            return null;
+        }
+        synchronized (aggregate) {
+            if (aggregate.retired) {
+                return null;
+            }
+            hits.increment();
+            aggregate.lastUsed = System.currentTimeMillis();
+            return aggregate.version;
+        }
+    }
+
+    /**
+     * Lines were inserted for these products in the current transaction. They
+     * are read back now and added to the cached cart once it commits.
+     */
+    public void linesAdded(Long userId, Long cartId, Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        List<Line> lines = jdbcTemplate.query(
+                SELECT_LINES + " WHERE ci.cart_id = ? AND ci.product_id IN ("
+                        + String.join(",", Collections.nCopies(productIds.size(), "?")) + ")"
+                        + " ORDER BY ci.cart_item_id",
+                (rs, rowNum) -> toLine(userId, rs),
+                prepend(cartId, productIds));
+
+        TransactionCallbacks.afterCommit(() -> applyIfLoaded(userId, aggregate -> {
+            aggregate.cartId = cartId;
+            for (Line line : lines) {
+                aggregate.put(line);
+                userByCartItem.put(line.cartItemId(), userId);
+            }
+            CartTotalResponse total = aggregate.total();
+            for (Line line : lines) {
+                updates.lineChanged(userId, line.item(), total, aggregate.version);
+            }
+        }));
+    }
+
+    /**
+     * A line's quantity was set. Without a subtotal, the line's current
+     * product price times the quantity is used, as the database computes it.
+     */
+    public void quantityChanged(Long cartItemId, int quantity, BigDecimal subtotal) {
+        TransactionCallbacks.afterCommit(() -> {
+            noteIfLoading(cartItemId);
+            Long userId = userByCartItem.get(cartItemId);
+            if (userId == null) {
+                return;
+            }
+            applyIfLoaded(userId, aggregate -> {
+                Line line = aggregate.lines.get(cartItemId);
+                if (line != null) {
+                    BigDecimal newSubtotal = subtotal != null
+                            ? subtotal
+                            : line.item().item().price().multiply(BigDecimal.valueOf(quantity));
+                    Line changed = line.withQuantity(quantity, newSubtotal);
+                    aggregate.put(changed);
+                    updates.lineChanged(userId, changed.item(), aggregate.total(), aggregate.version);
+                }
+            });
+        });
+    }
+
+    /**
+     * A line was deleted
+     */
+    public void lineRemoved(Long cartItemId) {
+        TransactionCallbacks.afterCommit(() -> {
+            noteIfLoading(cartItemId);
+            Long userId = userByCartItem.remove(cartItemId);
+            if (userId != null) {
+                applyIfLoaded(userId, aggregate -> {
+                    if (aggregate.remove(cartItemId) != null) {
+                        updates.lineRemoved(userId, cartItemId, aggregate.total(), aggregate.version);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Note a committed change for the loads in progress, before looking up
+     * its user: a load that has not mapped the line yet finds the note once
+     * it has, and reads again
+     */
+    private void noteIfLoading(Long cartItemId) {
+        if (loading.get() > 0) {
+            changedWhileLoading.put(cartItemId, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * The user's active cart was checked out or cleared
+     */
+    public void cartClosed(Long userId) {
+        TransactionCallbacks.afterCommit(() -> applyIfLoaded(userId, aggregate -> {
+            aggregate.lines.keySet().forEach(userByCartItem::remove);
+            aggregate.lines.clear();
+            aggregate.subtotal = BigDecimal.ZERO;
+            aggregate.cartId = null;
+            updates.cartCleared(userId, aggregate.version);
+        }));
+    }
+
+    /**
+     * Drop carts nobody has read, written or watched for a while
+     */
+    @Scheduled(fixedDelayString = "${app.cart.aggregate.sweep-ms:300000}")
+    public void sweep() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        byUser.forEach((userId, aggregate) -> {
+            synchronized (aggregate) {
+                if (aggregate.lastUsed < cutoff && !updates.isWatched(userId)) {
+                    aggregate.retired = true;
+                    byUser.remove(userId, aggregate);
+                    aggregate.lines.keySet().forEach(userByCartItem::remove);
+                }
+            }
+        });
+        // Notes for lines of carts that were not loading; no load runs this long
+        long noteCutoff = System.currentTimeMillis() - 60_000;
+        changedWhileLoading.values().removeIf(changedAt -> changedAt < noteCutoff);
+    }
+
+    /**
+     * Cached carts and hit counters
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long loadCount = loads.sum();
+        long coalescedCount = coalesced.sum();
+        long reads = hitCount + loadCount + coalescedCount;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("carts", byUser.size());
+        stats.put("lines", userByCartItem.size());
+        stats.put("hits", hitCount);
+        stats.put("loads", loadCount);
+        stats.put("coalesced", coalescedCount);
+        stats.put("hitRate", reads == 0 ? 0.0 : (double) (hitCount + coalescedCount) / reads);
+        stats.put("readsPerLoad", loadCount == 0 ? 0.0 : (double) (loadCount + coalescedCount) / loadCount);
+        stats.put("changesApplied", changesApplied.sum());
+        return stats;
+    }
+
+    private interface AggregateAction {
+        void apply(Aggregate aggregate);
+    }
+
+    /**
+     * Run a read against the user's cart, loading it first if needed. A read
+     * that finds the cart loading waits for that load rather than starting its
+     * own; if the load fails, the next read tries again.
+     */
+    private void withLoaded(Long userId, AggregateAction action) {
+        while (true) {
+            Aggregate aggregate = byUser.computeIfAbsent(userId, k -> new Aggregate());
+            boolean wasLoaded = aggregate.loaded;
+            synchronized (aggregate) {
+                // Swept concurrently: start over
+                if (aggregate.retired) {
+                    continue;
+                }
+                if (aggregate.loaded) {
+                    if (wasLoaded) {
+                        hits.increment();
+                    } else {
+                        coalesced.increment();
+                    }
+                } else {
+                    load(userId, aggregate);
+                }
+                aggregate.lastUsed = System.currentTimeMillis();
+                action.apply(aggregate);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Apply a committed change to the user's cart if it is cached; otherwise
+     * the next load reads it from the database
+     */
+    private void applyIfLoaded(Long userId, AggregateAction action) {
+        Aggregate aggregate = byUser.get(userId);
+        if (aggregate == null) {
+            return;
+        }
+        synchronized (aggregate) {
+            if (aggregate.loaded && !aggregate.retired) {
+                aggregate.version = versions.incrementAndGet();
+                action.apply(aggregate);
+                aggregate.lastUsed = System.currentTimeMillis();
+                changesApplied.increment();
+            }
+        }
+    }
+
+    private void load(Long userId, Aggregate aggregate) {
+        loading.incrementAndGet();
+        try {
+            List<Long> cartIds = jdbcTemplate.queryForList(
+                    "SELECT cart_id FROM cart WHERE user_id = ? AND is_active = 1", Long.class, userId);
+            aggregate.cartId = cartIds.isEmpty() ? null : cartIds.get(0);
+
+            do {
+                aggregate.lines.keySet().forEach(userByCartItem::remove);
+                aggregate.lines.clear();
+                aggregate.subtotal = BigDecimal.ZERO;
+                if (aggregate.cartId != null) {
+                    jdbcTemplate.query(SELECT_LINES + " WHERE ci.cart_id = ? ORDER BY ci.added_at, ci.cart_item_id", rs -> {
+                        Line line = toLine(userId, rs);
+                        aggregate.put(line);
+                        userByCartItem.put(line.cartItemId(), userId);
+                    }, aggregate.cartId);
+                }
+            } while (changedWhileLoading(aggregate));
+        } finally {
+            loading.decrementAndGet();
+        }
+
+        aggregate.version = versions.incrementAndGet();
+        aggregate.loaded = true;
+        loads.increment();
+        log.debug("Loaded cart of user {}: {} lines", userId, aggregate.lines.size());
+    }
+
+    /**
+     * Whether a change committed to one of the loaded lines before its user
+     * was known, so that the lines read may predate it
+     */
+    private boolean changedWhileLoading(Aggregate aggregate) {
+        boolean changed = false;
+        for (Long cartItemId : aggregate.lines.keySet()) {
+            if (changedWhileLoading.remove(cartItemId) != null) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Newest first
+     */
+    private static void addItems(Aggregate aggregate, List<CartItemResponse> items) {
+        for (Line line : aggregate.lines.values()) {
+            items.add(line.item());
+        }
+        Collections.reverse(items);
+    }
+
+    private static Line toLine(Long userId, ResultSet rs) throws SQLException {
+        CartItemResponse.Product product = new CartItemResponse.Product(
+                rs.getLong("product_id"),
+                rs.getString("name"),
+                rs.getString("brand"),
+                rs.getString("category_id"),
+                rs.getBigDecimal("selling_price"),
+                rs.getBigDecimal("mrp"),
+                rs.getString("unit"),
+                rs.getString("image_url"),
+                rs.getString("rfid_tag"));
+        long cartItemId = rs.getLong("cart_item_id");
+        return new Line(cartItemId, rs.getBigDecimal("subtotal"),
+                new CartItemResponse(cartItemId, userId, rs.getInt("quantity"), product));
+    }
+
+    private static Object[] prepend(Object first, Collection<?> rest) {
+        Object[] args = new Object[rest.size() + 1];
+        args[0] = first;
+        int i = 1;
+        for (Object value : rest) {
+            args[i++] = value;
+        }
+        return args;
+    }
+}
@@ -0,0 +1,351 @@
+package com.cognizant.smartpay.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The EPCs read into each active cart.
+ *
+ * Tags are serialized EPCs, one per physical item, but cart_items only holds
+ * quantities, so a second read of the same item used to look like a second
+ * unit. Each cart now records the EPCs it has counted in cart_item_epcs, and
+ * the quantity of a scanned product is the number of its distinct EPCs there.
+ *
+ * The table is the record; in front of it each cart has an in-memory set, an
+ * open-addressing table of 64-bit EPC keys with the product of each, in two
+ * long arrays, so repeated reads are dropped without a query. A set is
+ * rebuilt from the table on first use, so it survives restarts and the idle
+ * sweep. EPCs are deleted when the cart is checked out or cleared, for a
+ * product when its line is removed, and the surplus ones when its line is
+ * lowered by hand.
+ */
+@Component
+@Slf4j
+public class CartEpcs {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long idleMillis;
+    private final Map<Long, EpcSet> carts = new ConcurrentHashMap<>();
+
+    private final LongAdder counted = new LongAdder();
+    private final LongAdder repeated = new LongAdder();
+    private final LongAdder rebuilt = new LongAdder();
+
+    public CartEpcs(JdbcTemplate jdbcTemplate, @Value("${app.rfid.cart-epcs.idle-ms:7200000}") long idleMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Record EPCs read into a cart and return those it had not counted yet, in
+     * their original order. EPCs without a product are ignored. The new EPCs
+     * are written to cart_item_epcs in the current transaction; if it rolls
+     * back, they are forgotten again.
+     */
+    public List<String> addNew(Long cartId, List<String> epcs, Map<String, RFIDTagCache.TagProduct> products) {
+        List<String> fresh = new ArrayList<>();
+        List<Long> freshKeys = new ArrayList<>();
+
+        while (true) {
+            EpcSet set = carts.get(cartId);
+            if (set == null) {
+                // Restart or idle sweep: the EPCs counted so far are in the table
+                EpcSet loaded = load(cartId);
+                set = carts.putIfAbsent(cartId, loaded);
+                if (set == null) {
+                    set = loaded;
+                }
+            }
+            synchronized (set) {
+                // Swept concurrently: start over with a new set
+                if (set.retired) {
+                    continue;
+                }
+                set.lastUsed = System.currentTimeMillis();
+                for (String epc : epcs) {
+                    RFIDTagCache.TagProduct product = products.get(epc);
+                    if (product == null) {
+                        continue;
+                    }
+                    long key = EpcKeys.key(epc);
+                    if (set.add(key, product.productId())) {
+                        fresh.add(epc);
+                        freshKeys.add(key);
+                    }
+                }
+            }
+            break;
+        }
+
+        counted.add(fresh.size());
+        repeated.add(epcs.size() - fresh.size());
+        if (!freshKeys.isEmpty()) {
+            TransactionCallbacks.afterRollback(() -> forget(cartId, freshKeys));
+
+            // IGNORE: an EPC another instance counted already stays counted once
+            List<Object> args = new ArrayList<>();
+            for (String epc : fresh) {
+                args.addAll(List.of(cartId, epc, products.get(epc).productId()));
+            }
+            jdbcTemplate.update("INSERT IGNORE INTO cart_item_epcs (cart_id, rfid_tag, product_id, added_at) VALUES "
+                    + String.join(", ", Collections.nCopies(fresh.size(), "(?, ?, ?, NOW())")), args.toArray());
+        }
+        return fresh;
+    }
+
+    /**
+     * Number of distinct EPCs counted in a cart for each of the given products,
+     * including those written by the current transaction
+     */
+    public Map<Long, Integer> counts(Long cartId, Collection<Long> productIds) {
+        Map<Long, Integer> counts = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return counts;
+        }
+        List<Object> args = new ArrayList<>();
+        args.add(cartId);
+        args.addAll(productIds);
+        jdbcTemplate.query("SELECT product_id, COUNT(*) AS epcs FROM cart_item_epcs WHERE cart_id = ? AND product_id IN ("
+                        + String.join(",", Collections.nCopies(productIds.size(), "?")) + ") GROUP BY product_id",
+                rs -> {
+                    counts.put(rs.getLong("product_id"), rs.getInt("epcs"));
+                }, args.toArray());
+        return counts;
+    }
+
+    /**
+     * Forget the EPCs of a product removed from a cart, so putting it back
+     * counts again. The rows are deleted in the current transaction and the
+     * in-memory set follows once it commits.
+     */
+    public void removeProduct(Long cartId, Long productId) {
+        jdbcTemplate.update("DELETE FROM cart_item_epcs WHERE cart_id = ? AND product_id = ?", cartId, productId);
+        TransactionCallbacks.afterCommit(() -> {
+            EpcSet set = carts.get(cartId);
+            if (set != null) {
+                synchronized (set) {
+                    set.removeProduct(productId);
+                }
+            }
+        });
+    }
+
+    /**
+     * Keep the first {@code quantity} EPCs counted for a product in a cart
+     * and forget the rest, newest first, after its line was lowered by hand,
+     * so putting those items back counts them again. The rows are deleted in
+     * the current transaction and the in-memory set follows once it commits.
+     */
+    public void trim(Long cartId, Long productId, int quantity) {
+        List<String> epcs = jdbcTemplate.queryForList(
+                "SELECT rfid_tag FROM cart_item_epcs WHERE cart_id = ? AND product_id = ? ORDER BY added_at, rfid_tag",
+                String.class, cartId, productId);
+        if (epcs.size() <= quantity) {
+            return;
+        }
+        List<String> surplus = epcs.subList(quantity, epcs.size());
+
+        List<Object> args = new ArrayList<>();
+        args.add(cartId);
+        args.addAll(surplus);
+        jdbcTemplate.update("DELETE FROM cart_item_epcs WHERE cart_id = ? AND rfid_tag IN ("
+                + String.join(",", Collections.nCopies(surplus.size(), "?")) + ")", args.toArray());
+
+        List<Long> keys = surplus.stream().map(EpcKeys::key).toList();
+        TransactionCallbacks.afterCommit(() -> forget(cartId, keys));
+    }
+
+    /**
+     * Forget every EPC of a cart that was checked out or cleared, in the
+     * current transaction; the in-memory set is dropped once it commits
+     */
+    public void discard(Long cartId) {
+        jdbcTemplate.update("DELETE FROM cart_item_epcs WHERE cart_id = ?", cartId);
+        TransactionCallbacks.afterCommit(() -> {
+            EpcSet set = carts.remove(cartId);
+            if (set != null) {
+                synchronized (set) {
+                    set.retired = true;
+                }
+            }
+        });
+    }
+
+    /**
+     * Drop sets of carts that have not been scanned into for a long time
+     */
+    @Scheduled(fixedDelayString = "${app.rfid.cart-epcs.sweep-ms:600000}")
+    public void sweep() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        carts.forEach((cartId, set) -> {
+            synchronized (set) {
+                if (set.lastUsed < cutoff) {
+                    set.retired = true;
+                    carts.remove(cartId, set);
+                }
+            }
+        });
+    }
+
+    /**
+     * Tracked carts and EPC counters
+     */
+    public Map<String, Object> getStats() {
+        long epcCount = 0;
+        for (EpcSet set : carts.values()) {
+            synchronized (set) {
+                epcCount += set.size;
+            }
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("carts", carts.size());
+        stats.put("epcs", epcCount);
+        stats.put("counted", counted.sum());
+        stats.put("repeated", repeated.sum());
+        stats.put("rebuilt", rebuilt.sum());
+        return stats;
+    }
+
+    /**
+     * Rebuild a cart's set from the EPCs recorded for it
+     */
+    private EpcSet load(Long cartId) {
+        EpcSet set = new EpcSet();
+        jdbcTemplate.query("SELECT rfid_tag, product_id FROM cart_item_epcs WHERE cart_id = ?", rs -> {
+            set.add(EpcKeys.key(rs.getString("rfid_tag")), rs.getLong("product_id"));
+        }, cartId);
+        if (set.size > 0) {
+            rebuilt.increment();
+        }
+        return set;
+    }
+
+    private void forget(Long cartId, List<Long> keys) {
+        EpcSet set = carts.get(cartId);
+        if (set != null) {
+            synchronized (set) {
+                for (long key : keys) {
+                    set.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * EPC keys of one cart with their products. Guarded by its own monitor.
+     */
+    private static final class EpcSet {
+
+        private static final int MIN_CAPACITY = 16;
+
+        private long[] keys = new long[MIN_CAPACITY];
+        private long[] productIds = new long[MIN_CAPACITY];
+        private int size;
+        private long lastUsed = System.currentTimeMillis();
+        private boolean retired;
+
+        /**
+         * Insert a key; false if it is already present
+         */
+        boolean add(long key, long productId) {
+            int mask = keys.length - 1;
+            int i = (int) key & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            productIds[i] = productId;
+            size++;
+
+            if (size * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            return true;
+        }
+
+        void remove(long key) {
+            int mask = keys.length - 1;
+            int i = (int) key & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    delete(i);
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        void removeProduct(long productId) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && productIds[i] == productId) {
+                    keys[i] = 0;
+                    size--;
+                }
+            }
+            // Clearing slots in place breaks probe chains: rehash what is left
+            resize(keys.length);
+        }
+
+        /**
+         * Empty a slot and shift later entries of its probe chain back into
+         * the gap, so lookups never stop early at a hole
+         */
+        private void delete(int slot) {
+            int mask = keys.length - 1;
+            int gap = slot;
+            int i = slot;
+            while (true) {
+                i = (i + 1) & mask;
+                if (keys[i] == 0) {
+                    break;
+                }
+                int home = (int) keys[i] & mask;
+                // Move the entry unless its home lies cyclically in (gap, i]
+                boolean movable = gap <= i ? home <= gap || home > i : home <= gap && home > i;
+                if (movable) {
+                    keys[gap] = keys[i];
+                    productIds[gap] = productIds[i];
+                    gap = i;
+                }
+            }
+            keys[gap] = 0;
+            productIds[gap] = 0;
+            size--;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            long[] oldProductIds = productIds;
+            keys = new long[capacity];
+            productIds = new long[capacity];
+
+            int mask = capacity - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != 0) {
+                    int i = (int) oldKeys[j] & mask;
+                    while (keys[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    productIds[i] = oldProductIds[j];
+                }
+            }
+        }
+    }
+}
@@ -1,15 +1,25 @@
 package com.cognizant.smartpay.service;
 
+import com.cognizant.smartpay.dto.CartBatchRequest;
+import com.cognizant.smartpay.dto.CartItemResponse;
+import com.cognizant.smartpay.dto.CartTotalResponse;
+import com.cognizant.smartpay.dto.CartView;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Service for cart operations
@@ -20,55 +30,25 @@ import java.util.Map;
 public class CartService {
 
     private final JdbcTemplate jdbcTemplate;
+    private final RFIDTagCache rfidTagCache;
+    private final CartEpcs cartEpcs;
+    private final LaneSessionRegistry laneSessions;
+    private final CartAggregates cartAggregates;
+    private final CartUpdateStream cartUpdateStream;
 
     /**
-     * Get cart items for a user with product details
+     * A line being changed: its cart, product and current price
      */
-    public List<Map<String, Object>> getCartItems(Long userId) {
-        log.debug("Fetching cart items for user: {}", userId);
+    private record BatchLine(long cartId, long productId, BigDecimal price) {
+    }
 
-        String sql = """
-            SELECT 
-                ci.cart_item_id as id,
-                ci.quantity,
-                p.product_id as productId,
-                p.name as productName,
-                p.brand,
-                p.category_id as categoryId,
-                p.selling_price as price,
-                p.mrp,
-                p.unit,
-                p.image_url as imageUrl,
-                ci.subtotal,
-                rt.rfid_tag
-            FROM cart c
-            JOIN cart_items ci ON c.cart_id = ci.cart_id
-            JOIN products p ON ci.product_id = p.product_id
-            LEFT JOIN rfid_tags rt ON p.product_id = rt.product_id -- ADD THIS JOIN
-            WHERE c.user_id = ? AND c.is_active = 1
-            ORDER BY ci.added_at DESC
-            """;
+    /**
+     * Get cart items for a user with product details, newest first
+     */
+    public List<CartItemResponse> getCartItems(Long userId) {
+        log.debug("Fetching cart items for user: {}", userId);
 
-        List<Map<String, Object>> items = jdbcTemplate.query(sql, (rs, rowNum) -> {
-            Map<String, Object> item = new HashMap<>();
-            item.put("id", rs.getLong("id"));
-            item.put("userId", userId);
-            item.put("quantity", rs.getInt("quantity"));
-
-            // Product details nested in 'item' object for frontend compatibility
-            Map<String, Object> product = new HashMap<>();
-            product.put("id", rs.getLong("productId"));
-            product.put("name", rs.getString("productName"));
-            product.put("brand", rs.getString("brand"));
-            product.put("category", rs.getString("categoryId"));
-            product.put("price", rs.getBigDecimal("price"));
-            product.put("mrp", rs.getBigDecimal("mrp"));
-            product.put("unit", rs.getString("unit"));
-            product.put("imageUrl", rs.getString("imageUrl"));
-            product.put("rfidTag", rs.getString("rfid_tag")); // Matches frontend cartItem.item.rfidTag
-            item.put("item", product);
-            return item;
-        }, userId);
+        List<CartItemResponse> items = cartAggregates.items(userId);
 
         log.info("Found {} cart items for user {}", items.size(), userId);
         return items;
@@ -77,35 +57,47 @@ public class CartService {
     /**
      * Get cart total with breakdown
      */
-    public Map<String, Object> getCartTotal(Long userId) {
+    public CartTotalResponse getCartTotal(Long userId) {
         log.debug("Calculating cart total for user: {}", userId);
 
-        String sql = """
-            SELECT 
-                COALESCE(SUM(ci.subtotal), 0) as subtotal,
-                COUNT(ci.cart_item_id) as itemCount
-            FROM cart c
-            JOIN cart_items ci ON c.cart_id = ci.cart_id
-            WHERE c.user_id = ? AND c.is_active = 1
-            """;
+        return cartAggregates.total(userId);
+    }
+
+    /**
+     * Get cart items, total and version in one read
+     */
+    public CartView getCartView(Long userId) {
+        log.debug("Fetching cart for user: {}", userId);
+
+        return cartAggregates.view(userId);
+    }
 
-        return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
-            BigDecimal subtotal = rs.getBigDecimal("subtotal");
-            int itemCount = rs.getInt("itemCount");
+    /**
+     * Current cart version, or null when the cart is not cached; it changes
+     * whenever the cart does. Never loads the cart.
+     */
+    public Long getCartVersion(Long userId) {
+        return cartAggregates.cachedVersion(userId);
+    }
 
-            // Prices are inclusive of tax - no additional tax calculation
-            BigDecimal tax = BigDecimal.ZERO;
-            BigDecimal total = subtotal;
+    /**
+     * Subscribe a kiosk to the user's cart: the whole cart first, then its
+     * changes as they commit
+     */
+    public SseEmitter subscribe(Long userId) {
+        log.debug("Subscribing to cart of user: {}", userId);
 
-            Map<String, Object> result = new HashMap<>();
-            result.put("subtotal", subtotal);
-            result.put("discount", BigDecimal.ZERO);
-            result.put("tax", tax);
-            result.put("total", total);
-            result.put("itemCount", itemCount);
+        return cartUpdateStream.subscribe(userId, () -> cartAggregates.view(userId));
+    }
 
-            return result;
-        }, userId);
+    /**
+     * Cart cache and push counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("aggregates", cartAggregates.getStats());
+        stats.put("push", cartUpdateStream.getStats());
+        return stats;
     }
 
     /**
@@ -115,6 +107,9 @@ public class CartService {
     public void clearCart(Long userId) {
         log.debug("Clearing cart for user: {}", userId);
 
+        List<Long> cartIds = jdbcTemplate.queryForList(
+                "SELECT cart_id FROM cart WHERE user_id = ? AND is_active = 1", Long.class, userId);
+
         // Delete cart items
         String deleteItemsSql = """
             DELETE ci FROM cart_items ci
@@ -132,6 +127,10 @@ public class CartService {
             """;
 
         jdbcTemplate.update(updateCartSql, userId);
+        cartIds.forEach(cartEpcs::discard);
+        // The next scan at the user's lane starts a new cart
+        TransactionCallbacks.afterCommit(() -> laneSessions.detachCart(userId));
+        cartAggregates.cartClosed(userId);
 
         log.info("Cleared {} items from cart for user {}", deletedItems, userId);
     }
@@ -147,22 +146,39 @@ public class CartService {
             throw new IllegalArgumentException("Quantity must be at least 1");
         }
 
-        // Get the product price and calculate new subtotal
-        String updateSql = """
-            UPDATE cart_items ci
+        // The line with the price a quantity is charged at
+        List<BatchLine> lines = jdbcTemplate.query("""
+            SELECT ci.cart_id, ci.product_id, p.selling_price
+            FROM cart_items ci
             JOIN products p ON ci.product_id = p.product_id
-            SET ci.quantity = ?,
-                ci.subtotal = p.selling_price * ?,
-                ci.updated_at = NOW()
             WHERE ci.cart_item_id = ?
+            """, (rs, rowNum) -> new BatchLine(
+                rs.getLong("cart_id"), rs.getLong("product_id"), rs.getBigDecimal("selling_price")), cartItemId);
+
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("Cart item not found: " + cartItemId);
+        }
+        BatchLine line = lines.get(0);
+        int epcs = cartEpcs.counts(line.cartId(), List.of(line.productId())).getOrDefault(line.productId(), 0);
+        requireScannedQuantity(cartItemId, quantity, epcs);
+
+        BigDecimal subtotal = line.price().multiply(BigDecimal.valueOf(quantity));
+        String updateSql = """
+            UPDATE cart_items
+            SET quantity = ?, subtotal = ?, updated_at = NOW()
+            WHERE cart_item_id = ?
             """;
 
-        int updated = jdbcTemplate.update(updateSql, quantity, quantity, cartItemId);
+        int updated = jdbcTemplate.update(updateSql, quantity, subtotal, cartItemId);
 
         if (updated == 0) {
             throw new IllegalArgumentException("Cart item not found: " + cartItemId);
         }
 
+        // Putting the items taken out back in the basket counts them again
+        cartEpcs.trim(line.cartId(), line.productId(), quantity);
+        cartAggregates.quantityChanged(cartItemId, quantity, subtotal);
+
         log.info("Updated cart item {} to quantity {}", cartItemId, quantity);
     }
 
@@ -173,6 +189,9 @@ public class CartService {
     public void removeCartItem(Long cartItemId) {
         log.debug("Removing cart item: {}", cartItemId);
 
+        List<Long[]> items = jdbcTemplate.query("SELECT cart_id, product_id FROM cart_items WHERE cart_item_id = ?",
+                (rs, rowNum) -> new Long[]{rs.getLong("cart_id"), rs.getLong("product_id")}, cartItemId);
+
         String deleteSql = "DELETE FROM cart_items WHERE cart_item_id = ?";
         int deleted = jdbcTemplate.update(deleteSql, cartItemId);
 
@@ -180,9 +199,129 @@ public class CartService {
             throw new IllegalArgumentException("Cart item not found: " + cartItemId);
         }
 
+        // Putting the item back in the basket counts it again
+        Long[] item = items.get(0);
+        cartEpcs.removeProduct(item[0], item[1]);
+        cartAggregates.lineRemoved(cartItemId);
+
         log.info("Removed cart item: {}", cartItemId);
     }
 
+    /**
+     * Apply quantity changes and removals to the user's active cart in one
+     * transaction, with one batched statement for each kind. Every line must
+     * be in that cart and updated at most once, and a scanned line can only be
+     * lowered; if any change is invalid, none is applied. A line listed twice
+     * in removals is removed once.
+     */
+    @Transactional
+    public void updateCartItems(Long userId, CartBatchRequest request) {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        if (request.getUpdates() != null) {
+            for (CartBatchRequest.QuantityChange change : request.getUpdates()) {
+                if (change == null || change.getCartItemId() == null || change.getQuantity() == null) {
+                    throw new IllegalArgumentException("Each update needs a cartItemId and a quantity");
+                }
+                if (change.getQuantity() < 1) {
+                    throw new IllegalArgumentException("Quantity must be at least 1");
+                }
+                if (quantities.putIfAbsent(change.getCartItemId(), change.getQuantity()) != null) {
+                    throw new IllegalArgumentException("Cart item " + change.getCartItemId() + " is updated more than once");
+                }
+            }
+        }
+
+        Set<Long> removals = new LinkedHashSet<>();
+        if (request.getRemovals() != null) {
+            for (Long cartItemId : request.getRemovals()) {
+                if (cartItemId == null) {
+                    throw new IllegalArgumentException("Removals must be cart item IDs");
+                }
+                if (quantities.containsKey(cartItemId)) {
+                    throw new IllegalArgumentException("Cart item " + cartItemId + " is both updated and removed");
+                }
+                removals.add(cartItemId);
+            }
+        }
+
+        if (quantities.isEmpty() && removals.isEmpty()) {
+            return;
+        }
+        log.debug("Updating {} and removing {} cart items for user {}", quantities.size(), removals.size(), userId);
+
+        // Only lines of the user's active cart, with the price a quantity is charged at
+        List<Long> cartItemIds = new ArrayList<>(quantities.keySet());
+        cartItemIds.addAll(removals);
+        Map<Long, BatchLine> lines = new HashMap<>();
+        String linesSql = """
+            SELECT ci.cart_item_id, ci.cart_id, ci.product_id, p.selling_price
+            FROM cart c
+            JOIN cart_items ci ON c.cart_id = ci.cart_id
+            JOIN products p ON ci.product_id = p.product_id
+            WHERE c.user_id = ? AND c.is_active = 1 AND ci.cart_item_id IN (%s)
+            """.formatted(String.join(",", Collections.nCopies(cartItemIds.size(), "?")));
+        Object[] args = new Object[cartItemIds.size() + 1];
+        args[0] = userId;
+        for (int i = 0; i < cartItemIds.size(); i++) {
+            args[i + 1] = cartItemIds.get(i);
+        }
+        jdbcTemplate.query(linesSql, rs -> {
+            lines.put(rs.getLong("cart_item_id"), new BatchLine(
+                    rs.getLong("cart_id"), rs.getLong("product_id"), rs.getBigDecimal("selling_price")));
+        }, args);
+
+        for (Long cartItemId : cartItemIds) {
+            if (!lines.containsKey(cartItemId)) {
+                throw new IllegalArgumentException("Cart item not found: " + cartItemId);
+            }
+        }
+
+        if (!quantities.isEmpty()) {
+            // Scanned lines can only be lowered by hand; all lines are in the one active cart
+            long cartId = lines.get(cartItemIds.get(0)).cartId();
+            Map<Long, Integer> epcs = cartEpcs.counts(cartId,
+                    quantities.keySet().stream().map(cartItemId -> lines.get(cartItemId).productId()).toList());
+            quantities.forEach((cartItemId, quantity) -> requireScannedQuantity(
+                    cartItemId, quantity, epcs.getOrDefault(lines.get(cartItemId).productId(), 0)));
+
+            List<Object[]> updates = new ArrayList<>();
+            quantities.forEach((cartItemId, quantity) -> {
+                BigDecimal subtotal = lines.get(cartItemId).price().multiply(BigDecimal.valueOf(quantity));
+                updates.add(new Object[]{quantity, subtotal, cartItemId});
+                cartAggregates.quantityChanged(cartItemId, quantity, subtotal);
+            });
+            String updateSql = """
+                UPDATE cart_items
+                SET quantity = ?, subtotal = ?, updated_at = NOW()
+                WHERE cart_item_id = ?
+                """;
+            requireAll(jdbcTemplate.batchUpdate(updateSql, updates), updates);
+
+            // Putting the items taken out back in the basket counts them again
+            quantities.forEach((cartItemId, quantity) -> {
+                BatchLine line = lines.get(cartItemId);
+                cartEpcs.trim(line.cartId(), line.productId(), quantity);
+            });
+        }
+
+        if (!removals.isEmpty()) {
+            List<Object[]> deletes = new ArrayList<>();
+            for (Long cartItemId : removals) {
+                deletes.add(new Object[]{cartItemId});
+                cartAggregates.lineRemoved(cartItemId);
+            }
+            requireAll(jdbcTemplate.batchUpdate("DELETE FROM cart_items WHERE cart_item_id = ?", deletes), deletes);
+
+            // Putting the items back in the basket counts them again
+            for (Long cartItemId : removals) {
+                BatchLine line = lines.get(cartItemId);
+                cartEpcs.removeProduct(line.cartId(), line.productId());
+            }
+        }
+
+        log.info("Updated {} and removed {} cart items for user {}", quantities.size(), removals.size(), userId);
+    }
+
     /**
      * Add item to cart by RFID tag
      */
@@ -190,13 +329,13 @@ public class CartService {
     public void addItemByRfid(Long userId, String rfidTag) {
         log.debug("Adding item by RFID tag: {} for user: {}", rfidTag, userId);
 
-        // First, get product ID from RFID tag
-        String productSql = "SELECT product_id FROM rfid_tags WHERE rfid_tag = ? AND is_active = 1";
-        Long productId = jdbcTemplate.queryForObject(productSql, Long.class, rfidTag);
+        // First, get product and price from RFID tag
+        RFIDTagCache.TagProduct tagProduct = rfidTagCache.resolve(rfidTag);
 
-        if (productId == null) {
+        if (tagProduct == null) {
             throw new IllegalArgumentException("Product not found for RFID tag: " + rfidTag);
         }
+        Long productId = tagProduct.productId();
 
         // Get or create cart for user - ensure only one active cart per user
         String getCartIdSql = "SELECT cart_id FROM cart WHERE user_id = ? AND is_active = 1";
@@ -213,23 +352,25 @@ public class CartService {
             cartId = cartIds.get(0);
         }
 
-        // Get product price
-        String priceSql = "SELECT selling_price FROM products WHERE product_id = ?";
-        BigDecimal price = jdbcTemplate.queryForObject(priceSql, BigDecimal.class, productId);
+        // A tag read into the cart before is the same item, not another unit
+        if (cartEpcs.addNew(cartId, List.of(rfidTag), Map.of(rfidTag, tagProduct)).isEmpty()) {
+            log.debug("RFID tag {} is already in cart {}", rfidTag, cartId);
+            return;
+        }
+
+        BigDecimal price = tagProduct.price();
+
+        // The line holds as many units as distinct EPCs were read for the product
+        int quantity = cartEpcs.counts(cartId, List.of(productId)).getOrDefault(productId, 0);
 
         // Check if item already exists in cart
-        String checkSql = "SELECT cart_item_id, quantity FROM cart_items WHERE cart_id = ? AND product_id = ?";
-        List<Map<String, Object>> existingItems = jdbcTemplate.query(checkSql, (rs, rowNum) -> {
-            Map<String, Object> item = new HashMap<>();
-            item.put("cartItemId", rs.getLong("cart_item_id"));
-            item.put("quantity", rs.getInt("quantity"));
-            return item;
-        }, cartId, productId);
+        String checkSql = "SELECT cart_item_id FROM cart_items WHERE cart_id = ? AND product_id = ?";
+        List<Long> existingItems = jdbcTemplate.queryForList(checkSql, Long.class, cartId, productId);
 
         if (!existingItems.isEmpty()) {
             // Update existing item quantity
-            Long cartItemId = (Long) existingItems.get(0).get("cartItemId");
-            int newQuantity = (Integer) existingItems.get(0).get("quantity") + 1;
+            Long cartItemId = existingItems.get(0);
+            int newQuantity = quantity;
 
             String updateSql = """
                 UPDATE cart_items 
@@ -237,17 +378,45 @@ public class CartService {
                 WHERE cart_item_id = ?
                 """;
             jdbcTemplate.update(updateSql, newQuantity, price, newQuantity, cartItemId);
+            cartAggregates.quantityChanged(cartItemId, newQuantity, price.multiply(BigDecimal.valueOf(newQuantity)));
 
             log.info("Updated existing cart item {} to quantity {}", cartItemId, newQuantity);
         } else {
             // Add new item to cart
             String insertSql = """
                 INSERT INTO cart_items (cart_id, product_id, quantity, unit_price, subtotal, added_at, updated_at)
-                VALUES (?, ?, 1, ?, ?, NOW(), NOW())
+                VALUES (?, ?, ?, ?, ? * ?, NOW(), NOW())
                 """;
-            jdbcTemplate.update(insertSql, cartId, productId, price, price);
+            jdbcTemplate.update(insertSql, cartId, productId, quantity, price, price, quantity);
+            cartAggregates.linesAdded(userId, cartId, List.of(productId));
 
             log.info("Added new item to cart: product {} for user {}", productId, userId);
         }
     }
+
+    /**
+     * A scanned line holds one unit per EPC counted for its product, and only
+     * a scan adds one: a quantity set by hand may lower it, which forgets the
+     * surplus EPCs, but not raise it above them. Lines without EPCs can be set
+     * freely.
+     */
+    private static void requireScannedQuantity(Long cartItemId, int quantity, int epcs) {
+        if (epcs > 0 && quantity > epcs) {
+            throw new IllegalArgumentException("Cart item " + cartItemId + " holds " + epcs
+                    + " scanned items; scan more items to raise its quantity");
+        }
+    }
+
+    /**
+     * Fail the batch if a line went away since it was read; the cart item ID
+     * is the last argument of each statement
+     */
+    private static void requireAll(int[] counts, List<Object[]> batch) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                Object[] args = batch.get(i);
+                throw new IllegalArgumentException("Cart item not found: " + args[args.length - 1]);
+            }
+        }
+    }
 }
@@ -0,0 +1,431 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.dto.CartDelta;
+import com.cognizant.smartpay.dto.CartItemResponse;
+import com.cognizant.smartpay.dto.CartTotalResponse;
+import com.cognizant.smartpay.dto.CartView;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Pushes cart changes to subscribed kiosks over server-sent events, so they
+ * no longer poll the cart after every scan.
+ *
+ * A subscriber first gets the whole cart as a "cart" event. Changes that
+ * {@link CartAggregates} applies after commit are then collected per user and
+ * sent as one "delta" event app.cart.push.coalesce-ms after the first of them,
+ * so a scan burst that touches many lines is one event. Lines in a delta carry
+ * absolute quantities, and deltas no newer than a subscriber's snapshot are
+ * skipped for it.
+ *
+ * Sends never run on the coalescing thread or under a lock. Every subscriber
+ * has its own queue of events, drained in order by one of
+ * app.cart.push.senders threads, so a slow kiosk only holds up itself. A
+ * subscriber whose send fails, whose send has been blocked for
+ * app.cart.push.send-timeout-ms, or that falls app.cart.push.max-queued-events
+ * behind is disconnected; its EventSource reconnects and starts from a fresh
+ * snapshot.
+ *
+ * Lock order: a channel's monitor (membership), then the channel's pending
+ * changes, then a subscriber's monitor (its queue).
+ */
+@Component
+@Slf4j
+public class CartUpdateStream {
+
+    private static final long NO_VERSION = Long.MIN_VALUE;
+
+    private final long coalesceMillis;
+    private final long timeoutMillis;
+    private final long sendTimeoutMillis;
+    private final int maxQueuedEvents;
+
+    private final ScheduledThreadPoolExecutor flusher;
+    private final ThreadPoolExecutor senders;
+    private final Map<Long, Channel> channels = new ConcurrentHashMap<>();
+
+    private final LongAdder subscriptions = new LongAdder();
+    private final LongAdder changes = new LongAdder();
+    private final LongAdder deltas = new LongAdder();
+    private final LongAdder failedSends = new LongAdder();
+    private final LongAdder slowSubscribers = new LongAdder();
+
+    /**
+     * Changes not sent yet. Guarded by itself.
+     */
+    private static final class Pending {
+        // Changed lines by cart item ID; null for a removed line
+        final LinkedHashMap<Long, CartItemResponse> lines = new LinkedHashMap<>();
+        boolean cleared;
+        CartTotalResponse total;
+        long version;
+        boolean scheduled;
+    }
+
+    /**
+     * Subscribers to one user's cart. Membership changes under its monitor.
+     */
+    private static final class Channel {
+        final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+        final Pending pending = new Pending();
+        boolean retired;
+    }
+
+    /**
+     * An event waiting to be sent; deltas carry the cart version they bring
+     * the kiosk to, other events {@link #NO_VERSION}
+     */
+    private record Outgoing(SseEmitter.SseEventBuilder event, long version) {
+    }
+
+    /**
+     * One kiosk connection and the events not sent to it yet. Guarded by its
+     * own monitor; sends are made without holding it.
+     */
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        final ArrayDeque<Outgoing> queue = new ArrayDeque<>();
+        // Version of the snapshot sent first; nothing is sent before it is taken
+        long snapshotVersion = NO_VERSION;
+        boolean ready;
+        boolean draining;
+        boolean closed;
+        // When the send in progress started, 0 when none is
+        volatile long sendingSince;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+
+    public CartUpdateStream(@Value("${app.cart.push.coalesce-ms:100}") long coalesceMillis,
+                            @Value("${app.cart.push.timeout-ms:1800000}") long timeoutMillis,
+                            @Value("${app.cart.push.senders:4}") int senderThreads,
+                            @Value("${app.cart.push.send-timeout-ms:10000}") long sendTimeoutMillis,
+                            @Value("${app.cart.push.max-queued-events:64}") int maxQueuedEvents) {
+        this.coalesceMillis = coalesceMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+        this.maxQueuedEvents = maxQueuedEvents;
+        this.flusher = new ScheduledThreadPoolExecutor(1, daemon("cart-push"));
+        // At most one drain task per subscriber is queued at a time
+        this.senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), daemon("cart-push-send"));
+    }
+
+    /**
+     * Subscribe to a user's cart, starting with the cart as it is now
+     */
+    public SseEmitter subscribe(Long userId, Supplier<CartView> snapshot) {
+        return subscribe(userId, snapshot, new SseEmitter(timeoutMillis));
+    }
+
+    SseEmitter subscribe(Long userId, Supplier<CartView> snapshot, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter);
+        Channel channel;
+        while (true) {
+            channel = channels.computeIfAbsent(userId, k -> new Channel());
+            synchronized (channel) {
+                // Last subscriber left concurrently: start over
+                if (!channel.retired) {
+                    channel.subscribers.add(subscriber);
+                    break;
+                }
+            }
+        }
+        Channel joined = channel;
+        emitter.onCompletion(() -> drop(userId, joined, subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> drop(userId, joined, subscriber));
+        subscriptions.increment();
+
+        // Changes from here on are queued for the subscriber, so the snapshot
+        // can be read without holding anything up; deltas it already covers
+        // are skipped when they are sent
+        CartView view;
+        try {
+            view = snapshot.get();
+        } catch (RuntimeException e) {
+            drop(userId, joined, subscriber);
+            throw e;
+        }
+
+        boolean start;
+        synchronized (subscriber) {
+            subscriber.snapshotVersion = view.version();
+            subscriber.queue.addFirst(new Outgoing(SseEmitter.event().name("cart").data(view), NO_VERSION));
+            subscriber.ready = true;
+            start = startDrain(subscriber);
+        }
+        if (start) {
+            submit(userId, joined, subscriber);
+        }
+        log.debug("Kiosk subscribed to cart of user {}", userId);
+        return emitter;
+    }
+
+    /**
+     * Whether anyone is subscribed to the user's cart
+     */
+    public boolean isWatched(Long userId) {
+        return channels.containsKey(userId);
+    }
+
+    /**
+     * A line was added or its quantity changed
+     */
+    public void lineChanged(Long userId, CartItemResponse item, CartTotalResponse total, long version) {
+        record(userId, pending -> pending.lines.put(item.id(), item), total, version);
+    }
+
+    /**
+     * A line was removed
+     */
+    public void lineRemoved(Long userId, Long cartItemId, CartTotalResponse total, long version) {
+        record(userId, pending -> pending.lines.put(cartItemId, null), total, version);
+    }
+
+    /**
+     * The cart was checked out or cleared
+     */
+    public void cartCleared(Long userId, long version) {
+        record(userId, pending -> {
+            pending.lines.clear();
+            pending.cleared = true;
+        }, CartTotalResponse.of(BigDecimal.ZERO, 0), version);
+    }
+
+    /**
+     * Keep idle connections open through proxies, and disconnect subscribers
+     * whose send has been blocked too long
+     */
+    @Scheduled(fixedDelayString = "${app.cart.push.heartbeat-ms:15000}")
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        channels.forEach((userId, channel) -> {
+            for (Subscriber subscriber : channel.subscribers) {
+                long since = subscriber.sendingSince;
+                if (since != 0 && now - since > sendTimeoutMillis) {
+                    slowSubscribers.increment();
+                    log.debug("Dropping cart subscriber of user {}: send blocked for {} ms", userId, now - since);
+                    fail(userId, channel, subscriber, new IOException("Send timed out"));
+                } else {
+                    offer(userId, channel, subscriber, new Outgoing(SseEmitter.event().comment("keepalive"), NO_VERSION));
+                }
+            }
+        });
+    }
+
+    /**
+     * Subscriber and coalescing counters
+     */
+    public Map<String, Object> getStats() {
+        long changeCount = changes.sum();
+        long deltaCount = deltas.sum();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("watchedCarts", channels.size());
+        stats.put("subscribers", channels.values().stream().mapToInt(channel -> channel.subscribers.size()).sum());
+        stats.put("subscriptions", subscriptions.sum());
+        stats.put("changes", changeCount);
+        stats.put("deltas", deltaCount);
+        stats.put("changesPerDelta", deltaCount == 0 ? 0.0 : (double) changeCount / deltaCount);
+        stats.put("failedSends", failedSends.sum());
+        stats.put("slowSubscribers", slowSubscribers.sum());
+        stats.put("queuedDrains", senders.getQueue().size());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+        senders.shutdownNow();
+        channels.values().forEach(channel -> channel.subscribers.forEach(subscriber -> subscriber.emitter.complete()));
+    }
+
+    private interface PendingAction {
+        void apply(Pending pending);
+    }
+
+    private void record(Long userId, PendingAction action, CartTotalResponse total, long version) {
+        Channel channel = channels.get(userId);
+        if (channel == null) {
+            return;
+        }
+
+        boolean schedule;
+        synchronized (channel.pending) {
+            action.apply(channel.pending);
+            channel.pending.total = total;
+            channel.pending.version = version;
+            schedule = !channel.pending.scheduled;
+            channel.pending.scheduled = true;
+        }
+        changes.increment();
+
+        if (schedule) {
+            try {
+                flusher.schedule(() -> flush(userId, channel), coalesceMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shutting down: subscribers are being disconnected
+            }
+        }
+    }
+
+    private void flush(Long userId, Channel channel) {
+        CartDelta delta;
+        synchronized (channel.pending) {
+            Pending pending = channel.pending;
+            pending.scheduled = false;
+
+            List<CartItemResponse> changed = new ArrayList<>();
+            List<Long> removed = new ArrayList<>();
+            pending.lines.forEach((cartItemId, item) -> {
+                if (item != null) {
+                    changed.add(item);
+                } else {
+                    removed.add(cartItemId);
+                }
+            });
+            delta = new CartDelta(pending.cleared, changed, removed, pending.total, pending.version);
+
+            pending.lines.clear();
+            pending.cleared = false;
+
+            // Hand the delta to every subscriber before the next one can be
+            // built, so each queue gets them in order
+            deltas.increment();
+            for (Subscriber subscriber : channel.subscribers) {
+                offer(userId, channel, subscriber, new Outgoing(SseEmitter.event().name("delta").data(delta), delta.version()));
+            }
+        }
+    }
+
+    /**
+     * Queue an event for a subscriber and make sure its queue is being drained
+     */
+    private void offer(Long userId, Channel channel, Subscriber subscriber, Outgoing outgoing) {
+        boolean start = false;
+        boolean overflow = false;
+        synchronized (subscriber) {
+            if (subscriber.closed) {
+                return;
+            }
+            if (subscriber.queue.size() >= maxQueuedEvents) {
+                overflow = true;
+            } else {
+                subscriber.queue.addLast(outgoing);
+                start = startDrain(subscriber);
+            }
+        }
+
+        if (overflow) {
+            // Too far behind to catch up: let it reconnect to a fresh snapshot
+            slowSubscribers.increment();
+            log.debug("Dropping cart subscriber of user {}: {} events behind", userId, maxQueuedEvents);
+            fail(userId, channel, subscriber, new IOException("Subscriber too far behind"));
+        } else if (start) {
+            submit(userId, channel, subscriber);
+        }
+    }
+
+    /**
+     * Whether the caller has to submit a drain. Call under the subscriber's monitor.
+     */
+    private static boolean startDrain(Subscriber subscriber) {
+        if (!subscriber.ready || subscriber.draining || subscriber.queue.isEmpty()) {
+            return false;
+        }
+        subscriber.draining = true;
+        return true;
+    }
+
+    private void submit(Long userId, Channel channel, Subscriber subscriber) {
+        try {
+            senders.execute(() -> drain(userId, channel, subscriber));
+        } catch (RejectedExecutionException e) {
+            // Shutting down: subscribers are being disconnected
+        }
+    }
+
+    /**
+     * Send a subscriber's queued events in order, on a sender thread
+     */
+    private void drain(Long userId, Channel channel, Subscriber subscriber) {
+        while (true) {
+            Outgoing next;
+            synchronized (subscriber) {
+                next = subscriber.closed ? null : subscriber.queue.pollFirst();
+                if (next == null) {
+                    subscriber.draining = false;
+                    return;
+                }
+                // Already covered by the snapshot it was sent
+                if (next.version() != NO_VERSION && next.version() <= subscriber.snapshotVersion) {
+                    continue;
+                }
+            }
+
+            subscriber.sendingSince = System.currentTimeMillis();
+            try {
+                subscriber.emitter.send(next.event());
+            } catch (IOException | IllegalStateException e) {
+                // Kiosk went away
+                failedSends.increment();
+                log.debug("Dropping cart subscriber of user {}: {}", userId, e.getMessage());
+                fail(userId, channel, subscriber, e);
+            } finally {
+                subscriber.sendingSince = 0;
+            }
+        }
+    }
+
+    private void fail(Long userId, Channel channel, Subscriber subscriber, Exception cause) {
+        drop(userId, channel, subscriber);
+        subscriber.emitter.completeWithError(cause);
+    }
+
+    private void drop(Long userId, Channel channel, Subscriber subscriber) {
+        synchronized (subscriber) {
+            subscriber.closed = true;
+            subscriber.queue.clear();
+        }
+        synchronized (channel) {
+            if (channel.subscribers.remove(subscriber) && channel.subscribers.isEmpty()) {
+                channel.retired = true;
+                channels.remove(userId, channel);
+            }
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
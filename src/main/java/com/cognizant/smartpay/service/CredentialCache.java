@@ -0,0 +1,104 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.repository.BiometricRepository;
+import com.cognizant.smartpay.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded, TTL-evicting cache of active WebAuthn credentials.
+ *
+ * Resolves a credential ID to a snapshot of its biometric record and owning
+ * user without the biometric and user lookups. Entries are invalidated when a
+ * credential is enrolled or deactivated and when its user's state changes.
+ */
+@Component
+@Slf4j
+public class CredentialCache {
+
+    private final BiometricRepository biometricRepository;
+    private final UserRepository userRepository;
+    private final Cache<String, CredentialSnapshot> cache;
+
+    /**
+     * What authentication needs to know about an active credential
+     */
+    public record CredentialSnapshot(Long biometricId, Long userId, byte[] publicKey, boolean enabled) {
+    }
+
+    public CredentialCache(
+            BiometricRepository biometricRepository,
+            UserRepository userRepository,
+            @Value("${app.webauthn.credential-cache.max-size:10000}") long maxSize,
+            @Value("${app.webauthn.credential-cache.ttl:10m}") Duration ttl) {
+        this.biometricRepository = biometricRepository;
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Look up an active credential, loading it from the database on a miss
+     */
+    public Optional<CredentialSnapshot> get(String credentialId) {
+        return Optional.ofNullable(cache.get(credentialId, this::load));
+    }
+
+    /**
+     * Forget a credential once the current transaction commits
+     */
+    public void invalidate(String credentialId) {
+        if (credentialId == null) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> cache.invalidate(credentialId));
+    }
+
+    /**
+     * Forget every credential of a user once the current transaction commits
+     */
+    public void invalidateUser(Long userId) {
+        TransactionCallbacks.afterCommit(() ->
+                cache.asMap().values().removeIf(snapshot -> snapshot.userId().equals(userId)));
+    }
+
+    /**
+     * Cache counters for sizing
+     */
+    public Map<String, Object> getStats() {
+        CacheStats stats = cache.stats();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        return result;
+    }
+
+    private CredentialSnapshot load(String credentialId) {
+        log.debug("Credential cache miss: {}", credentialId);
+        return biometricRepository.findByCredentialIdAndIsActive(credentialId, true)
+                .map(biometric -> new CredentialSnapshot(
+                        biometric.getBiometricId(),
+                        biometric.getUserId(),
+                        biometric.getPublicKey(),
+                        userRepository.findById(biometric.getUserId())
+                                .map(user -> Boolean.TRUE.equals(user.getEnabled()))
+                                .orElse(false)))
+                .orElse(null);
+    }
+}
@@ -0,0 +1,105 @@
+package com.cognizant.smartpay.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Versioned log of credential additions and revocations.
+ *
+ * Versions look like {@code <epoch>-<sequence>}: the epoch changes on every
+ * restart and the sequence on every committed change. Kiosks that send a
+ * version from another epoch, or one older than the retained window, are
+ * told to do a full resync.
+ */
+@Component
+public class CredentialChangeLog {
+
+    private final long epoch = System.currentTimeMillis();
+    private final int capacity;
+
+    private final Deque<Change> changes = new ArrayDeque<>();
+    private long sequence = 0;
+
+    private record Change(long sequence, String credentialId, boolean added) {
+    }
+
+    public CredentialChangeLog(@Value("${app.webauthn.credential-changes.capacity:10000}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Current version, to be used as ETag and as the next {@code since}
+     */
+    public synchronized String currentVersion() {
+        return epoch + "-" + sequence;
+    }
+
+    /**
+     * Record an enrolled credential once the current transaction commits
+     */
+    public void recordAdded(String credentialId) {
+        record(credentialId, true);
+    }
+
+    /**
+     * Record a deactivated credential once the current transaction commits
+     */
+    public void recordRevoked(String credentialId) {
+        record(credentialId, false);
+    }
+
+    /**
+     * Net change per credential since the given version (true = added,
+     * false = revoked), or empty when the caller has to resync in full
+     */
+    public synchronized Optional<Map<String, Boolean>> changesSince(String version) {
+        String[] parts = version.split("-");
+        if (parts.length != 2) {
+            return Optional.empty();
+        }
+
+        long since;
+        try {
+            if (Long.parseLong(parts[0]) != epoch) {
+                return Optional.empty();
+            }
+            since = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+
+        long oldest = changes.isEmpty() ? sequence + 1 : changes.peekFirst().sequence();
+        if (since > sequence || since < oldest - 1) {
+            return Optional.empty();
+        }
+
+        Map<String, Boolean> net = new LinkedHashMap<>();
+        for (Change change : changes) {
+            if (change.sequence() > since) {
+                net.remove(change.credentialId());
+                net.put(change.credentialId(), change.added());
+            }
+        }
+        return Optional.of(net);
+    }
+
+    private void record(String credentialId, boolean added) {
+        if (credentialId == null || credentialId.isEmpty()) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> {
+            synchronized (this) {
+                changes.addLast(new Change(++sequence, credentialId, added));
+                while (changes.size() > capacity) {
+                    changes.removeFirst();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,267 @@
+package com.cognizant.smartpay.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Counting Bloom filter over active WebAuthn credential IDs.
+ *
+ * Lets authentication reject unknown credential IDs in memory. A negative
+ * answer is always right; a positive answer only means the database has to be
+ * asked. Counters instead of bits allow deactivated credentials to be removed
+ * without a rebuild. Until the filter has been loaded every ID is passed
+ * through; a load that fails is retried every
+ * app.webauthn.credential-filter.retry-ms.
+ *
+ * A credential removed while the filter was being rebuilt may or may not be in
+ * the rebuilt filter, depending on whether the rebuild read it before the
+ * removal committed. Such a filter is marked stale and rebuilt again on the
+ * same schedule; until then the credential can only pass, never be wrongly
+ * rejected.
+ */
+@Component
+@Slf4j
+public class CredentialFilter {
+
+    private static final int MAX_COUNT = 0xff;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int expectedCredentials;
+    private final double falsePositiveRate;
+
+    private volatile Filter filter;
+    private volatile boolean stale;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder passed = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    public CredentialFilter(
+            JdbcTemplate jdbcTemplate,
+            @Value("${app.webauthn.credential-filter.expected-credentials:100000}") int expectedCredentials,
+            @Value("${app.webauthn.credential-filter.false-positive-rate:0.001}") double falsePositiveRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.expectedCredentials = expectedCredentials;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            // Not fatal: lookups fall through to the database until the next rebuild
+            log.error("Failed to load credential filter: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Load the filter if it has not been loaded yet, and rebuild it when a
+     * removal may have been missed
+     */
+    @Scheduled(fixedDelayString = "${app.webauthn.credential-filter.retry-ms:30000}")
+    public void maintain() {
+        if (filter == null || stale) {
+            onApplicationReady();
+        }
+    }
+
+    /**
+     * Rebuild the filter from the active credentials in the database
+     */
+    public synchronized void rebuild() {
+        // Removals committed from here on are checked against the new filter
+        boolean wasStale = stale;
+        stale = false;
+        Filter fresh;
+        try {
+            Integer active = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM biometrics WHERE is_active = 1 AND credential_id IS NOT NULL", Integer.class);
+            fresh = new Filter(Math.max(expectedCredentials, 2 * (active == null ? 0 : active)), falsePositiveRate);
+
+            jdbcTemplate.query(
+                    "SELECT credential_id FROM biometrics WHERE is_active = 1 AND credential_id IS NOT NULL",
+                    rs -> {
+                        fresh.add(rs.getString("credential_id"));
+                    });
+        } catch (RuntimeException e) {
+            stale = stale || wasStale;
+            throw e;
+        }
+
+        filter = fresh;
+        rebuilds.increment();
+        log.info("Credential filter loaded: {} credentials, {} counters, {} hashes",
+                fresh.count, fresh.counters.length, fresh.hashes);
+    }
+
+    /**
+     * False when the credential is definitely not active
+     */
+    public boolean mightContain(String credentialId) {
+        Filter current = filter;
+        if (current == null || current.mightContain(credentialId)) {
+            passed.increment();
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Add an enrolled credential once the current transaction commits
+     */
+    public void add(String credentialId) {
+        if (credentialId == null || credentialId.isEmpty()) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> {
+            synchronized (this) {
+                Filter current = filter;
+                if (current == null) {
+                    return;
+                }
+                current.add(credentialId);
+                if (current.count > current.capacity) {
+                    log.info("Credential filter over capacity, rebuilding");
+                    rebuild();
+                }
+            }
+        });
+    }
+
+    /**
+     * Remove a deactivated credential once the current transaction commits.
+     * Only call this for a credential that was active until now, and once:
+     * removing a credential that was never added takes counts away from
+     * others and makes them look absent.
+     */
+    public void remove(String credentialId) {
+        if (credentialId == null || credentialId.isEmpty()) {
+            return;
+        }
+        Filter before = filter;
+        TransactionCallbacks.afterCommit(() -> {
+            synchronized (this) {
+                Filter current = filter;
+                if (current != null && current == before) {
+                    current.remove(credentialId);
+                } else if (current != null) {
+                    // Rebuilt since: it may or may not hold the credential, and
+                    // taking it out of a filter that doesn't would hide others
+                    stale = true;
+                }
+            }
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        Filter current = filter;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("loaded", current != null);
+        stats.put("stale", stale);
+        stats.put("rebuilds", rebuilds.sum());
+        stats.put("credentials", current == null ? 0 : current.count);
+        stats.put("capacity", current == null ? 0 : current.capacity);
+        stats.put("rejected", rejected.sum());
+        stats.put("passed", passed.sum());
+        return stats;
+    }
+
+    /**
+     * Fixed-size filter with 8-bit saturating counters. A saturated counter is
+     * never decremented, so removals can't introduce false negatives. Lookups
+     * share a read lock, so they see every counter of an add or remove or none.
+     */
+    private static final class Filter {
+
+        private final byte[] counters;
+        private final int hashes;
+        private final int capacity;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private volatile int count;
+
+        Filter(int capacity, double falsePositiveRate) {
+            double ln2 = Math.log(2);
+            long size = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+            this.counters = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(64, size))];
+            this.hashes = Math.max(1, (int) Math.round((double) counters.length / capacity * ln2));
+            this.capacity = capacity;
+        }
+
+        void add(String key) {
+            long h1 = Hashes.hash(key);
+            long h2 = Hashes.mix(h1) | 1;
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < hashes; i++) {
+                    int index = index(h1 + i * h2);
+                    int value = counters[index] & 0xff;
+                    if (value < MAX_COUNT) {
+                        counters[index] = (byte) (value + 1);
+                    }
+                }
+                count++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(String key) {
+            long h1 = Hashes.hash(key);
+            long h2 = Hashes.mix(h1) | 1;
+            lock.writeLock().lock();
+            try {
+                if (!contains(h1, h2)) {
+                    return;
+                }
+                for (int i = 0; i < hashes; i++) {
+                    int index = index(h1 + i * h2);
+                    int value = counters[index] & 0xff;
+                    if (value > 0 && value < MAX_COUNT) {
+                        counters[index] = (byte) (value - 1);
+                    }
+                }
+                count--;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        boolean mightContain(String key) {
+            long h1 = Hashes.hash(key);
+            long h2 = Hashes.mix(h1) | 1;
+            lock.readLock().lock();
+            try {
+                return contains(h1, h2);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private boolean contains(long h1, long h2) {
+            for (int i = 0; i < hashes; i++) {
+                if (counters[index(h1 + i * h2)] == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int index(long combined) {
+            return (int) Long.remainderUnsigned(combined, counters.length);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.cognizant.smartpay.service;
+
+/**
+ * 64-bit keys for RFID EPCs, for the primitive hash tables on the scan path.
+ *
+ * Two different EPCs share a key with probability about 2^-64 per pair, which
+ * is negligible for the few thousand tags a lane or cart holds at once. Zero is
+ * never returned, so tables can use it to mark empty slots.
+ */
+final class EpcKeys {
+
+    private EpcKeys() {
+    }
+
+    /**
+     * {@link Hashes#hash}, with zero moved to one
+     */
+    static long key(String epc) {
+        long h = Hashes.hash(epc);
+        return h == 0 ? 1 : h;
+    }
+}
@@ -0,0 +1,320 @@
+package com.cognizant.smartpay.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Resident gallery of enrolled external scanner templates.
+ *
+ * Templates live off-heap in the {@link MappedTemplateStore} and are kept in
+ * sync on enrollment, so an external_usb probe no longer pulls every template
+ * BLOB from the database. After a restart the store is reused: it is reconciled
+ * against the IDs of the active rows, and only the templates it is missing are
+ * read from MySQL. Templates too large for a
+ * store record, or all templates when the store file can't be opened, are held
+ * on heap instead.
+ *
+ * Entries are bucketed by template length (templates of different length never
+ * match) and carry a 16-bin nibble histogram. The histogram gives an upper bound
+ * on the number of equal bytes between two templates, which lets a probe skip
+ * candidates that cannot reach the match threshold without comparing them.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class FingerprintGallery {
+
+    private static final int SIGNATURE_BINS = 16;
+    private static final int ON_HEAP = -1;
+    private static final int RECONCILE_BATCH = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MappedTemplateStore templateStore;
+
+    private volatile Map<Integer, List<Entry>> buckets = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded = false;
+
+    /**
+     * A gallery entry: a read-only view of the stored template and its coarse
+     * signature. {@code slot} is the store record, or -1 for heap templates.
+     */
+    public record Entry(Long biometricId, Long userId, ByteBuffer template, int[] signature, int slot) {
+    }
+
+    /**
+     * Load all active, non-empty templates once the application is up
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            reload();
+        } catch (Exception e) {
+            // Not fatal: the gallery is loaded lazily on the first probe instead
+            log.error("Failed to preload fingerprint gallery: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuild the gallery, from the template store when it is available
+     */
+    public synchronized void reload() {
+        Map<Integer, List<Entry>> fresh = new ConcurrentHashMap<>();
+
+        boolean reused;
+        try {
+            reused = templateStore.open();
+        } catch (IOException e) {
+            log.error("Template store unavailable, keeping templates on heap: {}", e.getMessage());
+            loadFromDatabase(fresh, "");
+            publish(fresh);
+            return;
+        }
+
+        if (!reused) {
+            appendFromDatabase("");
+        } else {
+            // Catch up on rows enrolled, deactivated or deleted while we were down
+            reconcileStore();
+        }
+
+        for (int slot = 0; slot < templateStore.count(); slot++) {
+            if (templateStore.isActive(slot)) {
+                addTo(fresh, newEntry(templateStore.view(slot)));
+            }
+        }
+
+        // Templates larger than a store record are never written to it
+        loadFromDatabase(fresh, "AND LENGTH(fingerprint_template) > " + templateStore.getTemplateSize());
+
+        publish(fresh);
+    }
+
+    /**
+     * Add a newly enrolled template. When called inside a transaction the entry
+     * only becomes visible after the transaction commits.
+     */
+    public void add(Long biometricId, Long userId, byte[] template) {
+        if (template == null || template.length == 0) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> {
+            synchronized (this) {
+                Entry entry;
+                if (templateStore.isOpen() && templateStore.fits(template)) {
+                    try {
+                        entry = newEntry(templateStore.append(biometricId, userId, template));
+                    } catch (IOException e) {
+                        log.error("Failed to append template {} to store: {}", biometricId, e.getMessage());
+                        entry = newHeapEntry(biometricId, userId, template);
+                    }
+                } else {
+                    entry = newHeapEntry(biometricId, userId, template);
+                }
+                put(entry);
+            }
+        });
+    }
+
+    /**
+     * Drop a deactivated template once the current transaction commits
+     */
+    public void remove(Long biometricId) {
+        TransactionCallbacks.afterCommit(() -> {
+            synchronized (this) {
+                for (List<Entry> bucket : buckets.values()) {
+                    for (Entry entry : bucket) {
+                        if (entry.biometricId().equals(biometricId) && entry.slot() != ON_HEAP) {
+                            templateStore.deactivate(entry.slot());
+                        }
+                    }
+                    bucket.removeIf(e -> e.biometricId().equals(biometricId));
+                }
+            }
+        });
+    }
+
+    /**
+     * Find the entries that could score at least {@code minScore} against the probe
+     */
+    public List<Entry> candidates(byte[] probe, int minScore) {
+        if (!loaded) {
+            reload();
+        }
+        if (probe == null || probe.length == 0) {
+            return Collections.emptyList();
+        }
+
+        List<Entry> bucket = buckets.get(probe.length);
+        if (bucket == null) {
+            return Collections.emptyList();
+        }
+
+        int[] probeSignature = signature(ByteBuffer.wrap(probe));
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : bucket) {
+            int bound = matchUpperBound(probeSignature, entry.signature());
+            if ((int) ((double) bound / probe.length * 100) >= minScore) {
+                result.add(entry);
+            }
+        }
+
+        log.debug("Gallery probe: {} of {} templates in bucket {} are candidates",
+                result.size(), bucket.size(), probe.length);
+        return result;
+    }
+
+    /**
+     * Total number of templates held in memory
+     */
+    public int size() {
+        return buckets.values().stream().mapToInt(List::size).sum();
+    }
+
+    public boolean isEmpty() {
+        if (!loaded) {
+            reload();
+        }
+        return size() == 0;
+    }
+
+    private void publish(Map<Integer, List<Entry>> fresh) {
+        buckets = fresh;
+        loaded = true;
+        log.info("Fingerprint gallery loaded: {} templates in {} length buckets", size(), buckets.size());
+    }
+
+    /**
+     * Copy active templates into the store
+     */
+    private void appendFromDatabase(String extraCondition, Object... args) {
+        String sql = """
+            SELECT biometric_id, user_id, fingerprint_template
+            FROM biometrics
+            WHERE is_active = 1 AND LENGTH(fingerprint_template) > 0
+            """ + extraCondition + " ORDER BY biometric_id";
+
+        jdbcTemplate.query(sql, rs -> {
+            byte[] template = rs.getBytes("fingerprint_template");
+            if (templateStore.fits(template)) {
+                try {
+                    templateStore.append(rs.getLong("biometric_id"), rs.getLong("user_id"), template);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to append to template store", e);
+                }
+            }
+        }, args);
+    }
+
+    /**
+     * Load active templates straight onto the heap
+     */
+    private void loadFromDatabase(Map<Integer, List<Entry>> target, String extraCondition) {
+        String sql = """
+            SELECT biometric_id, user_id, fingerprint_template
+            FROM biometrics
+            WHERE is_active = 1 AND LENGTH(fingerprint_template) > 0
+            """ + extraCondition + " ORDER BY biometric_id";
+
+        jdbcTemplate.query(sql, rs -> {
+            addTo(target, newHeapEntry(rs.getLong("biometric_id"), rs.getLong("user_id"),
+                    rs.getBytes("fingerprint_template")));
+        });
+    }
+
+    /**
+     * Bring a reused store in line with the database. Records whose biometric
+     * is no longer active, or no longer exists, are flagged and, before the
+     * gallery is first published, compacted away; active templates the store
+     * lacks are appended whatever their ID, since a row can commit after a
+     * higher ID was already stored.
+     */
+    private void reconcileStore() {
+        Set<Long> active = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT biometric_id FROM biometrics WHERE is_active = 1 AND LENGTH(fingerprint_template) BETWEEN 1 AND ?",
+                Long.class, templateStore.getTemplateSize()));
+
+        int flagged = 0;
+        for (int slot = 0; slot < templateStore.count(); slot++) {
+            // Removing the ID also flags a second record for the same biometric
+            if (templateStore.isActive(slot) && !active.remove(templateStore.view(slot).biometricId())) {
+                templateStore.deactivate(slot);
+                flagged++;
+            }
+        }
+
+        // No entry views the store until the first load is published
+        int dropped = loaded ? 0 : templateStore.compact();
+
+        // Left over: active in the database but not in the store
+        List<Long> missing = new ArrayList<>(active);
+        Collections.sort(missing);
+        for (int from = 0; from < missing.size(); from += RECONCILE_BATCH) {
+            List<Long> ids = missing.subList(from, Math.min(from + RECONCILE_BATCH, missing.size()));
+            appendFromDatabase("AND biometric_id IN (" + String.join(",", Collections.nCopies(ids.size(), "?")) + ")",
+                    ids.toArray());
+        }
+
+        log.info("Template store reconciled: {} records flagged inactive, {} dropped, {} templates appended",
+                flagged, dropped, missing.size());
+    }
+
+    private static void addTo(Map<Integer, List<Entry>> target, Entry entry) {
+        target.computeIfAbsent(entry.template().limit(), k -> new CopyOnWriteArrayList<>()).add(entry);
+    }
+
+    private void put(Entry entry) {
+        List<Entry> bucket = buckets.computeIfAbsent(entry.template().limit(), k -> new CopyOnWriteArrayList<>());
+        bucket.removeIf(e -> e.biometricId().equals(entry.biometricId()));
+        bucket.add(entry);
+    }
+
+    private static Entry newEntry(MappedTemplateStore.StoredTemplate stored) {
+        return new Entry(stored.biometricId(), stored.userId(), stored.template(),
+                signature(stored.template()), stored.slot());
+    }
+
+    private static Entry newHeapEntry(Long biometricId, Long userId, byte[] template) {
+        ByteBuffer view = ByteBuffer.wrap(template).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        return new Entry(biometricId, userId, view, signature(view), ON_HEAP);
+    }
+
+    /**
+     * Histogram of the high nibble of every byte
+     */
+    private static int[] signature(ByteBuffer template) {
+        int[] bins = new int[SIGNATURE_BINS];
+        for (int i = 0; i < template.limit(); i++) {
+            bins[(template.get(i) & 0xff) >>> 4]++;
+        }
+        return bins;
+    }
+
+    /**
+     * Two equal bytes always fall in the same bin, so the number of equal
+     * positions can never exceed the histogram intersection.
+     */
+    private static int matchUpperBound(int[] a, int[] b) {
+        int bound = 0;
+        for (int i = 0; i < SIGNATURE_BINS; i++) {
+            bound += Math.min(a[i], b[i]);
+        }
+        return bound;
+    }
+}
@@ -0,0 +1,36 @@
+package com.cognizant.smartpay.service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64-bit string hashing shared by the credential filter and the EPC tables.
+ */
+final class Hashes {
+
+    private Hashes() {
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, finished with a mixer
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Murmur3 64-bit finalizer
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
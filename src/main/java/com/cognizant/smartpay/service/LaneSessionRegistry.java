@@ -0,0 +1,112 @@
+package com.cognizant.smartpay.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Which shopper is checking out at which lane.
+ *
+ * Scans used to find their shopper with a query for the one user whose
+ * login_status is 'Y', which scans the users table and allows a single
+ * shopper store-wide. A lane is now bound to the user that authenticated at
+ * it, and to their active cart once it is known, so a scan resolves its
+ * shopper with one map lookup and lanes check out independently.
+ *
+ * A user is bound to at most one lane: signing in at another lane moves them.
+ * Sessions live in memory only; after a restart shoppers sign in again.
+ */
+@Component
+@Slf4j
+public class LaneSessionRegistry {
+
+    private final Map<String, LaneSession> byLane = new ConcurrentHashMap<>();
+    private final Map<Long, String> laneByUser = new ConcurrentHashMap<>();
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Shopper at a lane; cartId is null until their cart is first used
+     */
+    public record LaneSession(Long userId, Long cartId) {
+    }
+
+    /**
+     * Bind a lane to a user who has just authenticated there
+     */
+    public synchronized void open(String laneId, Long userId) {
+        String lane = laneOrDefault(laneId);
+
+        String previousLane = laneByUser.put(userId, lane);
+        if (previousLane != null && !previousLane.equals(lane)) {
+            byLane.remove(previousLane);
+        }
+
+        LaneSession previous = byLane.put(lane, new LaneSession(userId, null));
+        if (previous != null && !previous.userId().equals(userId)) {
+            laneByUser.remove(previous.userId(), lane);
+            log.info("User {} replaces user {} at lane {}", userId, previous.userId(), lane);
+        }
+    }
+
+    /**
+     * Release the lane of a user who logged out
+     */
+    public synchronized void close(Long userId) {
+        String lane = laneByUser.remove(userId);
+        if (lane != null) {
+            byLane.remove(lane);
+        }
+    }
+
+    /**
+     * The shopper at a lane, or null when nobody is signed in there
+     */
+    public LaneSession get(String laneId) {
+        lookups.increment();
+        LaneSession session = byLane.get(laneOrDefault(laneId));
+        if (session == null) {
+            misses.increment();
+        }
+        return session;
+    }
+
+    /**
+     * Remember the active cart of the shopper at a lane
+     */
+    public void attachCart(String laneId, Long userId, Long cartId) {
+        byLane.computeIfPresent(laneOrDefault(laneId),
+                (lane, session) -> session.userId().equals(userId) ? new LaneSession(userId, cartId) : session);
+    }
+
+    /**
+     * Forget a user's cart once it is checked out; the next scan starts a new one
+     */
+    public void detachCart(Long userId) {
+        String lane = laneByUser.get(userId);
+        if (lane != null) {
+            byLane.computeIfPresent(lane,
+                    (key, session) -> session.userId().equals(userId) ? new LaneSession(userId, null) : session);
+        }
+    }
+
+    /**
+     * Open lanes and lookup counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("lanes", byLane.size());
+        stats.put("lookups", lookups.sum());
+        stats.put("misses", misses.sum());
+        return stats;
+    }
+
+    private static String laneOrDefault(String laneId) {
+        return laneId == null || laneId.isBlank() ? ScanDeduplicator.DEFAULT_LANE : laneId;
+    }
+}
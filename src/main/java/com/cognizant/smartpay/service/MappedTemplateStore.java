@@ -0,0 +1,243 @@
+package com.cognizant.smartpay.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Off-heap store of external scanner templates in a memory-mapped file.
+ *
+ * The file is a header followed by fixed-stride records, so a record's offset
+ * is a function of its slot number. Each record holds the biometric ID, user
+ * ID, template length, an active flag and the template bytes, padded to the
+ * configured record size. Callers read templates through slices of the
+ * mapping, which never copy them onto the heap.
+ *
+ * The file only saves re-reading template bytes after a restart. Which rows
+ * are live is always decided by the database: on startup
+ * {@link FingerprintGallery} reconciles the store against every active ID and
+ * then compacts it, so records of deactivated templates do not pile up across
+ * re-enrollments. Compacting moves records, so it only runs before any view
+ * is handed out.
+ *
+ * File layout (little endian):
+ * <pre>
+ *   header: magic int, format int, template size int, record count int, reserved 16 bytes
+ *   record: biometric ID long, user ID long, template length int, active byte, 3 bytes padding, template
+ * </pre>
+ */
+@Component
+@Slf4j
+public class MappedTemplateStore {
+
+    private static final int MAGIC = 0x53504654; // "SPFT"
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = 24;
+
+    private static final int COUNT_OFFSET = 12;
+
+    private final Path path;
+    private final int templateSize;
+    private final int recordSize;
+
+    private FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+    private int capacity;
+
+    /**
+     * A stored template. {@code template} is a read-only view of the mapped file.
+     */
+    public record StoredTemplate(int slot, Long biometricId, Long userId, ByteBuffer template) {
+    }
+
+    public MappedTemplateStore(
+            @Value("${app.biometric.template-store.path:data/fingerprint-templates.dat}") String path,
+            @Value("${app.biometric.template-store.template-size:1024}") int templateSize) {
+        this.path = Path.of(path);
+        this.templateSize = templateSize;
+        this.recordSize = RECORD_HEADER_SIZE + templateSize;
+    }
+
+    /**
+     * Open the store file, creating it when missing or incompatible.
+     *
+     * @return false when the existing file was discarded and must be refilled
+     */
+    public synchronized boolean open() throws IOException {
+        if (channel != null) {
+            return true;
+        }
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        boolean reused = channel.size() >= HEADER_SIZE;
+        if (reused) {
+            map(slotsIn(channel.size()));
+            reused = buffer.getInt(0) == MAGIC && buffer.getInt(4) == FORMAT && buffer.getInt(8) == templateSize
+                    && HEADER_SIZE + (long) buffer.getInt(COUNT_OFFSET) * recordSize <= channel.size();
+            if (!reused) {
+                log.warn("Template store {} has an incompatible layout, recreating it", path);
+            }
+        }
+
+        if (!reused) {
+            channel.truncate(0);
+            map(1024);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT);
+            buffer.putInt(8, templateSize);
+            buffer.putInt(COUNT_OFFSET, 0);
+            buffer.force();
+        }
+
+        log.info("Template store {} opened with {} records", path, count());
+        return reused;
+    }
+
+    public int getTemplateSize() {
+        return templateSize;
+    }
+
+    public boolean isOpen() {
+        return channel != null;
+    }
+
+    /**
+     * Whether a template of this length fits in a record
+     */
+    public boolean fits(byte[] template) {
+        return template != null && template.length > 0 && template.length <= templateSize;
+    }
+
+    /**
+     * Append a template and return a view of it
+     */
+    public synchronized StoredTemplate append(Long biometricId, Long userId, byte[] template) throws IOException {
+        int slot = count();
+        if (slot >= capacity) {
+            map(capacity * 2);
+        }
+
+        int offset = offset(slot);
+        buffer.putLong(offset, biometricId);
+        buffer.putLong(offset + 8, userId);
+        buffer.putInt(offset + 16, template.length);
+        buffer.put(offset + 20, (byte) 1);
+        buffer.put(offset + RECORD_HEADER_SIZE, template);
+
+        // Publish the record only after its bytes are in place
+        buffer.putInt(COUNT_OFFSET, slot + 1);
+        buffer.force(offset, recordSize);
+        buffer.force(0, HEADER_SIZE);
+
+        return view(slot);
+    }
+
+    /**
+     * Flag a record as inactive
+     */
+    public synchronized void deactivate(int slot) {
+        buffer.put(offset(slot) + 20, (byte) 0);
+    }
+
+    /**
+     * Move the active records down over the inactive ones, keeping their
+     * order, and drop the rest. Slots change, so no view of the store may be
+     * in use. The file keeps its size; appends reuse the freed records.
+     *
+     * @return the number of records dropped
+     */
+    public synchronized int compact() {
+        int count = count();
+        int kept = 0;
+        for (int slot = 0; slot < count; slot++) {
+            if (isActive(slot)) {
+                if (kept != slot) {
+                    buffer.put(offset(kept), buffer, offset(slot), recordSize);
+                }
+                kept++;
+            }
+        }
+        if (kept == count) {
+            return 0;
+        }
+
+        // A crash before the count is written leaves duplicate active records,
+        // which the next reconcile flags
+        buffer.force();
+        buffer.putInt(COUNT_OFFSET, kept);
+        buffer.force(0, HEADER_SIZE);
+        return count - kept;
+    }
+
+    public int count() {
+        return buffer.getInt(COUNT_OFFSET);
+    }
+
+    public boolean isActive(int slot) {
+        return buffer.get(offset(slot) + 20) == 1;
+    }
+
+    /**
+     * Read-only view of a record. The template slice shares the mapped memory.
+     */
+    public StoredTemplate view(int slot) {
+        MappedByteBuffer current = buffer;
+        int offset = offset(slot);
+        int length = current.getInt(offset + 16);
+        ByteBuffer template = current.slice(offset + RECORD_HEADER_SIZE, length)
+                .asReadOnlyBuffer()
+                .order(ByteOrder.LITTLE_ENDIAN);
+        return new StoredTemplate(slot, current.getLong(offset), current.getLong(offset + 8), template);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            log.error("Failed to close template store: {}", e.getMessage());
+        }
+        channel = null;
+    }
+
+    private int offset(int slot) {
+        return HEADER_SIZE + slot * recordSize;
+    }
+
+    private int slotsIn(long fileSize) {
+        return (int) Math.max(1, (fileSize - HEADER_SIZE) / recordSize);
+    }
+
+    /**
+     * (Re)map the file to hold the given number of records. Views taken from
+     * an earlier mapping stay valid: both map the same file pages.
+     */
+    private void map(int slots) throws IOException {
+        long size = HEADER_SIZE + (long) slots * recordSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Template store is full");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        capacity = slots;
+    }
+}
@@ -1,5 +1,6 @@
 package com.cognizant.smartpay.service;
 
+import com.cognizant.smartpay.dto.CartLine;
 import com.cognizant.smartpay.entity.User;
 import com.cognizant.smartpay.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
@@ -31,6 +32,9 @@ public class PaymentService {
 
     private final JdbcTemplate jdbcTemplate;
     private final JavaMailSender mailSender;
+    private final LaneSessionRegistry laneSessions;
+    private final CartEpcs cartEpcs;
+    private final CartAggregates cartAggregates;
     private static final Logger log = LoggerFactory.getLogger(PaymentService.class);
 
     @Autowired
@@ -63,17 +67,14 @@ public class PaymentService {
             WHERE c.user_id = ? AND c.is_active = 1
             """;
 
-        List<Map<String, Object>> cartItems = jdbcTemplate.query(cartSql, (rs, rowNum) -> {
-            Map<String, Object> item = new HashMap<>();
-            item.put("cartId", rs.getLong("cart_id"));
-            item.put("productId", rs.getLong("product_id"));
-            item.put("quantity", rs.getInt("quantity"));
-            item.put("subtotal", rs.getBigDecimal("subtotal"));
-            item.put("unitPrice", rs.getBigDecimal("selling_price"));
-            item.put("productName", rs.getString("name"));
-            item.put("productBrand", rs.getString("brand"));
-            return item;
-        }, userId);
+        List<CartLine> cartItems = jdbcTemplate.query(cartSql, (rs, rowNum) -> new CartLine(
+                rs.getLong("cart_id"),
+                rs.getLong("product_id"),
+                rs.getInt("quantity"),
+                rs.getBigDecimal("subtotal"),
+                rs.getBigDecimal("selling_price"),
+                rs.getString("name"),
+                rs.getString("brand")), userId);
 
         if (cartItems.isEmpty()) {
             throw new IllegalArgumentException("Cart is empty");
@@ -81,7 +82,7 @@ public class PaymentService {
 
         // 3. Calculate total
         BigDecimal totalAmount = cartItems.stream()
-                .map(item -> (BigDecimal) item.get("subtotal"))
+                .map(CartLine::subtotal)
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
 
         // 4. Check wallet balance
@@ -93,7 +94,7 @@ public class PaymentService {
         }
 
         // 5. Generate Transaction
-        Long cartId = (Long) cartItems.get(0).get("cartId");
+        Long cartId = cartItems.get(0).cartId();
         String transactionReference = "TXN" + System.currentTimeMillis();
 
         String transactionSql = """
@@ -110,22 +111,22 @@ public class PaymentService {
                 "SELECT transaction_id FROM transactions WHERE transaction_reference = ?", Long.class, transactionReference);
 
         // 6. Update Inventory and Wallet
-        for (Map<String, Object> item : cartItems) {
-            Long productId = (Long) item.get("productId");
-            int quantityToBuy = (int) item.get("quantity");
+        for (CartLine item : cartItems) {
+            Long productId = item.productId();
+            int quantityToBuy = item.quantity();
 
             Integer currentStock = jdbcTemplate.queryForObject(
                     "SELECT stock_quantity FROM products WHERE product_id = ?", Integer.class, productId);
 
             if (currentStock == null || currentStock < quantityToBuy) {
-                throw new IllegalArgumentException("Insufficient stock for product: " + item.get("productName"));
+                throw new IllegalArgumentException("Insufficient stock for product: " + item.productName());
             }
 
             jdbcTemplate.update("""
                 INSERT INTO transaction_items (transaction_id, product_id, product_name, product_brand, quantity, unit_price, subtotal)
                 VALUES (?, ?, ?, ?, ?, ?, ?)""",
-                    transactionId, productId, item.get("productName"), item.get("productBrand"),
-                    quantityToBuy, item.get("unitPrice"), item.get("subtotal"));
+                    transactionId, productId, item.productName(), item.productBrand(),
+                    quantityToBuy, item.unitPrice(), item.subtotal());
 
             jdbcTemplate.update("UPDATE products SET stock_quantity = stock_quantity - ? WHERE product_id = ?",
                     quantityToBuy, productId);
@@ -136,13 +137,16 @@ public class PaymentService {
         // 7. Clear Cart
         jdbcTemplate.update("DELETE FROM cart_items WHERE cart_id = ?", cartId);
         jdbcTemplate.update("UPDATE cart SET is_active = 0 WHERE cart_id = ?", cartId);
+        cartEpcs.discard(cartId);
+        TransactionCallbacks.afterCommit(() -> laneSessions.detachCart(userId));
+        cartAggregates.cartClosed(userId);
 
         // 8. ASYNCHRONOUS NOTIFICATIONS (Updated to ensure background execution)
         final String fEmail = userEmail;
         final String fName = userName;
         final String fPhone = userPhone;
         final BigDecimal fAmount = totalAmount;
-        final List<Map<String, Object>> fItems = cartItems;
+        final List<CartLine> fItems = cartItems;
         final String fTxn = transactionReference;
 
         CompletableFuture.runAsync(() -> {
@@ -158,7 +162,7 @@ public class PaymentService {
         return result;
     }
 
-    public void processInvoice(String email, BigDecimal totalAmount, List<Map<String, Object>> items) {
+    public void processInvoice(String email, BigDecimal totalAmount, List<CartLine> items) {
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new RuntimeException("User not found"));
         sendEmailInvoice(user.getEmail(), user.getName(), user.getPhone(), totalAmount, items);
@@ -172,7 +176,7 @@ public class PaymentService {
 
     @Async
     public void sendEmailInvoice(String toEmail, String name, String userPhone,
-                                 BigDecimal totalAmount, List<Map<String, Object>> items) {
+                                 BigDecimal totalAmount, List<CartLine> items) {
         try {
             log.info("Starting Async Email Task for: {}", toEmail);
 
@@ -189,7 +193,7 @@ public class PaymentService {
             BigDecimal grandTotal = subtotal.add(tax);         // subtotal + tax
 
             StringBuilder itemsHtml = new StringBuilder();
-            for (Map<String, Object> item : items) {
+            for (CartLine item : items) {
                 itemsHtml.append(String.format(
                         "<tr>" +
                                 "<td style='padding: 15px 10px; font-size: 14px; color: #000048; border-bottom: 1px solid #EAECEF; width: 45%%;'>%s</td>" +
@@ -197,10 +201,10 @@ public class PaymentService {
                                 "<td style='padding: 15px 10px; font-size: 14px; color: #000048; border-bottom: 1px solid #EAECEF; text-align: right; width: 20%%;'>$ %.2f</td>" +
                                 "<td style='padding: 15px 10px; font-size: 14px; color: #000048; border-bottom: 1px solid #EAECEF; text-align: right; width: 25%%;'>$ %.2f</td>" +
                                 "</tr>",
-                        item.get("productName"),
-                        item.get("quantity"),
-                        ((BigDecimal) item.get("unitPrice")).doubleValue(),
-                        ((BigDecimal) item.get("subtotal")).doubleValue()
+                        item.productName(),
+                        item.quantity(),
+                        item.unitPrice().doubleValue(),
+                        item.subtotal().doubleValue()
                 ));
             }
 
@@ -4,8 +4,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -14,116 +20,178 @@ import java.util.Map;
 public class RFIDScanService {
 
     private final JdbcTemplate jdbcTemplate;
-
-    public RFIDScanService(JdbcTemplate jdbcTemplate) {
+    private final TransactionTemplate transactionTemplate;
+    private final RFIDTagCache tagCache;
+    private final ScanAdmission admission;
+    private final LaneSessionRegistry laneSessions;
+    private final CartEpcs cartEpcs;
+    private final CartAggregates cartAggregates;
+
+    public RFIDScanService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, RFIDTagCache tagCache,
+                           ScanAdmission admission, LaneSessionRegistry laneSessions, CartEpcs cartEpcs,
+                           CartAggregates cartAggregates) {
         this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.tagCache = tagCache;
+        this.admission = admission;
+        this.laneSessions = laneSessions;
+        this.cartEpcs = cartEpcs;
+        this.cartAggregates = cartAggregates;
     }
 
-    @Transactional
-    public void processScannedTags(List<String> scannedTags){
-        System.out.println("Listof scanned tag:"+scannedTags);
+    /**
+     * Add a scanned batch to the cart right away. A batch that fails is rolled
+     * back in full, together with the EPCs it counted, and released so that
+     * its retry is taken.
+     */
+    public void processScannedTags(String laneId, String readerId, Long sequence, List<String> scannedTags){
+        log.debug("Scanned tags: {}", scannedTags);
+
+        // Replays and repeated reads never reach the database
+        ScanAdmission.Batch batch = admission.admit(laneId, readerId, sequence, scannedTags);
+        if (batch == null) {
+            return;
+        }
 
         try{
-
-            //log.info("Adding item by RFID tag..");
-            // Logic to process scanned tags and add products to cart
-            // Get currently logged-in user
-            String getUserIdSql = "SELECT user_id FROM users WHERE login_status = ? ";
-            List<Long> userIds = jdbcTemplate.query(getUserIdSql, (rs, rowNum) -> rs.getLong("user_id"), "Y");
-            Long userId;
-            Long cartId;
-            if(userIds != null && userIds.size() > 0){
-                userId = userIds.get(0);
-                // Get or create cart for user - ensure only one active cart per user
-                String getCartIdSql = "SELECT cart_id FROM cart WHERE user_id = ? AND is_active = 1";
-                List<Long> cartIds = jdbcTemplate.query(getCartIdSql, (rs, rowNum) -> rs.getLong("cart_id"), userId);
-
-                if (cartIds.isEmpty()) {
-                    // Create new cart
-                    String insertCartSql = "INSERT INTO cart (user_id, is_active, created_at, updated_at) VALUES (?, 1, NOW(), NOW())";
-                    jdbcTemplate.update(insertCartSql, userId);
-                    cartId = jdbcTemplate.queryForObject("SELECT LAST_INSERT_ID()", Long.class);
-                } else {
-                    // Use existing cart
-                    cartId = cartIds.get(0);
-                }
-                // Process each scanned tag
-                scannedTagsOneByOne(userId,cartId,scannedTags);
-
-            } else{
-                throw new IllegalArgumentException("No logged-in user found");
-            }
-
+            // A self-call would bypass ingest's @Transactional
+            transactionTemplate.executeWithoutResult(status -> ingest(batch.laneId(), batch.tags()));
         }catch (Exception exp){
-
+            // Not applied: let a retry of this batch through
+            admission.release(batch);
             log.error("Error processing scanned tags: {}", exp.getMessage());
         }
-
-
-
-
     }
 
+    /**
+     * Add already de-duplicated tags to the cart of the shopper signed in at
+     * the lane. Failures are thrown to the caller.
+     */
     @Transactional
-    public void scannedTagsOneByOne(Long userId,Long cartId,List<String> scannedTags){
+    public void ingest(String laneId, List<String> scannedTags){
+        LaneSessionRegistry.LaneSession session = laneSessions.get(laneId);
+        if (session == null) {
+            throw new IllegalArgumentException("No logged-in user found at lane " + laneId);
+        }
+        Long userId = session.userId();
+        Long cartId = session.cartId();
+
+        if (cartId == null) {
+            // Get or create cart for user - ensure only one active cart per user
+            String getCartIdSql = "SELECT cart_id FROM cart WHERE user_id = ? AND is_active = 1";
+            List<Long> cartIds = jdbcTemplate.query(getCartIdSql, (rs, rowNum) -> rs.getLong("cart_id"), userId);
+
+            if (cartIds.isEmpty()) {
+                // Create new cart
+                String insertCartSql = "INSERT INTO cart (user_id, is_active, created_at, updated_at) VALUES (?, 1, NOW(), NOW())";
+                jdbcTemplate.update(insertCartSql, userId);
+                cartId = jdbcTemplate.queryForObject("SELECT LAST_INSERT_ID()", Long.class);
+            } else {
+                // Use existing cart
+                cartId = cartIds.get(0);
+            }
+            Long knownCartId = cartId;
+            TransactionCallbacks.afterCommit(() -> laneSessions.attachCart(laneId, userId, knownCartId));
+        }
 
-        try{
+        // Add the whole batch at once
+        addScannedTags(userId,cartId,scannedTags);
+    }
 
-            for(String tag : scannedTags){
-                // First, get product ID from RFID tag
-                String productSql = "SELECT product_id FROM rfid_tags WHERE rfid_tag = ? AND is_active = 1";
-                List<Long> productIds = jdbcTemplate.query(productSql, (rs, rowNum) -> rs.getLong("product_id"), tag);
+    /**
+     * Add a batch of scanned tags to the cart with a fixed number of statements:
+     * tags are resolved from the tag cache, tags the cart has already counted are
+     * dropped, the new ones are recorded, and each product they touch is set to
+     * the number of distinct EPCs counted for it, with one multi-row insert plus
+     * one batched update of cart_items. Tags without an active product are
+     * skipped.
+     */
+    @Transactional
+    public void addScannedTags(Long userId, Long cartId, List<String> scannedTags) {
+        if (scannedTags == null || scannedTags.isEmpty()) {
+            return;
+        }
 
-                if (productIds == null || productIds.size() == 0) {
-                    throw new IllegalArgumentException("Product not found for RFID tag: " + tag);
-                }
-                Long productId = productIds.get(0);
+        Map<String, RFIDTagCache.TagProduct> products = tagCache.resolve(new HashSet<>(scannedTags));
+        for (String tag : scannedTags) {
+            if (!products.containsKey(tag)) {
+                log.warn("Product not found for RFID tag: {}", tag);
+            }
+        }
 
-                // Get product price
-                String priceSql = "SELECT selling_price FROM products WHERE product_id = ?";
-                Double price = jdbcTemplate.queryForObject(priceSql, Double.class, productId);
+        // Each item (EPC) adds one unit the first time it is read into the cart
+        List<String> newTags = cartEpcs.addNew(cartId, scannedTags, products);
 
+        Map<Long, BigDecimal> prices = new LinkedHashMap<>();
+        for (String tag : newTags) {
+            RFIDTagCache.TagProduct product = products.get(tag);
+            prices.put(product.productId(), product.price());
+        }
+        if (prices.isEmpty()) {
+            return;
+        }
 
-                // Check if item already exists in cart
-                String checkSql = "SELECT cart_item_id, quantity FROM cart_items WHERE cart_id = ? AND product_id = ?";
-                List<Map<String, Object>> existingItems = jdbcTemplate.query(checkSql, (rs, rowNum) -> {
-                    Map<String, Object> item = new HashMap<>();
-                    item.put("cartItemId", rs.getLong("cart_item_id"));
-                    item.put("quantity", rs.getInt("quantity"));
-                    return item;
-                }, cartId, productId);
+        // A line holds as many units as distinct EPCs were read for its product
+        List<Long> productIds = new ArrayList<>(prices.keySet());
+        Map<Long, Integer> quantities = cartEpcs.counts(cartId, productIds);
+
+        Map<Long, Long> existing = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT cart_item_id, product_id FROM cart_items WHERE cart_id = ? AND product_id IN ("
+                        + placeholders(productIds.size()) + ")",
+                rs -> {
+                    existing.put(rs.getLong("product_id"), rs.getLong("cart_item_id"));
+                },
+                prepend(cartId, productIds));
+
+        List<Object[]> updates = new ArrayList<>();
+        List<Object> insertArgs = new ArrayList<>();
+        List<Long> insertedProducts = new ArrayList<>();
+        for (Long productId : productIds) {
+            BigDecimal price = prices.get(productId);
+            int quantity = quantities.getOrDefault(productId, 0);
+            Long cartItemId = existing.get(productId);
+            if (cartItemId != null) {
+                updates.add(new Object[]{quantity, price, quantity, cartItemId});
+                cartAggregates.quantityChanged(cartItemId, quantity, price.multiply(BigDecimal.valueOf(quantity)));
+            } else {
+                insertArgs.addAll(List.of(cartId, productId, quantity, price, price, quantity));
+                insertedProducts.add(productId);
+            }
+        }
+        int inserts = insertedProducts.size();
 
-                if (!existingItems.isEmpty()) {
-                    // Update existing item quantity
-                    Long cartItemId = (Long) existingItems.get(0).get("cartItemId");
-                    int newQuantity = (Integer) existingItems.get(0).get("quantity") + 1;
+        if (inserts > 0) {
+            String insertSql = "INSERT INTO cart_items (cart_id, product_id, quantity, unit_price, subtotal, added_at, updated_at) VALUES "
+                    + String.join(", ", Collections.nCopies(inserts, "(?, ?, ?, ?, ? * ?, NOW(), NOW())"));
+            jdbcTemplate.update(insertSql, insertArgs.toArray());
+            cartAggregates.linesAdded(userId, cartId, insertedProducts);
+        }
 
-                    String updateSql = """
+        if (!updates.isEmpty()) {
+            String updateSql = """
                 UPDATE cart_items
                 SET quantity = ?, subtotal = ? * ?, updated_at = NOW()
                 WHERE cart_item_id = ?
                 """;
-                    jdbcTemplate.update(updateSql, newQuantity, price, newQuantity, cartItemId);
-
-                    //log.info("Updated existing cart item {} to quantity {}", cartItemId, newQuantity);
-                } else {
-                    // Add new item to cart
-                    String insertSql = """
-                INSERT INTO cart_items (cart_id, product_id, quantity, unit_price, subtotal, added_at, updated_at)
-                VALUES (?, ?, 1, ?, ?, NOW(), NOW())
-                """;
-                    jdbcTemplate.update(insertSql, cartId, productId, price, price);
+            jdbcTemplate.batchUpdate(updateSql, updates);
+        }
 
-                    //log.info("Added new item to cart: product {} for user {}", productId, userId);
-                }
-            }
+        log.debug("Added {} of {} scanned tags to cart {}: {} new items, {} updated",
+                newTags.size(), scannedTags.size(), cartId, inserts, updates.size());
+    }
 
-        }catch(Exception exp){
-            log.error("Error processing scanned tags: {}", exp.getMessage());
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
 
+    private static Object[] prepend(Object first, List<?> rest) {
+        Object[] args = new Object[rest.size() + 1];
+        args[0] = first;
+        for (int i = 0; i < rest.size(); i++) {
+            args[i + 1] = rest.get(i);
         }
-
-
+        return args;
     }
 
 }
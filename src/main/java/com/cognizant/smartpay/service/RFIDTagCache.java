@@ -0,0 +1,258 @@
+package com.cognizant.smartpay.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resident map of RFID tag to product and selling price.
+ *
+ * Tag assignments and prices change rarely, but every scan used to look both
+ * up. The map is warmed at startup by a streaming query and kept current by
+ * polling rows whose {@code updated_at} (tag or product) is at most
+ * app.rfid.tag-cache.refresh-lag-ms older than the latest one seen: a row's
+ * timestamp is set before its transaction commits, so it can become visible
+ * after a poll has already moved past it. Deleted tags and products never
+ * show up in a poll, so the map is rebuilt every
+ * app.rfid.tag-cache.full-reload-ms. Tags that are not in the map yet
+ * (created since the last poll) are read from the database and added. Tags
+ * the database does not know either (foreign EPCs, strays from a neighbouring
+ * lane) are remembered as unknown for app.rfid.tag-cache.unknown-ttl, so
+ * repeated reads of them do not query again; a poll that brings such a tag in
+ * forgets it.
+ */
+@Component
+@Slf4j
+public class RFIDTagCache {
+
+    private static final String SELECT_TAGS = """
+            SELECT rt.rfid_tag, rt.product_id, rt.is_active, p.selling_price,
+                   GREATEST(COALESCE(rt.updated_at, p.updated_at), COALESCE(p.updated_at, rt.updated_at)) AS changed_at
+            FROM rfid_tags rt
+            JOIN products p ON p.product_id = rt.product_id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long refreshLagMillis;
+    private final long fullReloadMillis;
+    private volatile Map<String, TagProduct> tags = new ConcurrentHashMap<>();
+    private final Cache<String, Boolean> unknownTags;
+
+    private volatile Timestamp watermark;
+    private volatile long lastRefreshMillis;
+    private volatile long lastReloadMillis;
+    private volatile boolean loaded = false;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder unknownHits = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder changesApplied = new LongAdder();
+
+    /**
+     * Product a tag is assigned to
+     */
+    public record TagProduct(Long productId, BigDecimal price, boolean active) {
+    }
+
+    public RFIDTagCache(JdbcTemplate jdbcTemplate,
+                        @Value("${app.rfid.tag-cache.refresh-lag-ms:60000}") long refreshLagMillis,
+                        @Value("${app.rfid.tag-cache.full-reload-ms:900000}") long fullReloadMillis,
+                        @Value("${app.rfid.tag-cache.unknown-max-size:100000}") long unknownMaxSize,
+                        @Value("${app.rfid.tag-cache.unknown-ttl:30s}") Duration unknownTtl) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.refreshLagMillis = refreshLagMillis;
+        this.fullReloadMillis = fullReloadMillis;
+        this.unknownTags = Caffeine.newBuilder().maximumSize(unknownMaxSize).expireAfterWrite(unknownTtl).build();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            reload();
+        } catch (Exception e) {
+            // Not fatal: lookups fall back to the database until a refresh succeeds
+            log.error("Failed to warm RFID tag cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Load every tag
+     */
+    public synchronized void reload() {
+        long start = System.currentTimeMillis();
+        Map<String, TagProduct> fresh = new ConcurrentHashMap<>();
+        Timestamp[] latest = {null};
+
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(SELECT_TAGS,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // Connector/J streams rows one by one only with this fetch size
+            if (con.getMetaData().getDatabaseProductName().contains("MySQL")) {
+                ps.setFetchSize(Integer.MIN_VALUE);
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            fresh.put(rs.getString("rfid_tag"), toTagProduct(rs));
+            latest[0] = later(latest[0], rs.getTimestamp("changed_at"));
+        });
+
+        tags = fresh;
+        watermark = latest[0];
+        lastRefreshMillis = System.currentTimeMillis();
+        lastReloadMillis = lastRefreshMillis;
+        loaded = true;
+        reloads.increment();
+
+        log.info("RFID tag cache loaded: {} tags in {} ms", fresh.size(), lastRefreshMillis - start);
+    }
+
+    /**
+     * Apply tag and price changes made since the last poll. Rows up to the
+     * refresh lag behind the watermark are read again, so a change whose
+     * transaction committed after an earlier poll is not missed. Once the
+     * full reload interval has passed the whole map is rebuilt instead.
+     */
+    @Scheduled(fixedDelayString = "${app.rfid.tag-cache.refresh-ms:5000}")
+    public synchronized void refresh() {
+        if (!loaded) {
+            onApplicationReady();
+            return;
+        }
+
+        try {
+            if (watermark == null || System.currentTimeMillis() - lastReloadMillis >= fullReloadMillis) {
+                reload();
+                return;
+            }
+
+            Timestamp since = new Timestamp(watermark.getTime() - refreshLagMillis);
+            Timestamp[] latest = {watermark};
+            int[] changed = {0};
+
+            jdbcTemplate.query(SELECT_TAGS + " WHERE rt.updated_at >= ? OR p.updated_at >= ?", rs -> {
+                TagProduct product = toTagProduct(rs);
+                String tag = rs.getString("rfid_tag");
+                // Rows inside the lag are read on every poll; count only real changes
+                if (!product.equals(tags.put(tag, product))) {
+                    changed[0]++;
+                }
+                unknownTags.invalidate(tag);
+                latest[0] = later(latest[0], rs.getTimestamp("changed_at"));
+            }, since, since);
+
+            watermark = latest[0];
+            lastRefreshMillis = System.currentTimeMillis();
+            refreshes.increment();
+            changesApplied.add(changed[0]);
+        } catch (Exception e) {
+            log.error("Failed to refresh RFID tag cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Active products for the given tags. Tags without an active product are
+     * absent from the result.
+     */
+    public Map<String, TagProduct> resolve(Collection<String> rfidTags) {
+        Map<String, TagProduct> result = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+
+        for (String tag : rfidTags) {
+            TagProduct product = tags.get(tag);
+            if (product != null) {
+                hits.increment();
+                if (product.active()) {
+                    result.put(tag, product);
+                }
+            } else if (unknownTags.getIfPresent(tag) != null) {
+                unknownHits.increment();
+            } else {
+                misses.increment();
+                missing.add(tag);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<String> tagList = new ArrayList<>(missing);
+            jdbcTemplate.query(SELECT_TAGS + " WHERE rt.rfid_tag IN ("
+                    + String.join(",", Collections.nCopies(tagList.size(), "?")) + ")", rs -> {
+                TagProduct product = toTagProduct(rs);
+                tags.put(rs.getString("rfid_tag"), product);
+                missing.remove(rs.getString("rfid_tag"));
+                if (product.active()) {
+                    result.put(rs.getString("rfid_tag"), product);
+                }
+            }, tagList.toArray());
+            // The map is looked at first, so a tag a poll adds meanwhile is still found
+            missing.forEach(tag -> unknownTags.put(tag, Boolean.TRUE));
+        }
+
+        return result;
+    }
+
+    /**
+     * Active product for a single tag
+     */
+    public TagProduct resolve(String rfidTag) {
+        return resolve(List.of(rfidTag)).get(rfidTag);
+    }
+
+    /**
+     * Hit rate and staleness
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", tags.size());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("unknownHits", unknownHits.sum());
+        stats.put("unknownSize", unknownTags.estimatedSize());
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("refreshes", refreshes.sum());
+        stats.put("reloads", reloads.sum());
+        stats.put("changesApplied", changesApplied.sum());
+        stats.put("watermark", watermark == null ? null : watermark.toString());
+        stats.put("stalenessMillis", loaded ? System.currentTimeMillis() - lastRefreshMillis : null);
+        return stats;
+    }
+
+    private static TagProduct toTagProduct(ResultSet rs) throws SQLException {
+        return new TagProduct(rs.getLong("product_id"), rs.getBigDecimal("selling_price"), rs.getInt("is_active") == 1);
+    }
+
+    private static Timestamp later(Timestamp a, Timestamp b) {
+        if (a == null) {
+            return b;
+        }
+        return b != null && b.after(a) ? b : a;
+    }
+}
@@ -0,0 +1,116 @@
+package com.cognizant.smartpay.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * High-water marks of reader sequence numbers, to make scan batches idempotent.
+ *
+ * A reader numbers its batches with an increasing sequence number and sends
+ * the same number again when it retries. A batch at or below the highest
+ * number taken from that reader is a replay and is discarded before any
+ * database work. Sequence numbers must keep increasing across reader restarts;
+ * seeding them from the clock does that.
+ *
+ * Readers that have sent nothing for app.rfid.sequence.idle-ms are forgotten.
+ */
+@Component
+@Slf4j
+public class ReaderSequences {
+
+    /**
+     * Returned by {@link #claim} for a replay; never a valid previous mark
+     */
+    public static final long REPLAY = Long.MAX_VALUE;
+
+    private final long idleMillis;
+    private final Map<String, Mark> readers = new ConcurrentHashMap<>();
+
+    private final LongAdder claimed = new LongAdder();
+    private final LongAdder replays = new LongAdder();
+
+    /**
+     * Highest sequence number taken from one reader
+     */
+    private static final class Mark {
+        final AtomicLong highWater = new AtomicLong(Long.MIN_VALUE);
+        volatile long lastSeen = System.currentTimeMillis();
+    }
+
+    public ReaderSequences(@Value("${app.rfid.sequence.idle-ms:3600000}") long idleMillis) {
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Take a batch if its sequence number is above the reader's mark, which
+     * then moves up to it.
+     *
+     * @return the previous mark, to hand to {@link #release}, or {@link #REPLAY}
+     */
+    public long claim(String readerId, long sequence) {
+        Mark mark = readers.computeIfAbsent(readerId, k -> new Mark());
+        mark.lastSeen = System.currentTimeMillis();
+
+        long current = mark.highWater.get();
+        while (sequence > current) {
+            if (mark.highWater.compareAndSet(current, sequence)) {
+                claimed.increment();
+                return current;
+            }
+            current = mark.highWater.get();
+        }
+
+        replays.increment();
+        log.debug("Discarding replayed batch {} from reader {} (mark {})", sequence, readerId, current);
+        return REPLAY;
+    }
+
+    /**
+     * Give back a claimed batch that was not applied, so its retry is taken.
+     * Has no effect once a later batch from the reader has been claimed.
+     */
+    public void release(String readerId, long sequence, long previous) {
+        Mark mark = readers.get(readerId);
+        if (mark != null) {
+            mark.highWater.compareAndSet(sequence, previous);
+        }
+    }
+
+    /**
+     * Forget readers that have gone quiet
+     */
+    @Scheduled(fixedDelayString = "${app.rfid.sequence.sweep-ms:600000}")
+    public void sweep() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        readers.values().removeIf(mark -> mark.lastSeen < cutoff);
+    }
+
+    /**
+     * The reader a batch is numbered by: the given reader ID, else the lane
+     */
+    static String readerOf(String readerId, String laneId) {
+        if (readerId != null && !readerId.isBlank()) {
+            return readerId;
+        }
+        return laneId == null || laneId.isBlank() ? ScanDeduplicator.DEFAULT_LANE : laneId;
+    }
+
+    /**
+     * Reader and replay counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("readers", readers.size());
+        stats.put("claimed", claimed.sum());
+        stats.put("replays", replays.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,69 @@
+package com.cognizant.smartpay.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Decides which part of a scan batch is new, for both the synchronous and the
+ * queued scan paths.
+ *
+ * A batch carrying a sequence number its reader has already sent is a replay
+ * and is dropped whole; otherwise tags read on the lane within the dedup
+ * window are dropped. Both are recorded as soon as the batch is admitted, so
+ * a batch that is then not written must be {@link #release released}, or its
+ * retry would be dropped as well.
+ */
+@Component
+public class ScanAdmission {
+
+    private final ScanDeduplicator deduplicator;
+    private final ReaderSequences readerSequences;
+
+    /**
+     * An admitted batch: the fresh tags and the reader claim taken for it
+     */
+    public record Batch(String laneId, String readerId, Long sequence, long previous, List<String> tags) {
+    }
+
+    public ScanAdmission(ScanDeduplicator deduplicator, ReaderSequences readerSequences) {
+        this.deduplicator = deduplicator;
+        this.readerSequences = readerSequences;
+    }
+
+    /**
+     * Admit a scanned batch
+     *
+     * @param readerId reader the sequence number belongs to, the lane when absent
+     * @param sequence batch number from the reader, or null for none
+     * @return the batch to write, or null when it is a replay or has no new tags
+     */
+    public Batch admit(String laneId, String readerId, Long sequence, List<String> scannedTags) {
+        String lane = laneId == null || laneId.isBlank() ? ScanDeduplicator.DEFAULT_LANE : laneId;
+        String reader = ReaderSequences.readerOf(readerId, lane);
+
+        // A retried batch that was already taken
+        long previous = sequence == null ? ReaderSequences.REPLAY : readerSequences.claim(reader, sequence);
+        if (sequence != null && previous == ReaderSequences.REPLAY) {
+            return null;
+        }
+
+        // Repeated reads of an item still in the reader field never reach the database
+        List<String> fresh = deduplicator.filter(lane, scannedTags);
+        if (fresh.isEmpty()) {
+            return null;
+        }
+        return new Batch(lane, reader, sequence, previous, fresh);
+    }
+
+    /**
+     * Undo the admission of a batch that was not written, so that its retry,
+     * or the next read of its tags, is taken
+     */
+    public void release(Batch batch) {
+        deduplicator.forget(batch.laneId(), batch.tags());
+        if (batch.sequence() != null) {
+            readerSequences.release(batch.readerId(), batch.sequence(), batch.previous());
+        }
+    }
+}
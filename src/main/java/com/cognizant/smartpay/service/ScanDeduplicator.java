@@ -0,0 +1,227 @@
+package com.cognizant.smartpay.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drops repeated RFID reads before they reach the database.
+ *
+ * A reader reports the same EPC many times per second while an item sits in
+ * its field. Each lane keeps the EPCs it has seen recently, with the time of
+ * the last read; a read of an EPC seen less than the window ago is a duplicate.
+ * The window slides: an item that keeps being reported stays suppressed.
+ *
+ * The per-lane set is an open-addressing table of 64-bit EPC keys and last-read
+ * times in two long arrays, so it allocates nothing per read. Expired slots
+ * are reused on insert and dropped when the table is rebuilt.
+ */
+@Component
+@Slf4j
+public class ScanDeduplicator {
+
+    public static final String DEFAULT_LANE = "default";
+
+    private final long windowNanos;
+    private final Map<String, Window> lanes = new ConcurrentHashMap<>();
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public ScanDeduplicator(@Value("${app.rfid.dedup.window-ms:3000}") long windowMillis) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    /**
+     * The tags of a batch that were not read on this lane within the window,
+     * in their original order
+     */
+    public List<String> filter(String laneId, List<String> tags) {
+        if (tags == null || tags.isEmpty()) {
+            return List.of();
+        }
+        received.add(tags.size());
+        if (windowNanos <= 0) {
+            return tags;
+        }
+
+        String lane = laneId == null || laneId.isBlank() ? DEFAULT_LANE : laneId;
+        List<String> fresh = new ArrayList<>(tags.size());
+
+        while (true) {
+            Window window = lanes.computeIfAbsent(lane, k -> new Window());
+            synchronized (window) {
+                // Swept concurrently: start over with a new window
+                if (window.retired) {
+                    continue;
+                }
+                long now = System.nanoTime();
+                for (String tag : tags) {
+                    if (tag != null && !tag.isEmpty() && window.firstRead(EpcKeys.key(tag), now, windowNanos)) {
+                        fresh.add(tag);
+                    }
+                }
+            }
+            break;
+        }
+
+        dropped.add(tags.size() - fresh.size());
+        return fresh;
+    }
+
+    /**
+     * Undo {@link #filter} for tags that were not processed after all, so a
+     * retry is not taken for a duplicate
+     */
+    public void forget(String laneId, List<String> tags) {
+        Window window = lanes.get(laneId == null || laneId.isBlank() ? DEFAULT_LANE : laneId);
+        if (window == null) {
+            return;
+        }
+        synchronized (window) {
+            long expired = System.nanoTime() - windowNanos;
+            for (String tag : tags) {
+                window.expire(EpcKeys.key(tag), expired);
+            }
+        }
+    }
+
+    /**
+     * Forget lanes that have seen nothing within the window
+     */
+    @Scheduled(fixedDelayString = "${app.rfid.dedup.sweep-ms:60000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        lanes.forEach((lane, window) -> {
+            synchronized (window) {
+                if (window.live(now, windowNanos) == 0) {
+                    window.retired = true;
+                    lanes.remove(lane, window);
+                }
+            }
+        });
+    }
+
+    /**
+     * Duplicate counters
+     */
+    public Map<String, Object> getStats() {
+        long total = received.sum();
+        long duplicates = dropped.sum();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("windowMillis", TimeUnit.NANOSECONDS.toMillis(windowNanos));
+        stats.put("lanes", lanes.size());
+        stats.put("received", total);
+        stats.put("dropped", duplicates);
+        stats.put("dropRate", total == 0 ? 0.0 : (double) duplicates / total);
+        return stats;
+    }
+
+    /**
+     * Recently read EPCs of one lane. Guarded by its own monitor.
+     */
+    private static final class Window {
+
+        private static final int MIN_CAPACITY = 64;
+
+        private long[] keys = new long[MIN_CAPACITY];
+        private long[] lastRead = new long[MIN_CAPACITY];
+        private int used;
+        private boolean retired;
+
+        /**
+         * Record a read; true unless the EPC was read within the window
+         */
+        boolean firstRead(long key, long now, long window) {
+            int mask = keys.length - 1;
+            int reusable = -1;
+            int i = (int) key & mask;
+
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    boolean expired = now - lastRead[i] >= window;
+                    lastRead[i] = now;
+                    return expired;
+                }
+                if (reusable < 0 && now - lastRead[i] >= window) {
+                    reusable = i;
+                }
+                i = (i + 1) & mask;
+            }
+
+            // Not present: take an expired slot on the probe path, or the empty one
+            if (reusable >= 0) {
+                i = reusable;
+            } else {
+                used++;
+            }
+            keys[i] = key;
+            lastRead[i] = now;
+
+            if (used * 2 > keys.length) {
+                rebuild(now, window);
+            }
+            return true;
+        }
+
+        void expire(long key, long expiredAt) {
+            int mask = keys.length - 1;
+            for (int i = (int) key & mask; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    lastRead[i] = expiredAt;
+                    return;
+                }
+            }
+        }
+
+        int live(long now, long window) {
+            int count = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && now - lastRead[i] < window) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Rehash the live entries into a table at most a quarter full
+         */
+        private void rebuild(long now, long window) {
+            int live = live(now, window);
+            int capacity = MIN_CAPACITY;
+            while (capacity < live * 4) {
+                capacity <<= 1;
+            }
+
+            long[] oldKeys = keys;
+            long[] oldLastRead = lastRead;
+            keys = new long[capacity];
+            lastRead = new long[capacity];
+            used = 0;
+
+            int mask = capacity - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != 0 && now - oldLastRead[j] < window) {
+                    int i = (int) oldKeys[j] & mask;
+                    while (keys[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    lastRead[i] = oldLastRead[j];
+                    used++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.cognizant.smartpay.service;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * A batch of RFID reads in the binary reader protocol.
+ *
+ * Layout, big-endian:
+ * <pre>
+ *   u16  magic 0x5346 ("SF")
+ *   u8   version (1)
+ *   u8   lane ID length, then the lane ID in UTF-8
+ *   u64  sequence number, per reader
+ *   u16  EPC count, then for each EPC: u8 length and the raw EPC bytes
+ * </pre>
+ * EPCs are carried as bytes and exposed in their usual text form, upper-case
+ * hex. Over TCP each frame is preceded by its length as a u32; over UDP a
+ * datagram holds exactly one frame.
+ */
+public record ScanFrame(String laneId, long sequence, List<String> epcs) {
+
+    public static final int MAGIC = 0x5346;
+    public static final int VERSION = 1;
+    public static final int MAX_FRAME_BYTES = 65_535;
+
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+
+    /**
+     * Read one frame that fills the buffer
+     *
+     * @throws IllegalArgumentException if the frame is malformed
+     */
+    public static ScanFrame decode(ByteBuffer buffer) {
+        try {
+            if ((buffer.getShort() & 0xffff) != MAGIC) {
+                throw new IllegalArgumentException("Not a scan frame");
+            }
+            int version = buffer.get() & 0xff;
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported scan frame version: " + version);
+            }
+
+            byte[] lane = new byte[buffer.get() & 0xff];
+            buffer.get(lane);
+            long sequence = buffer.getLong();
+
+            int count = buffer.getShort() & 0xffff;
+            List<String> epcs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] epc = new byte[buffer.get() & 0xff];
+                buffer.get(epc);
+                epcs.add(HEX.formatHex(epc));
+            }
+
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing bytes after scan frame");
+            }
+            return new ScanFrame(new String(lane, StandardCharsets.UTF_8), sequence, epcs);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated scan frame");
+        }
+    }
+
+    /**
+     * The frame without the TCP length prefix. EPCs must be hex.
+     */
+    public ByteBuffer encode() {
+        byte[] lane = laneId.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> packed = new ArrayList<>(epcs.size());
+        int size = 2 + 1 + 1 + lane.length + 8 + 2;
+        for (String epc : epcs) {
+            byte[] bytes = HEX.parseHex(epc);
+            packed.add(bytes);
+            size += 1 + bytes.length;
+        }
+        if (lane.length > 255 || epcs.size() > 65_535 || size > MAX_FRAME_BYTES) {
+            throw new IllegalArgumentException("Scan frame too large");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size)
+                .putShort((short) MAGIC)
+                .put((byte) VERSION)
+                .put((byte) lane.length)
+                .put(lane)
+                .putLong(sequence)
+                .putShort((short) epcs.size());
+        for (byte[] epc : packed) {
+            if (epc.length > 255) {
+                throw new IllegalArgumentException("EPC too long");
+            }
+            buffer.put((byte) epc.length).put(epc);
+        }
+        return buffer.flip();
+    }
+}
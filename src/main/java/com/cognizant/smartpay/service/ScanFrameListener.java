@@ -0,0 +1,284 @@
+package com.cognizant.smartpay.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Receives {@link ScanFrame}s from readers over TCP and UDP, bypassing the
+ * servlet stack and JSON.
+ *
+ * One selector thread serves both sockets. Frames go to the same
+ * {@link ScanIngestQueue} as HTTP scans; a frame whose sequence number the
+ * lane has already sent is acknowledged without being applied again. Over TCP
+ * every frame is answered with one status byte, in order: {@link #ACCEPTED},
+ * {@link #BUSY} when the lane queue is full (send again later) or
+ * {@link #MALFORMED}. UDP is fire and forget; frames that cannot be queued are
+ * dropped and counted.
+ *
+ * Disabled unless app.rfid.listener.enabled is true.
+ */
+@Component
+@ConditionalOnProperty(name = "app.rfid.listener.enabled", havingValue = "true")
+@Slf4j
+public class ScanFrameListener {
+
+    public static final byte ACCEPTED = 0;
+    public static final byte BUSY = 1;
+    public static final byte MALFORMED = 2;
+
+    private static final int ACK_BUFFER_BYTES = 4096;
+
+    private final ScanIngestQueue ingestQueue;
+    private final String bindAddress;
+    private final int tcpPort;
+    private final int udpPort;
+
+    private Selector selector;
+    private ServerSocketChannel tcpChannel;
+    private DatagramChannel udpChannel;
+    private Thread thread;
+    private volatile boolean running;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder epcs = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+
+    /**
+     * Read and ack buffers of one TCP connection
+     */
+    private static final class Connection {
+        final ByteBuffer in = ByteBuffer.allocate(4 + ScanFrame.MAX_FRAME_BYTES);
+        final ByteBuffer out = ByteBuffer.allocate(ACK_BUFFER_BYTES);
+    }
+
+    public ScanFrameListener(
+            ScanIngestQueue ingestQueue,
+            @Value("${app.rfid.listener.bind-address:0.0.0.0}") String bindAddress,
+            @Value("${app.rfid.listener.tcp-port:7070}") int tcpPort,
+            @Value("${app.rfid.listener.udp-port:7071}") int udpPort) {
+        this.ingestQueue = ingestQueue;
+        this.bindAddress = bindAddress;
+        this.tcpPort = tcpPort;
+        this.udpPort = udpPort;
+    }
+
+    /**
+     * Bind the sockets (a port of 0 or less disables that protocol) and start serving
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        selector = Selector.open();
+
+        if (tcpPort > 0) {
+            tcpChannel = ServerSocketChannel.open();
+            tcpChannel.bind(new InetSocketAddress(bindAddress, tcpPort));
+            tcpChannel.configureBlocking(false);
+            tcpChannel.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        if (udpPort > 0) {
+            udpChannel = DatagramChannel.open();
+            udpChannel.bind(new InetSocketAddress(bindAddress, udpPort));
+            udpChannel.configureBlocking(false);
+            udpChannel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(ScanFrame.MAX_FRAME_BYTES));
+        }
+
+        running = true;
+        thread = new Thread(this::serve, "rfid-listener");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("RFID frame listener on {} (tcp {}, udp {})", bindAddress, tcpPort, udpPort);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        selector.wakeup();
+        thread.join(5000);
+
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * Frame and connection counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("tcpPort", tcpPort);
+        stats.put("udpPort", udpPort);
+        stats.put("connections", connections.get());
+        stats.put("frames", frames.sum());
+        stats.put("epcs", epcs.sum());
+        stats.put("busy", busy.sum());
+        stats.put("malformed", malformed.sum());
+        return stats;
+    }
+
+    private void serve() {
+        while (running) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.channel() == udpChannel) {
+                            receive(key);
+                        } else {
+                            if (key.isWritable()) {
+                                flush(key);
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                read(key);
+                            }
+                        }
+                    } catch (IOException e) {
+                        log.debug("Closing reader connection: {}", e.getMessage());
+                        close(key);
+                    }
+                }
+            } catch (Exception e) {
+                if (running) {
+                    log.error("RFID frame listener error: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = tcpChannel.accept();
+        if (channel != null) {
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, new Connection());
+            connections.incrementAndGet();
+        }
+    }
+
+    private void receive(SelectionKey key) throws IOException {
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        while (true) {
+            buffer.clear();
+            if (udpChannel.receive(buffer) == null) {
+                return;
+            }
+            buffer.flip();
+            handle(buffer);
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+
+        if (channel.read(connection.in) < 0) {
+            close(key);
+            return;
+        }
+        process(key, connection);
+    }
+
+    /**
+     * Handle the complete frames buffered on a connection, as long as there is
+     * room for their acks
+     */
+    private void process(SelectionKey key, Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        in.flip();
+        while (in.remaining() >= 4 && connection.out.hasRemaining()) {
+            int length = in.getInt(in.position());
+            if (length <= 0 || length > ScanFrame.MAX_FRAME_BYTES) {
+                throw new IOException("Bad frame length " + length);
+            }
+            if (in.remaining() < 4 + length) {
+                break;
+            }
+            ByteBuffer frame = in.slice(in.position() + 4, length);
+            in.position(in.position() + 4 + length);
+            connection.out.put(handle(frame));
+        }
+        in.compact();
+        flush(key);
+    }
+
+    /**
+     * Send pending acks. While acks are backed up, frames are left unread so
+     * the reader is slowed down by TCP flow control.
+     */
+    private void flush(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+
+        connection.out.flip();
+        channel.write(connection.out);
+        boolean pending = connection.out.hasRemaining();
+        connection.out.compact();
+
+        if (pending) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else if (key.interestOps() != SelectionKey.OP_READ) {
+            key.interestOps(SelectionKey.OP_READ);
+            // Frames that waited for ack space
+            process(key, connection);
+        }
+    }
+
+    private byte handle(ByteBuffer buffer) {
+        ScanFrame frame;
+        try {
+            frame = ScanFrame.decode(buffer);
+        } catch (IllegalArgumentException e) {
+            malformed.increment();
+            log.debug("Malformed scan frame: {}", e.getMessage());
+            return MALFORMED;
+        }
+
+        frames.increment();
+        epcs.add(frame.epcs().size());
+        // Each lane has one reader, so the lane numbers its frames
+        if (!ingestQueue.submit(frame.laneId(), null, frame.sequence(), frame.epcs())) {
+            busy.increment();
+            return BUSY;
+        }
+        return ACCEPTED;
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            log.debug("Error closing reader connection: {}", e.getMessage());
+        }
+        if (key.attachment() instanceof Connection) {
+            connections.decrementAndGet();
+        }
+    }
+}
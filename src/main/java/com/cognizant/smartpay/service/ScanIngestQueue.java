@@ -0,0 +1,205 @@
+package com.cognizant.smartpay.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous ingest of RFID scan batches.
+ *
+ * Scans are accepted into a bounded queue per lane and written by a small
+ * worker pool, so reader bursts no longer hold request threads and database
+ * connections. The first batch queued on an idle lane schedules a drain after
+ * a short linger; the drain merges everything queued on the lane by then into
+ * one set-based cart write. Lanes are drained one at a time each, so the
+ * writes of a lane stay in order.
+ *
+ * A full lane queue rejects the batch, and the caller is told to retry,
+ * instead of letting the backlog and latency grow without bound. A write
+ * that fails has already been acknowledged, so its batches are released
+ * instead: the tags are taken again the next time the reader sees them.
+ */
+@Component
+@Slf4j
+public class ScanIngestQueue {
+
+    private final RFIDScanService rfidScanService;
+    private final ScanAdmission admission;
+    private final int queueCapacity;
+    private final long lingerMillis;
+    private final int maxBatchTags;
+
+    private final ScheduledThreadPoolExecutor workers;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder batchesWritten = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder failedWrites = new LongAdder();
+
+    /**
+     * Queued batches of one lane and whether a drain is pending
+     */
+    private static final class Lane {
+        final BlockingQueue<ScanAdmission.Batch> batches;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Lane(int capacity) {
+            this.batches = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+
+    public ScanIngestQueue(
+            RFIDScanService rfidScanService,
+            ScanAdmission admission,
+            @Value("${app.rfid.ingest.queue-capacity:64}") int queueCapacity,
+            @Value("${app.rfid.ingest.linger-ms:5}") long lingerMillis,
+            @Value("${app.rfid.ingest.max-batch-tags:1000}") int maxBatchTags,
+            @Value("${app.rfid.ingest.workers:4}") int workerCount) {
+        this.rfidScanService = rfidScanService;
+        this.admission = admission;
+        this.queueCapacity = queueCapacity;
+        this.lingerMillis = lingerMillis;
+        this.maxBatchTags = maxBatchTags;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ScheduledThreadPoolExecutor(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "rfid-ingest-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue a scanned batch for a lane. A batch with a sequence number is
+     * taken at most once per reader; a replay is accepted and ignored.
+     *
+     * @param readerId reader the sequence number belongs to, the lane when absent
+     * @param sequence batch number from the reader, or null for none
+     * @return false when the lane queue is full and the batch was not accepted
+     */
+    public boolean submit(String laneId, String readerId, Long sequence, List<String> scannedTags) {
+        // Replays and duplicates are dropped before they take up queue space
+        ScanAdmission.Batch batch = admission.admit(laneId, readerId, sequence, scannedTags);
+        if (batch == null) {
+            accepted.increment();
+            return true;
+        }
+
+        Lane queue = lanes.computeIfAbsent(batch.laneId(), k -> new Lane(queueCapacity));
+        if (!queue.batches.offer(batch)) {
+            admission.release(batch);
+            rejected.increment();
+            log.warn("Ingest queue for lane {} is full, rejecting {} tags", batch.laneId(), batch.tags().size());
+            return false;
+        }
+
+        accepted.increment();
+        schedule(batch.laneId(), queue);
+        return true;
+    }
+
+    /**
+     * Batches waiting on all lanes
+     */
+    public int depth() {
+        return lanes.values().stream().mapToInt(lane -> lane.batches.size()).sum();
+    }
+
+    /**
+     * Queue and write counters
+     */
+    public Map<String, Object> getStats() {
+        long written = writes.sum();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("lanes", lanes.size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("queued", depth());
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("writes", written);
+        stats.put("failedWrites", failedWrites.sum());
+        stats.put("batchesPerWrite", written == 0 ? 0.0 : (double) batchesWritten.sum() / written);
+        return stats;
+    }
+
+    /**
+     * Write out what is still queued before the context closes
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("RFID ingest workers did not stop in time");
+            workers.shutdownNow();
+        }
+        lanes.forEach((laneId, lane) -> {
+            while (!lane.batches.isEmpty()) {
+                drain(laneId, lane);
+            }
+        });
+    }
+
+    private void schedule(String laneId, Lane lane) {
+        if (lane.scheduled.compareAndSet(false, true)) {
+            try {
+                workers.schedule(() -> drain(laneId, lane), lingerMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shutting down: shutdown() writes out what is left
+                lane.scheduled.set(false);
+            }
+        }
+    }
+
+    private void drain(String laneId, Lane lane) {
+        List<ScanAdmission.Batch> taken = new ArrayList<>();
+        try {
+            List<String> merged = new ArrayList<>();
+            while (merged.size() < maxBatchTags) {
+                ScanAdmission.Batch batch = lane.batches.poll();
+                if (batch == null) {
+                    break;
+                }
+                merged.addAll(batch.tags());
+                taken.add(batch);
+            }
+
+            if (!merged.isEmpty()) {
+                rfidScanService.ingest(laneId, merged);
+                writes.increment();
+                batchesWritten.add(taken.size());
+                log.debug("Wrote {} tags from {} batches for lane {}", merged.size(), taken.size(), laneId);
+            }
+        } catch (Exception e) {
+            failedWrites.increment();
+            log.error("Failed to write scanned tags for lane {}: {}", laneId, e.getMessage());
+            // Newest first, so each reader's mark steps back to where it was before these batches
+            for (int i = taken.size() - 1; i >= 0; i--) {
+                admission.release(taken.get(i));
+            }
+        } finally {
+            lane.scheduled.set(false);
+            // Batches queued while we were writing
+            if (!lane.batches.isEmpty() && !workers.isShutdown()) {
+                schedule(laneId, lane);
+            }
+        }
+    }
+}
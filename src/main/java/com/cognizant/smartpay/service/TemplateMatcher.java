@@ -0,0 +1,356 @@
+package com.cognizant.smartpay.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Fingerprint template matcher.
+ *
+ * Scores are the percentage of equal bytes, exactly as the original byte loop
+ * computed them, but templates are compared eight bytes at a time: the two
+ * words are XORed and the zero bytes of the result are counted with a SWAR
+ * trick. Threshold checks stop as soon as the outcome is decided, and large
+ * candidate sets are split across a dedicated ForkJoin pool.
+ *
+ * Stored templates are read through little-endian {@link ByteBuffer} views, so
+ * templates in the memory-mapped store are compared in place.
+ *
+ * {@link #rank} scores every candidate and keeps the best few, ordered by score
+ * and then by list position, so the outcome does not depend on how the scan was
+ * split across threads.
+ */
+@Component
+@Slf4j
+public class TemplateMatcher {
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private static final Comparator<Scored> BY_SCORE =
+            Comparator.comparingInt(Scored::score).reversed().thenComparingInt(Scored::index);
+
+    private final int parallelThreshold;
+    private final ForkJoinPool pool;
+
+    private final LongAdder comparisons = new LongAdder();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAccumulator maxComparisons = new LongAccumulator(Math::max, 0);
+
+    /**
+     * A candidate and its match score (0-100)
+     */
+    public record Match<T>(T candidate, int score) {
+    }
+
+    /**
+     * Outcome of a ranked search: the best candidates, highest score first, and
+     * the number of templates the probe was compared against
+     */
+    public record Ranking<T>(List<Match<T>> matches, int comparisons) {
+
+        public Optional<Match<T>> best() {
+            return matches.isEmpty() ? Optional.empty() : Optional.of(matches.get(0));
+        }
+    }
+
+    private record Scored(int index, int score) {
+    }
+
+    public TemplateMatcher(
+            @Value("${app.biometric.matcher.parallel-threshold:512}") int parallelThreshold,
+            @Value("${app.biometric.matcher.parallelism:0}") int parallelism) {
+        this.parallelThreshold = parallelThreshold;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Match score (0-100) between two templates
+     */
+    public int score(byte[] template1, byte[] template2) {
+        return score(template1, template2 == null ? null : ByteBuffer.wrap(template2).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Match score (0-100) between a probe and a stored template view
+     */
+    public int score(byte[] probe, ByteBuffer template) {
+        if (probe == null || template == null) {
+            return 0;
+        }
+
+        if (probe.length != template.limit() || probe.length == 0) {
+            return 0;
+        }
+
+        return toScore(countEqual(probe, template), probe.length);
+    }
+
+    /**
+     * Whether a probe scores at least {@code minScore} against a stored
+     * template view. Stops comparing as soon as the result can no longer change.
+     */
+    public boolean reaches(byte[] probe, ByteBuffer template, int minScore) {
+        if (probe == null || template == null) {
+            return minScore <= 0;
+        }
+
+        int length = probe.length;
+        if (length != template.limit() || length == 0) {
+            return minScore <= 0;
+        }
+
+        int required = requiredMatches(length, minScore);
+        if (required <= 0) {
+            return true;
+        }
+        if (required > length) {
+            return false;
+        }
+
+        int matches = 0;
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            matches += zeroBytes((long) LONGS.get(probe, i) ^ template.getLong(i));
+
+            if (matches >= required) {
+                return true;
+            }
+            if (matches + (length - i - Long.BYTES) < required) {
+                return false;
+            }
+        }
+        for (; i < length; i++) {
+            if (probe[i] == template.get(i)) {
+                matches++;
+            }
+        }
+        return matches >= required;
+    }
+
+    /**
+     * Find the first candidate, in list order, whose template scores at least
+     * {@code minScore} against the probe
+     */
+    public <T> Optional<T> findFirst(byte[] probe, List<T> candidates, Function<T, ByteBuffer> template, int minScore) {
+        if (candidates.isEmpty()) {
+            return Optional.empty();
+        }
+
+        long start = System.nanoTime();
+        OptionalInt index;
+        int workers;
+
+        if (candidates.size() < parallelThreshold) {
+            workers = 1;
+            index = IntStream.range(0, candidates.size())
+                    .filter(i -> reaches(probe, template.apply(candidates.get(i)), minScore))
+                    .findFirst();
+        } else {
+            workers = pool.getParallelism();
+            try {
+                index = pool.submit(() -> IntStream.range(0, candidates.size())
+                        .parallel()
+                        .filter(i -> reaches(probe, template.apply(candidates.get(i)), minScore))
+                        .findFirst()).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Template matching interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Template matching failed", e.getCause());
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        comparisons.add(candidates.size());
+        searches.increment();
+        busyNanos.add(elapsed * workers);
+        maxComparisons.accumulate(candidates.size());
+
+        log.debug("Matched probe against {} candidates on {} worker(s) in {} us",
+                candidates.size(), workers, elapsed / 1_000);
+
+        return index.isPresent() ? Optional.of(candidates.get(index.getAsInt())) : Optional.empty();
+    }
+
+    /**
+     * Score every candidate against the probe and return the {@code limit} best
+     * that score at least {@code minScore}
+     */
+    public <T> Ranking<T> rank(byte[] probe, List<T> candidates, Function<T, ByteBuffer> template,
+                               int minScore, int limit) {
+        if (candidates.isEmpty() || probe == null || probe.length == 0) {
+            return new Ranking<>(List.of(), 0);
+        }
+
+        int required = requiredMatches(probe.length, minScore);
+
+        long start = System.nanoTime();
+        List<Scored> best;
+        int workers;
+
+        if (candidates.size() < parallelThreshold) {
+            workers = 1;
+            best = IntStream.range(0, candidates.size())
+                    .mapToObj(i -> scoreAtLeast(i, probe, template.apply(candidates.get(i)), required))
+                    .filter(Objects::nonNull)
+                    .sorted(BY_SCORE)
+                    .limit(limit)
+                    .toList();
+        } else {
+            workers = pool.getParallelism();
+            try {
+                best = pool.submit(() -> IntStream.range(0, candidates.size())
+                        .parallel()
+                        .mapToObj(i -> scoreAtLeast(i, probe, template.apply(candidates.get(i)), required))
+                        .filter(Objects::nonNull)
+                        .sorted(BY_SCORE)
+                        .limit(limit)
+                        .toList()).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Template matching interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Template matching failed", e.getCause());
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        comparisons.add(candidates.size());
+        searches.increment();
+        busyNanos.add(elapsed * workers);
+        maxComparisons.accumulate(candidates.size());
+
+        log.debug("Ranked probe against {} candidates on {} worker(s) in {} us",
+                candidates.size(), workers, elapsed / 1_000);
+
+        List<Match<T>> matches = new ArrayList<>(best.size());
+        for (Scored scored : best) {
+            matches.add(new Match<>(candidates.get(scored.index()), scored.score()));
+        }
+        return new Ranking<>(matches, candidates.size());
+    }
+
+    /**
+     * Matcher throughput counters
+     */
+    public Map<String, Object> getStats() {
+        long total = comparisons.sum();
+        long nanos = busyNanos.sum();
+
+        Map<String, Object> stats = new HashMap<>();
+        long count = searches.sum();
+
+        stats.put("searches", count);
+        stats.put("comparisons", total);
+        stats.put("comparisonsPerSearch", count == 0 ? 0.0 : (double) total / count);
+        stats.put("maxComparisonsPerSearch", maxComparisons.get());
+        stats.put("parallelism", pool.getParallelism());
+        stats.put("parallelThreshold", parallelThreshold);
+        stats.put("matchesPerSecondPerCore", nanos == 0 ? 0L : (long) (total / (nanos / 1_000_000_000.0)));
+        return stats;
+    }
+
+    private static int countEqual(byte[] probe, ByteBuffer template) {
+        int length = probe.length;
+        int matches = 0;
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            matches += zeroBytes((long) LONGS.get(probe, i) ^ template.getLong(i));
+        }
+        for (; i < length; i++) {
+            if (probe[i] == template.get(i)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Score of a candidate, or null once it can no longer reach {@code required}
+     * equal bytes
+     */
+    private static Scored scoreAtLeast(int index, byte[] probe, ByteBuffer template, int required) {
+        int length = probe.length;
+        if (template == null || template.limit() != length) {
+            return required <= 0 ? new Scored(index, 0) : null;
+        }
+        if (required > length) {
+            return null;
+        }
+
+        int matches = 0;
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            matches += zeroBytes((long) LONGS.get(probe, i) ^ template.getLong(i));
+            if (matches + (length - i - Long.BYTES) < required) {
+                return null;
+            }
+        }
+        for (; i < length; i++) {
+            if (probe[i] == template.get(i)) {
+                matches++;
+            }
+        }
+        return matches >= required ? new Scored(index, toScore(matches, length)) : null;
+    }
+
+    /**
+     * Number of zero bytes in a word: the high bit of each byte of {@code t}
+     * ends up set only when that byte of {@code x} is zero
+     */
+    private static int zeroBytes(long x) {
+        long t = (x & LOW_SEVEN_BITS) + LOW_SEVEN_BITS;
+        t = ~(t | x | LOW_SEVEN_BITS);
+        return Long.bitCount(t);
+    }
+
+    /**
+     * Same arithmetic as the original matcher, so scores stay identical
+     */
+    private static int toScore(int matches, int length) {
+        return (int) ((double) matches / length * 100);
+    }
+
+    /**
+     * Smallest number of equal bytes that yields at least {@code minScore}
+     */
+    private static int requiredMatches(int length, int minScore) {
+        int required = (int) Math.max(0, Math.min(length + 1L, ((long) minScore * length + 99) / 100));
+        while (required > 0 && toScore(required - 1, length) >= minScore) {
+            required--;
+        }
+        while (required <= length && toScore(required, length) < minScore) {
+            required++;
+        }
+        return required;
+    }
+}
@@ -0,0 +1,126 @@
+package com.cognizant.smartpay.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind buffer for biometric verification stats.
+ *
+ * Successful authentications only bump an in-memory counter per biometric.
+ * The counters are flushed every app.biometric.stats-flush-ms as one JDBC
+ * batch, and once more on shutdown. The batch runs in one transaction, so a
+ * failed flush writes nothing and can put all its counts back for the next
+ * flush to retry.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class VerificationStatsWriter {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final ConcurrentHashMap<Long, Pending> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    /**
+     * Verifications not yet written. Only mutated inside map compute calls.
+     */
+    private static final class Pending {
+        private int count;
+        private LocalDateTime lastVerifiedAt;
+
+        private Pending merge(int count, LocalDateTime verifiedAt) {
+            this.count += count;
+            if (lastVerifiedAt == null || verifiedAt.isAfter(lastVerifiedAt)) {
+                lastVerifiedAt = verifiedAt;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Record a successful verification
+     */
+    public void record(Long biometricId) {
+        merge(biometricId, 1, LocalDateTime.now());
+    }
+
+    /**
+     * Write all pending counts in a single batch
+     */
+    @Scheduled(fixedDelayString = "${app.biometric.stats-flush-ms:1000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Long> ids = new ArrayList<>();
+        List<Object[]> batch = new ArrayList<>();
+        for (Long biometricId : pending.keySet()) {
+            Pending drained = pending.remove(biometricId);
+            if (drained != null) {
+                ids.add(biometricId);
+                batch.add(new Object[]{drained.count, Timestamp.valueOf(drained.lastVerifiedAt), biometricId});
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        String sql = """
+            UPDATE biometrics
+            SET verification_count = verification_count + ?, last_verified_at = ?
+            WHERE biometric_id = ?
+            """;
+
+        try {
+            // Autocommit would keep the rows applied before a failing one, and the retry would count them again
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, batch));
+            flushes.increment();
+            flushedRows.add(batch.size());
+            log.debug("Flushed verification stats for {} biometrics", batch.size());
+        } catch (Exception e) {
+            log.error("Failed to flush verification stats, will retry: {}", e.getMessage());
+            for (int i = 0; i < ids.size(); i++) {
+                Object[] row = batch.get(i);
+                merge(ids.get(i), (Integer) row[0], ((Timestamp) row[1]).toLocalDateTime());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Flushing verification stats before shutdown");
+        flush();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pendingBiometrics", pending.size());
+        stats.put("flushes", flushes.sum());
+        stats.put("flushedRows", flushedRows.sum());
+        return stats;
+    }
+
+    private void merge(Long biometricId, int count, LocalDateTime verifiedAt) {
+        pending.compute(biometricId, (id, current) ->
+                (current == null ? new Pending() : current).merge(count, verifiedAt));
+    }
+}
@@ -0,0 +1,474 @@
+package com.cognizant.smartpay.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.yubico.webauthn.data.AuthenticatorData;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.CollectedClientData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebAuthn assertion verification.
+ *
+ * Checks the client data (type, origin and a server-issued challenge), the
+ * authenticator data (RP ID hash and user-present flag) and the signature over
+ * authenticatorData || SHA-256(clientDataJSON). Stored public keys may be COSE
+ * or X.509 SubjectPublicKeyInfo; parsed keys are pooled per biometric so the
+ * BLOB is decoded once, not on every login.
+ *
+ * A COSE key's alg must be one this verifier knows and must match its kty and
+ * curve; anything else is rejected rather than guessed. An X.509 RSA key
+ * carries no alg, so enrollment stores it as a COSE key with the alg the
+ * browser reported (see enrollmentKey). An assertion must carry an unused
+ * challenge issued by POST /api/auth/challenge. Challenges are a nonce and an
+ * expiry signed with HMAC-SHA256, so issuing one stores nothing and the
+ * endpoint cannot be used to evict other shoppers' challenges; only the
+ * challenges of verified assertions are remembered, until they expire, to keep
+ * them single use. Only while
+ * app.webauthn.require-challenge is switched off (for kiosks that do not fetch
+ * one yet) is it accepted without one, and counted as "unchallenged". The
+ * authenticator's signature counter is checked by the caller against the
+ * stored one (see signCount).
+ */
+@Component
+@Slf4j
+public class WebAuthnVerifier {
+
+    private static final byte[] ED25519_SPKI_PREFIX = HexFormat.of().parseHex("302a300506032b6570032100");
+
+    private static final CBORMapper CBOR = new CBORMapper();
+
+    // A challenge is nonce || expiry (epoch millis) || HMAC-SHA256 of both
+    private static final int NONCE_LENGTH = 16;
+    private static final int SIGNED_LENGTH = NONCE_LENGTH + Long.BYTES;
+    private static final int CHALLENGE_LENGTH = SIGNED_LENGTH + 32;
+
+    private final byte[] rpIdHash;
+    private final List<String> allowedOrigins;
+    private final boolean requireChallenge;
+
+    private final Cache<Long, ParsedKey> keys;
+    private final SecretKeySpec challengeKey;
+    private final long challengeTtlMillis;
+    private final Cache<ByteArray, Boolean> usedChallenges;
+    private final SecureRandom random = new SecureRandom();
+
+    private final Timer keyLookup = new Timer();
+    private final Timer keyParse = new Timer();
+    private final Timer signatureVerify = new Timer();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder unchallenged = new LongAdder();
+
+    /**
+     * A decoded public key and the JCA signature algorithm that goes with it
+     */
+    private record ParsedKey(PublicKey publicKey, String algorithm) {
+    }
+
+    public WebAuthnVerifier(
+            @Value("${app.webauthn.rp-id}") String rpId,
+            @Value("${app.webauthn.allowed-origins:${cors.allowed-origins}}") String allowedOrigins,
+            @Value("${app.webauthn.require-challenge:true}") boolean requireChallenge,
+            @Value("${app.webauthn.challenge-ttl:2m}") Duration challengeTtl,
+            @Value("${app.webauthn.challenge-secret:}") String challengeSecret,
+            @Value("${app.webauthn.credential-cache.max-size:10000}") long maxKeys) {
+        this.rpIdHash = sha256(rpId.getBytes(StandardCharsets.UTF_8));
+        this.allowedOrigins = Arrays.stream(allowedOrigins.split(","))
+                .map(String::trim)
+                .map(origin -> origin.endsWith("/") ? origin.substring(0, origin.length() - 1) : origin)
+                .toList();
+        this.requireChallenge = requireChallenge;
+        this.keys = Caffeine.newBuilder().maximumSize(maxKeys).build();
+        byte[] secret = challengeSecret.getBytes(StandardCharsets.UTF_8);
+        if (secret.length == 0) {
+            // Without a shared secret each instance accepts only the challenges it issued
+            secret = new byte[32];
+            random.nextBytes(secret);
+        }
+        this.challengeKey = new SecretKeySpec(secret, "HmacSHA256");
+        this.challengeTtlMillis = challengeTtl.toMillis();
+        // Filled only by verified assertions, so not capped by size: evicting a
+        // used challenge before it expires would let its assertion be replayed
+        this.usedChallenges = Caffeine.newBuilder().expireAfterWrite(challengeTtl).build();
+    }
+
+    /**
+     * Issue a single-use challenge for the next assertion
+     */
+    public String issueChallenge() {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes(nonce);
+        ByteBuffer challenge = ByteBuffer.allocate(CHALLENGE_LENGTH)
+                .put(nonce)
+                .putLong(System.currentTimeMillis() + challengeTtlMillis);
+        challenge.put(challengeMac(challenge.array()));
+        return new ByteArray(challenge.array()).getBase64Url();
+    }
+
+    /**
+     * Verify an assertion made with the given stored credential
+     */
+    public boolean verify(Long biometricId, byte[] storedPublicKey, Map<String, Object> fingerprintData) {
+        String signatureB64 = (String) fingerprintData.get("signature");
+        String authenticatorDataB64 = (String) fingerprintData.get("authenticatorData");
+        String clientDataB64 = (String) fingerprintData.get("clientDataJSON");
+
+        if (signatureB64 == null || authenticatorDataB64 == null || clientDataB64 == null) {
+            return reject("Missing signature, authenticatorData or clientDataJSON");
+        }
+        if (storedPublicKey == null || storedPublicKey.length == 0) {
+            return reject("No public key stored for biometric " + biometricId);
+        }
+
+        try {
+            long start = System.nanoTime();
+            ParsedKey key = keys.getIfPresent(biometricId);
+            keyLookup.record(System.nanoTime() - start);
+
+            if (key == null) {
+                start = System.nanoTime();
+                key = parsePublicKey(storedPublicKey);
+                keys.put(biometricId, key);
+                keyParse.record(System.nanoTime() - start);
+            }
+
+            start = System.nanoTime();
+            try {
+                byte[] clientDataJson = decode(clientDataB64);
+                byte[] authenticatorData = decode(authenticatorDataB64);
+
+                CollectedClientData clientData = new CollectedClientData(new ByteArray(clientDataJson));
+                if (!checkClientData(clientData)) {
+                    return false;
+                }
+                ByteArray challenge = clientData.getChallenge();
+                boolean issued = isIssued(challenge.getBytes());
+                if (!issued) {
+                    if (requireChallenge) {
+                        return reject("Unknown or expired challenge");
+                    }
+                    unchallenged.increment();
+                    log.debug("WebAuthn assertion without a known challenge from {}", clientData.getOrigin());
+                }
+
+                AuthenticatorData authData = new AuthenticatorData(new ByteArray(authenticatorData));
+                if (!MessageDigest.isEqual(rpIdHash, authData.getRpIdHash().getBytes())) {
+                    return reject("RP ID hash mismatch");
+                }
+                if (!authData.getFlags().UP) {
+                    return reject("User presence flag not set");
+                }
+
+                Signature verifier = Signature.getInstance(key.algorithm());
+                verifier.initVerify(key.publicKey());
+                verifier.update(authenticatorData);
+                verifier.update(sha256(clientDataJson));
+                if (!verifier.verify(decode(signatureB64))) {
+                    return reject("Signature does not match");
+                }
+                // Challenges are single use
+                if (issued && usedChallenges.asMap().putIfAbsent(challenge, Boolean.TRUE) != null) {
+                    return reject("Challenge already used");
+                }
+                return true;
+            } finally {
+                signatureVerify.record(System.nanoTime() - start);
+            }
+        } catch (Exception e) {
+            return reject("Malformed assertion: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The signature counter of a verified assertion's authenticator data
+     */
+    public static long signCount(Map<String, Object> fingerprintData) {
+        try {
+            return new AuthenticatorData(new ByteArray(decode((String) fingerprintData.get("authenticatorData"))))
+                    .getSignatureCounter();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Malformed authenticatorData", e);
+        }
+    }
+
+    /**
+     * Drop the pooled key of a deactivated biometric
+     */
+    public void invalidateKey(Long biometricId) {
+        TransactionCallbacks.afterCommit(() -> keys.invalidate(biometricId));
+    }
+
+    /**
+     * Per-step latency, in microseconds
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pooledKeys", keys.estimatedSize());
+        stats.put("keyLookup", keyLookup.toMap());
+        stats.put("keyParse", keyParse.toMap());
+        stats.put("signatureVerify", signatureVerify.toMap());
+        stats.put("rejected", rejected.sum());
+        stats.put("unchallenged", unchallenged.sum());
+        stats.put("usedChallenges", usedChallenges.estimatedSize());
+        stats.put("requireChallenge", requireChallenge);
+        return stats;
+    }
+
+    private boolean checkClientData(CollectedClientData clientData) {
+        if (!"webauthn.get".equals(clientData.getType())) {
+            return reject("Unexpected client data type: " + clientData.getType());
+        }
+        if (!allowedOrigins.contains(clientData.getOrigin())) {
+            return reject("Origin not allowed: " + clientData.getOrigin());
+        }
+        return true;
+    }
+
+    /**
+     * Whether a challenge was issued by this verifier (or one sharing its
+     * secret) and has not expired
+     */
+    private boolean isIssued(byte[] challenge) {
+        if (challenge.length != CHALLENGE_LENGTH) {
+            return false;
+        }
+        byte[] mac = Arrays.copyOfRange(challenge, SIGNED_LENGTH, CHALLENGE_LENGTH);
+        return MessageDigest.isEqual(challengeMac(challenge), mac)
+                && ByteBuffer.wrap(challenge, NONCE_LENGTH, Long.BYTES).getLong() > System.currentTimeMillis();
+    }
+
+    /**
+     * HMAC-SHA256 of a challenge's nonce and expiry
+     */
+    private byte[] challengeMac(byte[] challenge) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(challengeKey);
+            mac.update(challenge, 0, SIGNED_LENGTH);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    /**
+     * The public key to store for a new credential. An RSA key in
+     * SubjectPublicKeyInfo form does not say which hash it signs with, so it is
+     * stored as a COSE_Key carrying the alg the browser reported through
+     * getPublicKeyAlgorithm(); other keys are checked and stored as sent.
+     */
+    public static byte[] enrollmentKey(byte[] encoded, Integer coseAlgorithm) {
+        ParsedKey key;
+        try {
+            key = parsePublicKey(encoded);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Unsupported WebAuthn public key: " + e.getMessage(), e);
+        }
+        if ((encoded[0] & 0xe0) == 0xa0 || !(key.publicKey() instanceof RSAPublicKey rsa)) {
+            return encoded;
+        }
+        if (coseAlgorithm == null) {
+            throw new IllegalArgumentException(
+                    "An RSA public key in SubjectPublicKeyInfo form needs its publicKeyAlgorithm (-257, -258 or -259)");
+        }
+        if (coseAlgorithm != -257 && coseAlgorithm != -258 && coseAlgorithm != -259) {
+            throw new IllegalArgumentException("Unsupported RSA alg: " + coseAlgorithm);
+        }
+
+        Map<Integer, Object> cose = new LinkedHashMap<>();
+        cose.put(1, 3);
+        cose.put(3, coseAlgorithm);
+        cose.put(-1, unsigned(rsa.getModulus()));
+        cose.put(-2, unsigned(rsa.getPublicExponent()));
+        try {
+            return CBOR.writeValueAsBytes(cose);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not encode COSE key", e);
+        }
+    }
+
+    private boolean reject(String reason) {
+        rejected.increment();
+        log.warn("WebAuthn assertion rejected: {}", reason);
+        return false;
+    }
+
+    /**
+     * Decode a COSE_Key, or an X.509 SubjectPublicKeyInfo as returned by
+     * the browser's getPublicKey()
+     */
+    private static ParsedKey parsePublicKey(byte[] encoded) throws Exception {
+        // A DER SEQUENCE starts with 0x30; a COSE_Key is a CBOR map (major type 5)
+        if ((encoded[0] & 0xe0) == 0xa0) {
+            return parseCoseKey(CBOR.readTree(encoded));
+        }
+
+        X509EncodedKeySpec spec = new X509EncodedKeySpec(encoded);
+        for (String type : new String[]{"EC", "RSA", "Ed25519"}) {
+            PublicKey publicKey;
+            try {
+                publicKey = KeyFactory.getInstance(type).generatePublic(spec);
+            } catch (Exception ignored) {
+                // try the next key type
+                continue;
+            }
+            return new ParsedKey(publicKey, switch (type) {
+                // ES256, ES384 and ES512 each fix their curve, so the curve gives the hash
+                case "EC" -> switch (((ECPublicKey) publicKey).getParams().getCurve().getField().getFieldSize()) {
+                    case 256 -> "SHA256withECDSA";
+                    case 384 -> "SHA384withECDSA";
+                    case 521 -> "SHA512withECDSA";
+                    default -> throw new IllegalArgumentException("Unsupported EC curve");
+                };
+                // Enrollment stores RSA keys as COSE with their alg; only keys
+                // enrolled before that are read here, and those were all RS256
+                case "RSA" -> "SHA256withRSA";
+                default -> "Ed25519";
+            });
+        }
+        throw new IllegalArgumentException("Unsupported public key encoding");
+    }
+
+    private static ParsedKey parseCoseKey(JsonNode cose) throws Exception {
+        if (!cose.isObject()) {
+            throw new IllegalArgumentException("COSE key is not a map");
+        }
+
+        // COSE labels are integers; Jackson exposes them as field names
+        int kty = cose.path("1").asInt();
+        int alg = cose.path("3").asInt();
+
+        switch (kty) {
+            case 2 -> {
+                // ES256 is P-256, ES384 is P-384 and ES512 is P-521
+                String algorithm;
+                int expectedCrv;
+                switch (alg) {
+                    case -7 -> { algorithm = "SHA256withECDSA"; expectedCrv = 1; }
+                    case -35 -> { algorithm = "SHA384withECDSA"; expectedCrv = 2; }
+                    case -36 -> { algorithm = "SHA512withECDSA"; expectedCrv = 3; }
+                    default -> throw new IllegalArgumentException("Unsupported EC2 alg: " + alg);
+                }
+                int crv = cose.path("-1").asInt();
+                if (crv != expectedCrv) {
+                    throw new IllegalArgumentException("COSE alg " + alg + " does not match curve " + crv);
+                }
+                String curve = switch (crv) {
+                    case 1 -> "secp256r1";
+                    case 2 -> "secp384r1";
+                    default -> "secp521r1";
+                };
+                AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+                parameters.init(new ECGenParameterSpec(curve));
+                ECPoint point = new ECPoint(
+                        new BigInteger(1, cose.path("-2").binaryValue()),
+                        new BigInteger(1, cose.path("-3").binaryValue()));
+                PublicKey publicKey = KeyFactory.getInstance("EC").generatePublic(
+                        new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+                return new ParsedKey(publicKey, algorithm);
+            }
+            case 3 -> {
+                String algorithm = switch (alg) {
+                    case -257 -> "SHA256withRSA";
+                    case -258 -> "SHA384withRSA";
+                    case -259 -> "SHA512withRSA";
+                    default -> throw new IllegalArgumentException("Unsupported RSA alg: " + alg);
+                };
+                PublicKey publicKey = KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(
+                        new BigInteger(1, cose.path("-1").binaryValue()),
+                        new BigInteger(1, cose.path("-2").binaryValue())));
+                return new ParsedKey(publicKey, algorithm);
+            }
+            case 1 -> {
+                // EdDSA over Ed25519 is the only OKP combination WebAuthn uses
+                if (alg != -8 || cose.path("-1").asInt() != 6) {
+                    throw new IllegalArgumentException("Unsupported OKP alg " + alg + " / curve " + cose.path("-1").asInt());
+                }
+                byte[] x = cose.path("-2").binaryValue();
+                byte[] spki = Arrays.copyOf(ED25519_SPKI_PREFIX, ED25519_SPKI_PREFIX.length + x.length);
+                System.arraycopy(x, 0, spki, ED25519_SPKI_PREFIX.length, x.length);
+                PublicKey publicKey = KeyFactory.getInstance("Ed25519").generatePublic(new X509EncodedKeySpec(spki));
+                return new ParsedKey(publicKey, "Ed25519");
+            }
+            default -> throw new IllegalArgumentException("Unsupported COSE key type: " + kty);
+        }
+    }
+
+    /**
+     * Accept both base64 and base64url, with or without padding
+     */
+    private static byte[] decode(String value) {
+        return Base64.getUrlDecoder().decode(value.trim()
+                .replace('+', '-')
+                .replace('/', '_')
+                .replace("=", ""));
+    }
+
+    private static byte[] unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        return bytes[0] == 0 && bytes.length > 1 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+    }
+
+    private static byte[] sha256(byte[] input) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(input);
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Call count and cumulative latency of one verification step
+     */
+    private static final class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        void record(long elapsed) {
+            count.increment();
+            nanos.add(elapsed);
+        }
+
+        Map<String, Object> toMap() {
+            long calls = count.sum();
+            Map<String, Object> result = new HashMap<>();
+            result.put("count", calls);
+            result.put("avgMicros", calls == 0 ? 0.0 : nanos.sum() / 1_000.0 / calls);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.cognizant.smartpay.controller;
+
+import com.cognizant.smartpay.config.AdminTokenInterceptor;
+import com.cognizant.smartpay.exception.GlobalExceptionHandler;
+import com.cognizant.smartpay.service.CartEpcs;
+import com.cognizant.smartpay.service.CartService;
+import com.cognizant.smartpay.service.CredentialCache;
+import com.cognizant.smartpay.service.CredentialFilter;
+import com.cognizant.smartpay.service.LaneSessionRegistry;
+import com.cognizant.smartpay.service.RFIDTagCache;
+import com.cognizant.smartpay.service.ReaderSequences;
+import com.cognizant.smartpay.service.ScanDeduplicator;
+import com.cognizant.smartpay.service.ScanIngestQueue;
+import com.cognizant.smartpay.service.TemplateMatcher;
+import com.cognizant.smartpay.service.VerificationStatsWriter;
+import com.cognizant.smartpay.service.WebAuthnVerifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class AdminMetricsControllerTest {
+
+    private static final String TOKEN = "admin-secret";
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        CredentialCache credentialCache = mock(CredentialCache.class);
+        when(credentialCache.getStats()).thenReturn(Map.of("size", 12));
+        LaneSessionRegistry laneSessions = mock(LaneSessionRegistry.class);
+        when(laneSessions.getStats()).thenReturn(Map.of("open", 3));
+        CartService cartService = mock(CartService.class);
+        when(cartService.getStats()).thenReturn(Map.of("push", Map.of("subscribers", 2)));
+        AdminMetricsController controller = new AdminMetricsController(mock(TemplateMatcher.class), credentialCache,
+                mock(CredentialFilter.class), mock(VerificationStatsWriter.class), mock(WebAuthnVerifier.class),
+                mock(RFIDTagCache.class), mock(ScanDeduplicator.class), mock(ScanIngestQueue.class), laneSessions,
+                mock(CartEpcs.class), mock(ReaderSequences.class), mock(ObjectProvider.class), cartService);
+        // The same guard AdminWebConfig registers
+        mvc = MockMvcBuilders.standaloneSetup(controller)
+                .addMappedInterceptors(new String[]{"/api/admin/**"}, new AdminTokenInterceptor(TOKEN))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .defaultRequest(get("/").accept(MediaType.APPLICATION_JSON))
+                .build();
+    }
+
+    @Test
+    void metricsNeedTheAdminToken() throws Exception {
+        mvc.perform(get("/api/admin/metrics/auth"))
+                .andExpect(status().isUnauthorized());
+        mvc.perform(get("/api/admin/metrics/auth").header("X-Admin-Token", "guess"))
+                .andExpect(status().isUnauthorized());
+
+        mvc.perform(get("/api/admin/metrics/auth").header("X-Admin-Token", TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.credentialCache.size").value(12));
+
+        mvc.perform(get("/api/admin/metrics/scan"))
+                .andExpect(status().isUnauthorized());
+        mvc.perform(get("/api/admin/metrics/scan").header("X-Admin-Token", TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sessions.open").value(3));
+
+        mvc.perform(get("/api/admin/metrics/cart"))
+                .andExpect(status().isUnauthorized());
+        mvc.perform(get("/api/admin/metrics/cart").header("X-Admin-Token", TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.push.subscribers").value(2));
+    }
+}
@@ -0,0 +1,136 @@
+package com.cognizant.smartpay.controller;
+
+import com.cognizant.smartpay.dto.CredentialDelta;
+import com.cognizant.smartpay.dto.CredentialPage;
+import com.cognizant.smartpay.exception.GlobalExceptionHandler;
+import com.cognizant.smartpay.service.BiometricService;
+import com.cognizant.smartpay.service.BulkRegistrationService;
+import com.cognizant.smartpay.service.WebAuthnVerifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class BiometricAuthControllerTest {
+
+    private BiometricService biometricService;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        biometricService = mock(BiometricService.class);
+        BiometricAuthController controller = new BiometricAuthController(
+                mock(JdbcTemplate.class), biometricService, mock(BulkRegistrationService.class),
+                mock(WebAuthnVerifier.class));
+        mvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .defaultRequest(get("/").accept(MediaType.APPLICATION_JSON))
+                .build();
+        when(biometricService.getCredentialVersion()).thenReturn("100-7");
+    }
+
+    @Test
+    void unchangedCredentialSetIsAnswered304() throws Exception {
+        mvc.perform(get("/api/auth/credentials").header("If-None-Match", "\"100-6\", W/\"100-7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"100-7\""));
+
+        verify(biometricService, never()).getAllActiveCredentials();
+    }
+
+    @Test
+    void legacyListCarriesTheVersionAsETag() throws Exception {
+        when(biometricService.getAllActiveCredentials()).thenReturn(List.of("a", "b"));
+
+        mvc.perform(get("/api/auth/credentials").header("If-None-Match", "\"100-6\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"100-7\""))
+                .andExpect(jsonPath("$[1]").value("b"));
+    }
+
+    @Test
+    void deltaIsAnswered304WhenNothingChanged() throws Exception {
+        mvc.perform(get("/api/auth/credentials").param("since", "100-7").header("If-None-Match", "\"100-7\""))
+                .andExpect(status().isNotModified());
+
+        verify(biometricService, never()).getCredentialChanges(any());
+    }
+
+    @Test
+    void deltaReportsAddedAndRevokedIds() throws Exception {
+        when(biometricService.getCredentialChanges("100-5"))
+                .thenReturn(new CredentialDelta("100-7", false, List.of("a"), List.of("b")));
+
+        mvc.perform(get("/api/auth/credentials").param("since", "100-5"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"100-7\""))
+                .andExpect(jsonPath("$.fullResync").value(false))
+                .andExpect(jsonPath("$.added[0]").value("a"))
+                .andExpect(jsonPath("$.revoked[0]").value("b"));
+    }
+
+    @Test
+    void pagesAreNeverAnswered304AndTheirSizeIsCapped() throws Exception {
+        when(biometricService.getCredentialPage(any(), anyInt()))
+                .thenReturn(new CredentialPage("100-7", List.of("a"), null));
+
+        mvc.perform(get("/api/auth/credentials").param("limit", "100000").header("If-None-Match", "*"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.credentials[0]").value("a"));
+
+        verify(biometricService).getCredentialPage(null, 5000);
+    }
+
+    @Test
+    void sinceWithAfterOrLimitIsABadRequest() throws Exception {
+        mvc.perform(get("/api/auth/credentials").param("since", "100-5").param("after", "10"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("since cannot be combined with after or limit"));
+        mvc.perform(get("/api/auth/credentials").param("since", "100-5").param("limit", "50"))
+                .andExpect(status().isBadRequest());
+
+        verify(biometricService, never()).getCredentialPage(any(), anyInt());
+        verify(biometricService, never()).getCredentialChanges(any());
+    }
+
+    @Test
+    void failedPagedOrDeltaReadsAreErrorsNotEmptyResults() throws Exception {
+        when(biometricService.getCredentialPage(any(), anyInt()))
+                .thenThrow(new DataAccessResourceFailureException("database down"));
+        when(biometricService.getCredentialChanges(any()))
+                .thenThrow(new DataAccessResourceFailureException("database down"));
+
+        mvc.perform(get("/api/auth/credentials").param("after", "10"))
+                .andExpect(status().isInternalServerError());
+        mvc.perform(get("/api/auth/credentials").param("since", "100-5"))
+                .andExpect(status().isInternalServerError());
+    }
+
+    @Test
+    void failedLegacyListFallsBackToAnUncachedEmptyArray() throws Exception {
+        when(biometricService.getAllActiveCredentials())
+                .thenThrow(new DataAccessResourceFailureException("database down"));
+
+        mvc.perform(get("/api/auth/credentials"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("ETag"))
+                .andExpect(content().json("[]"));
+    }
+}
@@ -0,0 +1,153 @@
+package com.cognizant.smartpay.controller;
+
+import com.cognizant.smartpay.dto.CartBatchRequest;
+import com.cognizant.smartpay.dto.CartItemResponse;
+import com.cognizant.smartpay.dto.CartTotalResponse;
+import com.cognizant.smartpay.dto.CartView;
+import com.cognizant.smartpay.exception.GlobalExceptionHandler;
+import com.cognizant.smartpay.service.CartService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class CartControllerTest {
+
+    private CartService cartService;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        cartService = mock(CartService.class);
+        mvc = MockMvcBuilders.standaloneSetup(new CartController(cartService))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .defaultRequest(get("/").accept(MediaType.APPLICATION_JSON))
+                .build();
+    }
+
+    @Test
+    void cartReadsAreAnswered304WhenIfNoneMatchListsTheVersion() throws Exception {
+        when(cartService.getCartVersion(1L)).thenReturn(42L);
+
+        for (String path : List.of("/api/cart/1", "/api/cart/1/total", "/api/cart/1/view")) {
+            mvc.perform(get(path).header("If-None-Match", "\"42\""))
+                    .andExpect(status().isNotModified())
+                    .andExpect(header().string("ETag", "\"42\""));
+            mvc.perform(get(path).header("If-None-Match", "\"40\", W/\"42\""))
+                    .andExpect(status().isNotModified());
+            mvc.perform(get(path).header("If-None-Match", "*"))
+                    .andExpect(status().isNotModified());
+        }
+
+        verify(cartService, never()).getCartItems(anyLong());
+        verify(cartService, never()).getCartTotal(anyLong());
+        verify(cartService, never()).getCartView(anyLong());
+    }
+
+    @Test
+    void aTagFromBeforeAChangeGetsTheNewCart() throws Exception {
+        when(cartService.getCartVersion(1L)).thenReturn(43L);
+        when(cartService.getCartItems(1L)).thenReturn(List.of(item(10L)));
+        when(cartService.getCartTotal(1L)).thenReturn(CartTotalResponse.of(new BigDecimal("20"), 1));
+        when(cartService.getCartView(1L)).thenReturn(view(43));
+
+        mvc.perform(get("/api/cart/1").header("If-None-Match", "\"42\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"43\""))
+                .andExpect(jsonPath("$[0].id").value(10));
+        mvc.perform(get("/api/cart/1/total").header("If-None-Match", "W/\"42\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"43\""))
+                .andExpect(jsonPath("$.itemCount").value(1));
+    }
+
+    @Test
+    void viewETagIsTheVersionOfTheViewSent() throws Exception {
+        // Changed between reading the version and the view
+        when(cartService.getCartVersion(1L)).thenReturn(42L);
+        when(cartService.getCartView(1L)).thenReturn(view(44));
+
+        mvc.perform(get("/api/cart/1/view").header("If-None-Match", "\"41\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"44\""))
+                .andExpect(jsonPath("$.version").value(44));
+    }
+
+    @Test
+    void aCartNotCachedIsLoadedOnceAndAnswered200() throws Exception {
+        when(cartService.getCartVersion(1L)).thenReturn(null);
+        when(cartService.getCartView(1L)).thenReturn(view(50));
+
+        // A tag from before a restart or a sweep
+        mvc.perform(get("/api/cart/1").header("If-None-Match", "\"49\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"50\""));
+        mvc.perform(get("/api/cart/1/total").header("If-None-Match", "\"49\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"50\""))
+                .andExpect(jsonPath("$.subtotal").value(20));
+        mvc.perform(get("/api/cart/1/view").header("If-None-Match", "\"49\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"50\""));
+
+        verify(cartService, times(3)).getCartView(1L);
+        verify(cartService, never()).getCartItems(anyLong());
+        verify(cartService, never()).getCartTotal(anyLong());
+    }
+
+    @Test
+    void batchReturnsTheCartAfterwardsWithItsVersionAsETag() throws Exception {
+        when(cartService.getCartView(1L)).thenReturn(view(42));
+
+        mvc.perform(post("/api/cart/1/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"updates\":[{\"cartItemId\":10,\"quantity\":2}],\"removals\":[11]}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"42\""))
+                .andExpect(jsonPath("$.version").value(42))
+                .andExpect(jsonPath("$.total.subtotal").value(20));
+
+        verify(cartService).updateCartItems(eq(1L), eq(new CartBatchRequest(
+                List.of(new CartBatchRequest.QuantityChange(10L, 2)), List.of(11L))));
+    }
+
+    @Test
+    void rejectedBatchIsABadRequestWithoutACart() throws Exception {
+        doThrow(new IllegalArgumentException("Cart item 10 is updated more than once"))
+                .when(cartService).updateCartItems(anyLong(), any());
+
+        mvc.perform(post("/api/cart/1/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"updates\":[{\"cartItemId\":10,\"quantity\":2},{\"cartItemId\":10,\"quantity\":3}]}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(header().doesNotExist("ETag"))
+                .andExpect(jsonPath("$.message").value("Cart item 10 is updated more than once"));
+
+        verify(cartService, never()).getCartView(anyLong());
+    }
+
+    private static CartItemResponse item(Long id) {
+        return new CartItemResponse(id, 1L, 1, null);
+    }
+
+    private static CartView view(long version) {
+        return new CartView(List.of(), CartTotalResponse.of(new BigDecimal("20"), 1), version);
+    }
+}
@@ -0,0 +1,223 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.dto.FingerprintAuthRequest;
+import com.cognizant.smartpay.entity.User;
+import com.cognizant.smartpay.exception.AuthenticationFailedException;
+import com.cognizant.smartpay.repository.BiometricRepository;
+import com.cognizant.smartpay.repository.UserRepository;
+import com.cognizant.smartpay.repository.WalletRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BiometricServiceTest {
+
+    private static final int LENGTH = 100;
+
+    private final Random random = new Random(11);
+    private final TemplateMatcher matcher = new TemplateMatcher(Integer.MAX_VALUE, 1);
+    private final List<FingerprintGallery.Entry> gallery = new ArrayList<>();
+
+    private BiometricRepository biometricRepository;
+    private UserRepository userRepository;
+    private CredentialFilter credentialFilter;
+    private CredentialCache credentialCache;
+    private WebAuthnVerifier webAuthnVerifier;
+    private VerificationStatsWriter verificationStats;
+    private LaneSessionRegistry laneSessions;
+    private BiometricService service;
+
+    @BeforeEach
+    void setUp() {
+        biometricRepository = mock(BiometricRepository.class);
+        userRepository = mock(UserRepository.class);
+        credentialFilter = mock(CredentialFilter.class);
+        credentialCache = mock(CredentialCache.class);
+        webAuthnVerifier = mock(WebAuthnVerifier.class);
+        verificationStats = mock(VerificationStatsWriter.class);
+        laneSessions = new LaneSessionRegistry();
+        FingerprintGallery fingerprintGallery = mock(FingerprintGallery.class);
+        when(fingerprintGallery.isEmpty()).thenAnswer(invocation -> gallery.isEmpty());
+        when(fingerprintGallery.candidates(any(), anyInt())).thenAnswer(invocation -> List.copyOf(gallery));
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findByUserId(any())).thenReturn(Optional.empty());
+
+        service = new BiometricService(biometricRepository, userRepository, walletRepository,
+                fingerprintGallery, matcher, credentialCache, credentialFilter,
+                verificationStats, webAuthnVerifier, mock(CredentialChangeLog.class), laneSessions);
+        ReflectionTestUtils.setField(service, "matchThreshold", 85);
+        ReflectionTestUtils.setField(service, "matchMargin", 5);
+        ReflectionTestUtils.setField(service, "topK", 5);
+        ReflectionTestUtils.setField(service, "identificationMode", "ranked");
+    }
+
+    @AfterEach
+    void shutdown() {
+        matcher.shutdown();
+    }
+
+    @Test
+    void theBestMatchWinsWhenNobodyElseIsClose() {
+        byte[] probe = randomTemplate();
+        enroll(1L, 10L, similar(probe, 70));
+        enroll(2L, 20L, similar(probe, 95));
+        enroll(3L, 30L, similar(probe, 40));
+
+        User user = authenticate(probe, "lane-3");
+
+        assertThat(user.getUserId()).isEqualTo(20L);
+        verify(verificationStats).record(2L);
+        assertThat(laneSessions.get("lane-3").userId()).isEqualTo(20L);
+    }
+
+    @Test
+    void anotherUserWithinTheMarginMakesTheMatchAmbiguous() {
+        byte[] probe = randomTemplate();
+        enroll(1L, 10L, similar(probe, 92));
+        enroll(2L, 20L, similar(probe, 90));
+
+        assertThatThrownBy(() -> authenticate(probe, null))
+                .isInstanceOf(AuthenticationFailedException.class)
+                .hasMessageContaining("ambiguous");
+        verify(verificationStats, never()).record(any());
+    }
+
+    @Test
+    void aRunnerUpBelowTheThresholdButWithinTheMarginStillCounts() {
+        byte[] probe = randomTemplate();
+        enroll(1L, 10L, similar(probe, 86));
+        enroll(2L, 20L, similar(probe, 82));
+
+        assertThatThrownBy(() -> authenticate(probe, null)).hasMessageContaining("ambiguous");
+    }
+
+    @Test
+    void otherFingersOfTheSameUserAreNotAmbiguous() {
+        byte[] probe = randomTemplate();
+        enroll(1L, 10L, similar(probe, 93));
+        enroll(2L, 10L, similar(probe, 92));
+        enroll(3L, 20L, similar(probe, 60));
+
+        assertThat(authenticate(probe, null).getUserId()).isEqualTo(10L);
+    }
+
+    @Test
+    void noTemplateReachingTheThresholdIsNotRecognized() {
+        byte[] probe = randomTemplate();
+        enroll(1L, 10L, similar(probe, 84));
+
+        assertThatThrownBy(() -> authenticate(probe, null)).hasMessageContaining("not recognized");
+    }
+
+    @Test
+    void legacyModeTakesTheFirstTemplateOverTheThreshold() {
+        ReflectionTestUtils.setField(service, "identificationMode", "first");
+        byte[] probe = randomTemplate();
+        enroll(1L, 10L, similar(probe, 88));
+        enroll(2L, 20L, similar(probe, 99));
+
+        assertThat(authenticate(probe, null).getUserId()).isEqualTo(10L);
+    }
+
+    @Test
+    void aWebAuthnSignatureCounterMustIncrease() {
+        user(10L);
+        when(credentialFilter.mightContain("cred")).thenReturn(true);
+        when(credentialCache.get("cred"))
+                .thenReturn(Optional.of(new CredentialCache.CredentialSnapshot(5L, 10L, new byte[]{1}, true)));
+        when(webAuthnVerifier.verify(any(), any(), any())).thenReturn(true);
+        when(biometricRepository.advanceSignCount(5L, 7L)).thenReturn(1, 0);
+
+        assertThat(authenticateWebAuthn(7).getUserId()).isEqualTo(10L);
+        // The same assertion again, or a cloned authenticator behind the stored counter
+        assertThatThrownBy(() -> authenticateWebAuthn(7))
+                .isInstanceOf(AuthenticationFailedException.class)
+                .hasMessageContaining("counter");
+        verify(verificationStats).record(5L);
+    }
+
+    @Test
+    void aZeroSignatureCounterIsAcceptedOnlyWhileTheStoredOneIsZero() {
+        user(10L);
+        when(credentialFilter.mightContain("cred")).thenReturn(true);
+        when(credentialCache.get("cred"))
+                .thenReturn(Optional.of(new CredentialCache.CredentialSnapshot(5L, 10L, new byte[]{1}, true)));
+        when(webAuthnVerifier.verify(any(), any(), any())).thenReturn(true);
+
+        when(biometricRepository.findSignCount(5L)).thenReturn(Optional.of(0L));
+        assertThat(authenticateWebAuthn(0).getUserId()).isEqualTo(10L);
+
+        when(biometricRepository.findSignCount(5L)).thenReturn(Optional.of(3L));
+        assertThatThrownBy(() -> authenticateWebAuthn(0)).hasMessageContaining("counter");
+        verify(biometricRepository, never()).advanceSignCount(any(), anyLong());
+    }
+
+    private User authenticateWebAuthn(int signCount) {
+        byte[] authenticatorData = ByteBuffer.allocate(37).position(32).put((byte) 0x01).putInt(signCount).array();
+        FingerprintAuthRequest request = new FingerprintAuthRequest();
+        request.setFingerprintData(Map.of("credentialId", "cred",
+                "authenticatorData", Base64.getUrlEncoder().withoutPadding().encodeToString(authenticatorData)));
+        request.setDeviceInfo(Map.of("method", "webauthn"));
+        return service.authenticateFingerprint(request);
+    }
+
+    private User authenticate(byte[] probe, Object laneId) {
+        FingerprintAuthRequest request = new FingerprintAuthRequest();
+        request.setFingerprintData(Map.of("fingerprintTemplate", Base64.getEncoder().encodeToString(probe)));
+        request.setDeviceInfo(laneId == null
+                ? Map.of("method", "external_usb")
+                : Map.of("method", "external_usb", "laneId", laneId));
+        return service.authenticateFingerprint(request);
+    }
+
+    private void enroll(Long biometricId, Long userId, byte[] template) {
+        gallery.add(new FingerprintGallery.Entry(biometricId, userId,
+                ByteBuffer.wrap(template).order(ByteOrder.LITTLE_ENDIAN), new int[16], 0));
+        user(userId);
+    }
+
+    private void user(Long userId) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setEmail("user" + userId + "@example.com");
+        user.setEnabled(true);
+        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+    }
+
+    private byte[] randomTemplate() {
+        byte[] template = new byte[LENGTH];
+        random.nextBytes(template);
+        return template;
+    }
+
+    /**
+     * A copy of {@code template} that scores exactly {@code score} against it
+     */
+    private byte[] similar(byte[] template, int score) {
+        byte[] copy = template.clone();
+        for (int i = score; i < copy.length; i++) {
+            copy[i] = (byte) (template[i] + 1 + random.nextInt(255));
+        }
+        return copy;
+    }
+}
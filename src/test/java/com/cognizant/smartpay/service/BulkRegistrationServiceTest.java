@@ -0,0 +1,163 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.dto.BulkRegistrationResponse;
+import com.cognizant.smartpay.dto.BulkRegistrationResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BulkRegistrationServiceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private BulkRegistrationService service;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("""
+            CREATE TABLE users (
+                user_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                name VARCHAR(100), email VARCHAR(255) UNIQUE, phone VARCHAR(15) UNIQUE,
+                biometric_enabled TINYINT, enabled TINYINT, status VARCHAR(20),
+                created_at TIMESTAMP, updated_at TIMESTAMP
+            )
+            """);
+        jdbcTemplate.execute("""
+            CREATE TABLE wallet (
+                wallet_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                user_id BIGINT NOT NULL, balance DECIMAL(12, 2), currency VARCHAR(3),
+                created_at TIMESTAMP, updated_at TIMESTAMP
+            )
+            """);
+        jdbcTemplate.execute("""
+            CREATE TABLE biometrics (
+                biometric_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                user_id BIGINT NOT NULL, fingerprint_hash VARCHAR(255), fingerprint_template VARBINARY(4096),
+                device_type VARCHAR(50), enrollment_method VARCHAR(20), credential_id VARCHAR(255),
+                public_key VARBINARY(1024), enrolled_at TIMESTAMP, verification_count INT, sign_count BIGINT,
+                is_active TINYINT
+            )
+            """);
+
+        BiometricService biometricService = mock(BiometricService.class);
+        when(biometricService.newRegistrationBiometric(any(), any(), any())).thenCallRealMethod();
+
+        service = new BulkRegistrationService(jdbcTemplate,
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)),
+                new ObjectMapper(), Validation.buildDefaultValidatorFactory().getValidator(),
+                biometricService, 2);
+    }
+
+    @Test
+    void everyRowGetsItsOwnResultAndBadRowsDoNotStopTheImport() throws IOException {
+        jdbcTemplate.update("INSERT INTO users (name, email) VALUES ('Existing', 'taken@example.com')");
+
+        BulkRegistrationResponse response = register("""
+            [
+              %s,
+              42,
+              {"name": "Bad Balance", "email": "bad@example.com", "initialWalletBalance": "lots"},
+              {"name": "No Email", "initialWalletBalance": 1, "fingerprintData": {}, "deviceType": "x", "enrolledAt": "now"},
+              %s,
+              %s,
+              %s
+            ]
+            """.formatted(row("a@example.com", "1"), row("A@example.com", "2"), row("taken@example.com", "3"),
+                row("b@example.com", "4")));
+
+        assertThat(response.getResults()).extracting(BulkRegistrationResult::getStatus).containsExactly(
+                "CREATED", "INVALID", "INVALID", "INVALID", "DUPLICATE", "DUPLICATE", "CREATED");
+        assertThat(response.getResults()).extracting(BulkRegistrationResult::getIndex)
+                .containsExactly(0, 1, 2, 3, 4, 5, 6);
+        assertThat(response.getResults().get(2).getEmail()).isEqualTo("bad@example.com");
+        assertThat(response.getCreated()).isEqualTo(2);
+        assertThat(response.getRejected()).isEqualTo(5);
+
+        assertThat(count("users")).isEqualTo(3);
+        assertThat(count("wallet")).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM biometrics b JOIN users u ON b.user_id = u.user_id WHERE u.email = 'b@example.com'",
+                Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void brokenJsonStillWritesAndReportsTheRowsBeforeIt() throws IOException {
+        BulkRegistrationResponse response = register(
+                "[" + row("a@example.com", "1") + "," + row("b@example.com", "2") + "," + row("c@example.com", "3")
+                        + ", {\"name\": ");
+
+        assertThat(response.getResults()).extracting(BulkRegistrationResult::getStatus)
+                .containsExactly("CREATED", "CREATED", "CREATED", "INVALID");
+        assertThat(response.getResults().get(3).getIndex()).isEqualTo(3);
+        assertThat(count("users")).isEqualTo(3);
+    }
+
+    @Test
+    void contentAfterTheArrayIsReported() throws IOException {
+        BulkRegistrationResponse response = register("[" + row("a@example.com", "1") + "] [");
+
+        assertThat(response.getResults()).extracting(BulkRegistrationResult::getStatus)
+                .containsExactly("CREATED", "INVALID");
+    }
+
+    @Test
+    void aBodyThatIsNotAnArrayIsRejected() {
+        assertThatThrownBy(() -> register(row("a@example.com", "1")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void repeatingAnImportCreatesNothingTwice() throws IOException {
+        String body = "[" + row("a@example.com", "1") + "," + row("b@example.com", "2") + "]";
+        register(body);
+
+        BulkRegistrationResponse again = register(body);
+
+        assertThat(again.getResults()).extracting(BulkRegistrationResult::getStatus)
+                .containsExactly("DUPLICATE", "DUPLICATE");
+        assertThat(count("users")).isEqualTo(2);
+    }
+
+    @Test
+    void aFailedChunkLeavesNoPartialUsersBehind() throws IOException {
+        jdbcTemplate.execute("DROP TABLE wallet");
+
+        BulkRegistrationResponse response = register("[" + row("a@example.com", "1") + "]");
+
+        assertThat(response.getResults()).extracting(BulkRegistrationResult::getStatus).containsExactly("FAILED");
+        assertThat(count("users")).isZero();
+    }
+
+    private BulkRegistrationResponse register(String json) throws IOException {
+        return service.registerAll(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String row(String email, String phone) {
+        return """
+            {"name": "User", "email": "%s", "phone": "%s", "initialWalletBalance": 100,
+             "fingerprintData": {"method": "external_usb", "fingerprintTemplate": "AQIDBA=="},
+             "deviceType": "scanner", "enrolledAt": "2024-01-01T00:00:00Z"}""".formatted(email, phone);
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+}
@@ -0,0 +1,274 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.dto.CartItemResponse;
+import com.cognizant.smartpay.dto.CartTotalResponse;
+import com.cognizant.smartpay.dto.CartView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CartAggregatesTest {
+
+    private static final Long USER = 1L;
+    private static final Long CART = 100L;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private final CartUpdateStream updates = mock(CartUpdateStream.class);
+    private CartAggregates aggregates;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        jdbcTemplate.execute("""
+            CREATE TABLE cart (
+                cart_id BIGINT PRIMARY KEY,
+                user_id BIGINT NOT NULL,
+                is_active TINYINT NOT NULL
+            )
+            """);
+        jdbcTemplate.execute("""
+            CREATE TABLE products (
+                product_id BIGINT PRIMARY KEY,
+                name VARCHAR(100),
+                brand VARCHAR(100),
+                category_id VARCHAR(20),
+                selling_price DECIMAL(10,2),
+                mrp DECIMAL(10,2),
+                unit VARCHAR(20),
+                image_url VARCHAR(200)
+            )
+            """);
+        jdbcTemplate.execute("""
+            CREATE TABLE rfid_tags (
+                rfid_tag VARCHAR(64) PRIMARY KEY,
+                product_id BIGINT NOT NULL
+            )
+            """);
+        jdbcTemplate.execute("""
+            CREATE TABLE cart_items (
+                cart_item_id BIGINT PRIMARY KEY,
+                cart_id BIGINT NOT NULL,
+                product_id BIGINT NOT NULL,
+                quantity INT NOT NULL,
+                subtotal DECIMAL(10,2) NOT NULL,
+                added_at TIMESTAMP NOT NULL
+            )
+            """);
+        jdbcTemplate.update("INSERT INTO cart VALUES (?, ?, 1)", CART, USER);
+        for (long productId = 1; productId <= 3; productId++) {
+            jdbcTemplate.update("INSERT INTO products VALUES (?, ?, 'Brand', '1', ?, ?, 'pc', NULL)",
+                    productId, "Product " + productId, BigDecimal.valueOf(productId * 10), BigDecimal.valueOf(productId * 12));
+        }
+        jdbcTemplate.update("INSERT INTO rfid_tags VALUES ('TAG-B', 1), ('TAG-A', 1)");
+        insertLine(10, 1, 2, "2024-01-01 10:00:00");
+        insertLine(11, 2, 1, "2024-01-01 10:05:00");
+
+        aggregates = new CartAggregates(jdbcTemplate, updates, 3_600_000);
+    }
+
+    @Test
+    void aCartIsLoadedOnceAndThenServedFromMemoryNewestFirst() {
+        CartView view = aggregates.view(USER);
+
+        assertThat(view.items()).extracting(CartItemResponse::id).containsExactly(11L, 10L);
+        assertThat(view.items().get(1).quantity()).isEqualTo(2);
+        assertThat(view.items().get(1).item().rfidTag()).isEqualTo("TAG-A");
+        assertThat(view.total()).isEqualTo(CartTotalResponse.of(new BigDecimal("40.00"), 2));
+
+        // Rows written behind the aggregate's back are not seen
+        jdbcTemplate.update("DELETE FROM cart_items");
+        assertThat(aggregates.items(USER)).hasSize(2);
+        assertThat(aggregates.version(USER)).isEqualTo(view.version());
+        assertThat(aggregates.getStats()).containsEntry("loads", 1L).containsEntry("hits", 2L)
+                .containsEntry("lines", 2);
+    }
+
+    @Test
+    void aUserWithoutAnActiveCartHasAnEmptyOne() {
+        CartView view = aggregates.view(2L);
+
+        assertThat(view.items()).isEmpty();
+        assertThat(view.total()).isEqualTo(CartTotalResponse.of(BigDecimal.ZERO, 0));
+    }
+
+    @Test
+    void addedLinesAreAppliedOnlyOnceTheirTransactionCommits() {
+        long loaded = aggregates.version(USER);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            insertLine(12, 3, 1, "2024-01-01 10:10:00");
+            aggregates.linesAdded(USER, CART, List.of(3L));
+            status.setRollbackOnly();
+        });
+        assertThat(aggregates.items(USER)).hasSize(2);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            insertLine(12, 3, 1, "2024-01-01 10:10:00");
+            aggregates.linesAdded(USER, CART, List.of(3L));
+            assertThat(aggregates.items(USER)).hasSize(2);
+        });
+
+        CartView view = aggregates.view(USER);
+        assertThat(view.items()).extracting(CartItemResponse::id).containsExactly(12L, 11L, 10L);
+        assertThat(view.total()).isEqualTo(CartTotalResponse.of(new BigDecimal("70.00"), 3));
+        assertThat(view.version()).isGreaterThan(loaded);
+        verify(updates).lineChanged(eq(USER), eq(view.items().get(0)), eq(view.total()), eq(view.version()));
+    }
+
+    @Test
+    void quantityChangesAreAbsoluteSoApplyingOneTwiceIsHarmless() {
+        aggregates.view(USER);
+
+        aggregates.quantityChanged(10L, 5, null);
+        aggregates.quantityChanged(10L, 5, null);
+        assertThat(aggregates.total(USER).subtotal()).isEqualByComparingTo("70.00");
+
+        aggregates.quantityChanged(11L, 3, new BigDecimal("55.00"));
+        CartView view = aggregates.view(USER);
+        assertThat(view.items()).extracting(CartItemResponse::quantity).containsExactly(3, 5);
+        assertThat(view.total().subtotal()).isEqualByComparingTo("105.00");
+        assertThat(aggregates.getStats()).containsEntry("changesApplied", 3L);
+    }
+
+    @Test
+    void removedLinesAndClosedCartsLeaveTheAggregate() {
+        long loaded = aggregates.version(USER);
+
+        aggregates.lineRemoved(10L);
+        aggregates.lineRemoved(10L);
+        CartView afterRemoval = aggregates.view(USER);
+        assertThat(afterRemoval.items()).extracting(CartItemResponse::id).containsExactly(11L);
+        assertThat(afterRemoval.total()).isEqualTo(CartTotalResponse.of(new BigDecimal("20.00"), 1));
+        assertThat(afterRemoval.version()).isGreaterThan(loaded);
+        verify(updates).lineRemoved(USER, 10L, afterRemoval.total(), afterRemoval.version());
+
+        aggregates.cartClosed(USER);
+        CartView closed = aggregates.view(USER);
+        assertThat(closed.items()).isEmpty();
+        assertThat(closed.total().subtotal()).isEqualByComparingTo("0");
+        assertThat(closed.version()).isGreaterThan(afterRemoval.version());
+        assertThat(aggregates.getStats()).containsEntry("lines", 0);
+        verify(updates).cartCleared(USER, closed.version());
+    }
+
+    @Test
+    void changesToACartNotLoadedAreLeftToTheNextLoad() {
+        aggregates.quantityChanged(10L, 9, null);
+        aggregates.cartClosed(USER);
+
+        assertThat(aggregates.items(USER)).hasSize(2);
+        assertThat(aggregates.getStats()).containsEntry("changesApplied", 0L);
+        verify(updates, never()).cartCleared(anyLong(), anyLong());
+    }
+
+    @Test
+    void idleCartsAreSweptUnlessWatchedAndVersionsKeepIncreasing() throws InterruptedException {
+        CartAggregates idle = new CartAggregates(jdbcTemplate, updates, 0);
+        long first = idle.version(USER);
+        idle.version(2L);
+        when(updates.isWatched(any())).thenAnswer(invocation -> invocation.getArgument(0).equals(2L));
+        Thread.sleep(5);
+
+        idle.sweep();
+
+        assertThat(idle.getStats()).containsEntry("carts", 1).containsEntry("lines", 0);
+        assertThat(idle.version(USER)).isGreaterThan(first);
+        assertThat(idle.getStats()).containsEntry("loads", 3L);
+    }
+
+    @Test
+    void theCachedVersionIsReadWithoutLoadingTheCart() throws InterruptedException {
+        CartAggregates idle = new CartAggregates(jdbcTemplate, updates, 0);
+        assertThat(idle.cachedVersion(USER)).isNull();
+
+        long loaded = idle.version(USER);
+        assertThat(idle.cachedVersion(USER)).isEqualTo(loaded);
+        Thread.sleep(5);
+
+        idle.sweep();
+
+        assertThat(idle.cachedVersion(USER)).isNull();
+        assertThat(idle.getStats()).containsEntry("loads", 1L);
+    }
+
+    @Test
+    void changesCommittedWhileACartLoadsAreNotLost() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        CartAggregates gated = new CartAggregates(gatedJdbcTemplate(gate), updates, 3_600_000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> load = executor.submit(() -> gated.view(USER));
+            Thread.sleep(50);
+            // Committed after the load read the lines, before it mapped them
+            Future<?> change = executor.submit(() -> {
+                jdbcTemplate.update("UPDATE cart_items SET quantity = 4, subtotal = 40 WHERE cart_item_id = 10");
+                gated.quantityChanged(10L, 4, null);
+                jdbcTemplate.update("DELETE FROM cart_items WHERE cart_item_id = 11");
+                gated.lineRemoved(11L);
+            });
+            change.get(10, TimeUnit.SECONDS);
+            gate.countDown();
+            load.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        CartView view = gated.view(USER);
+        assertThat(view.items()).extracting(CartItemResponse::quantity).containsExactly(4);
+        assertThat(view.total().subtotal()).isEqualByComparingTo("40.00");
+        assertThat(gated.getStats()).containsEntry("lines", 1);
+    }
+
+    /**
+     * Holds each load after its lines were read, before they are mapped, until
+     * the gate opens
+     */
+    private JdbcTemplate gatedJdbcTemplate(CountDownLatch gate) {
+        return new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public void query(String sql, RowCallbackHandler rch, Object... args) {
+                super.query(sql, (RowCallbackHandler) rs -> {
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    rch.processRow(rs);
+                }, args);
+            }
+        };
+    }
+
+    private void insertLine(long cartItemId, long productId, int quantity, String addedAt) {
+        jdbcTemplate.update("INSERT INTO cart_items VALUES (?, ?, ?, ?, ?, ?)", cartItemId, CART, productId, quantity,
+                BigDecimal.valueOf(productId * 10L * quantity), Timestamp.valueOf(addedAt));
+    }
+}
@@ -0,0 +1,168 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CartEpcsTest {
+
+    private static final Long CART = 7L;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private CartEpcs cartEpcs;
+    private final Map<String, RFIDTagCache.TagProduct> products = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        jdbcTemplate.execute("""
+            CREATE TABLE cart_item_epcs (
+                cart_id BIGINT NOT NULL,
+                rfid_tag VARCHAR(64) NOT NULL,
+                product_id BIGINT NOT NULL,
+                added_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                PRIMARY KEY (cart_id, rfid_tag)
+            )
+            """);
+        cartEpcs = new CartEpcs(jdbcTemplate, 3_600_000);
+
+        product("A", 1L);
+        product("B", 1L);
+        product("C", 2L);
+    }
+
+    @Test
+    void eachEpcIsCountedOnceAndUnknownEpcsAreIgnored() {
+        assertThat(cartEpcs.addNew(CART, List.of("A", "B", "A", "X"), products)).containsExactly("A", "B");
+        assertThat(cartEpcs.addNew(CART, List.of("C", "A"), products)).containsExactly("C");
+        assertThat(cartEpcs.addNew(8L, List.of("A"), products)).containsExactly("A");
+
+        assertThat(cartEpcs.counts(CART, List.of(1L, 2L, 3L))).containsExactly(Map.entry(1L, 2), Map.entry(2L, 1));
+        assertThat(cartEpcs.getStats()).containsEntry("counted", 4L).containsEntry("repeated", 3L)
+                .containsEntry("carts", 2).containsEntry("epcs", 4L);
+    }
+
+    @Test
+    void aRestartedInstanceRebuildsTheSetFromTheTable() {
+        cartEpcs.addNew(CART, List.of("A", "C"), products);
+
+        CartEpcs restarted = new CartEpcs(jdbcTemplate, 3_600_000);
+
+        assertThat(restarted.addNew(CART, List.of("A", "B", "C"), products)).containsExactly("B");
+        assertThat(restarted.getStats()).containsEntry("rebuilt", 1L);
+        assertThat(restarted.counts(CART, List.of(1L))).containsEntry(1L, 2);
+    }
+
+    @Test
+    void anotherInstanceCountingTheSameEpcLeavesOneRow() {
+        cartEpcs.addNew(CART, List.of("A"), products);
+        CartEpcs other = new CartEpcs(jdbcTemplate, 3_600_000);
+        other.addNew(CART, List.of("B"), products);
+
+        // This instance's set was built before B was written
+        assertThat(cartEpcs.addNew(CART, List.of("B"), products)).containsExactly("B");
+        assertThat(cartEpcs.counts(CART, List.of(1L))).containsEntry(1L, 2);
+    }
+
+    @Test
+    void epcsAddedInARolledBackTransactionAreCountedAgain() {
+        cartEpcs.addNew(CART, List.of("A"), products);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            assertThat(cartEpcs.addNew(CART, List.of("A", "B", "C"), products)).containsExactly("B", "C");
+            status.setRollbackOnly();
+        });
+
+        assertThat(cartEpcs.counts(CART, List.of(1L, 2L))).containsExactly(Map.entry(1L, 1));
+        assertThat(cartEpcs.addNew(CART, List.of("A", "B", "C"), products)).containsExactly("B", "C");
+    }
+
+    @Test
+    void aRemovedProductCountsAgainOnlyOnceTheRemovalCommits() {
+        cartEpcs.addNew(CART, List.of("A", "B", "C"), products);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            cartEpcs.removeProduct(CART, 1L);
+            status.setRollbackOnly();
+        });
+        assertThat(cartEpcs.addNew(CART, List.of("A", "B"), products)).isEmpty();
+
+        transactionTemplate.executeWithoutResult(status -> cartEpcs.removeProduct(CART, 1L));
+
+        assertThat(cartEpcs.counts(CART, List.of(1L, 2L))).containsExactly(Map.entry(2L, 1));
+        assertThat(cartEpcs.addNew(CART, List.of("A", "B", "C"), products)).containsExactly("A", "B");
+    }
+
+    @Test
+    void aDiscardedCartStartsEmpty() {
+        cartEpcs.addNew(CART, List.of("A", "C"), products);
+
+        transactionTemplate.executeWithoutResult(status -> cartEpcs.discard(CART));
+
+        assertThat(cartEpcs.getStats()).containsEntry("carts", 0);
+        assertThat(cartEpcs.counts(CART, List.of(1L, 2L))).isEmpty();
+        assertThat(cartEpcs.addNew(CART, List.of("A", "C"), products)).containsExactly("A", "C");
+    }
+
+    @Test
+    void removalsKeepTheRemainingEpcsFindableAsTheTableGrows() {
+        List<String> kept = new ArrayList<>();
+        List<String> rolledBack = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            String epc = "E" + i;
+            product(epc, i % 3 == 0 ? 10L : 11L);
+            (i % 3 == 0 ? removed : i % 2 == 0 ? rolledBack : kept).add(epc);
+        }
+        cartEpcs.addNew(CART, kept, products);
+        cartEpcs.addNew(CART, removed, products);
+
+        // Backward-shift deletion of one EPC at a time
+        transactionTemplate.executeWithoutResult(status -> {
+            cartEpcs.addNew(CART, rolledBack, products);
+            status.setRollbackOnly();
+        });
+        // Clearing a product's slots in place
+        transactionTemplate.executeWithoutResult(status -> cartEpcs.removeProduct(CART, 10L));
+
+        assertThat(cartEpcs.addNew(CART, kept, products)).isEmpty();
+        assertThat(cartEpcs.getStats()).containsEntry("epcs", (long) kept.size());
+
+        List<String> all = new ArrayList<>(rolledBack);
+        all.addAll(removed);
+        assertThat(cartEpcs.addNew(CART, all, products)).containsExactlyElementsOf(all);
+    }
+
+    @Test
+    void sweptSetsAreRebuiltOnTheNextRead() throws InterruptedException {
+        CartEpcs idle = new CartEpcs(jdbcTemplate, 0);
+        idle.addNew(CART, List.of("A"), products);
+        Thread.sleep(5);
+
+        idle.sweep();
+
+        assertThat(idle.getStats()).containsEntry("carts", 0);
+        assertThat(idle.addNew(CART, List.of("A", "B"), products)).containsExactly("B");
+        assertThat(idle.getStats()).containsEntry("rebuilt", 1L);
+    }
+
+    private void product(String epc, Long productId) {
+        products.put(epc, new RFIDTagCache.TagProduct(productId, BigDecimal.ONE, true));
+    }
+}
@@ -0,0 +1,293 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.dto.CartBatchRequest;
+import com.cognizant.smartpay.dto.CartItemResponse;
+import com.cognizant.smartpay.dto.CartView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CartServiceTest {
+
+    private static final Long USER = 1L;
+    private static final Long CART = 100L;
+    private static final Long OTHER_USER = 2L;
+    private static final Long OTHER_CART = 200L;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private final RFIDTagCache tagCache = mock(RFIDTagCache.class);
+    private final Map<String, RFIDTagCache.TagProduct> products = new HashMap<>();
+    private RFIDScanService scanService;
+    private CartService cartService;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        jdbcTemplate.execute("""
+            CREATE TABLE cart (
+                cart_id BIGINT PRIMARY KEY,
+                user_id BIGINT NOT NULL,
+                is_active TINYINT NOT NULL
+            )
+            """);
+        jdbcTemplate.execute("""
+            CREATE TABLE products (
+                product_id BIGINT PRIMARY KEY,
+                name VARCHAR(100),
+                brand VARCHAR(100),
+                category_id VARCHAR(20),
+                selling_price DECIMAL(10,2),
+                mrp DECIMAL(10,2),
+                unit VARCHAR(20),
+                image_url VARCHAR(200)
+            )
+            """);
+        jdbcTemplate.execute("""
+            CREATE TABLE rfid_tags (
+                rfid_tag VARCHAR(64) PRIMARY KEY,
+                product_id BIGINT NOT NULL
+            )
+            """);
+        jdbcTemplate.execute("""
+            CREATE TABLE cart_items (
+                cart_item_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                cart_id BIGINT NOT NULL,
+                product_id BIGINT NOT NULL,
+                quantity INT NOT NULL,
+                unit_price DECIMAL(10,2),
+                subtotal DECIMAL(10,2) NOT NULL,
+                added_at TIMESTAMP NOT NULL,
+                updated_at TIMESTAMP
+            )
+            """);
+        jdbcTemplate.execute("""
+            CREATE TABLE cart_item_epcs (
+                cart_id BIGINT NOT NULL,
+                rfid_tag VARCHAR(64) NOT NULL,
+                product_id BIGINT NOT NULL,
+                added_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                PRIMARY KEY (cart_id, rfid_tag)
+            )
+            """);
+        jdbcTemplate.update("INSERT INTO cart VALUES (?, ?, 1)", CART, USER);
+        jdbcTemplate.update("INSERT INTO cart VALUES (?, ?, 1)", OTHER_CART, OTHER_USER);
+        for (long productId = 1; productId <= 3; productId++) {
+            jdbcTemplate.update("INSERT INTO products VALUES (?, ?, 'Brand', '1', ?, ?, 'pc', NULL)",
+                    productId, "Product " + productId, BigDecimal.valueOf(productId * 10), BigDecimal.valueOf(productId * 12));
+        }
+        product("E1", 1L);
+        product("E2", 1L);
+        product("E3", 1L);
+        product("F1", 2L);
+        when(tagCache.resolve(anyCollection())).thenAnswer(invocation -> {
+            Map<String, RFIDTagCache.TagProduct> resolved = new HashMap<>();
+            for (Object tag : invocation.getArgument(0, Collection.class)) {
+                if (products.containsKey(tag)) {
+                    resolved.put((String) tag, products.get(tag));
+                }
+            }
+            return resolved;
+        });
+
+        CartEpcs cartEpcs = new CartEpcs(jdbcTemplate, 3_600_000);
+        CartUpdateStream updates = mock(CartUpdateStream.class);
+        CartAggregates aggregates = new CartAggregates(jdbcTemplate, updates, 3_600_000);
+        LaneSessionRegistry laneSessions = mock(LaneSessionRegistry.class);
+        scanService = new RFIDScanService(jdbcTemplate, transactionTemplate, tagCache, mock(ScanAdmission.class),
+                laneSessions, cartEpcs, aggregates);
+        cartService = new CartService(jdbcTemplate, tagCache, cartEpcs, laneSessions, aggregates, updates);
+    }
+
+    @Test
+    void loweringAScannedLineByHandLetsTheItemsTakenOutCountAgain() {
+        scan("E1", "E2", "E3");
+        long cartItemId = cartItemId(1L);
+        assertThat(quantity(cartItemId)).isEqualTo(3);
+
+        transactionTemplate.executeWithoutResult(status -> cartService.updateCartItemQuantity(cartItemId, 1));
+        assertThat(quantity(cartItemId)).isEqualTo(1);
+        assertThat(subtotal(cartItemId)).isEqualByComparingTo("10.00");
+
+        // The item kept is a re-read; the two put back are counted again
+        scan("E1");
+        assertThat(quantity(cartItemId)).isEqualTo(1);
+        scan("E3", "E2");
+        assertThat(quantity(cartItemId)).isEqualTo(3);
+        assertThat(subtotal(cartItemId)).isEqualByComparingTo("30.00");
+    }
+
+    @Test
+    void aScannedLineCannotBeRaisedByHand() {
+        scan("E1", "E2");
+        long cartItemId = cartItemId(1L);
+
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(
+                status -> cartService.updateCartItemQuantity(cartItemId, 5)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("holds 2 scanned items");
+
+        // A new item still adds one unit to what was scanned
+        scan("E3");
+        assertThat(quantity(cartItemId)).isEqualTo(3);
+    }
+
+    @Test
+    void aLineWithoutEpcsCanBeSetFreely() {
+        long cartItemId = insertLine(CART, 3L, 1);
+
+        transactionTemplate.executeWithoutResult(status -> cartService.updateCartItemQuantity(cartItemId, 4));
+
+        assertThat(quantity(cartItemId)).isEqualTo(4);
+        assertThat(subtotal(cartItemId)).isEqualByComparingTo("120.00");
+    }
+
+    @Test
+    void aBatchAppliesUpdatesAndRemovalsAndTheCartViewFollows() {
+        long first = insertLine(CART, 1L, 1);
+        long second = insertLine(CART, 2L, 1);
+        long third = insertLine(CART, 3L, 2);
+        long before = cartService.getCartView(USER).version();
+
+        // A line listed twice in removals is removed once
+        batch(List.of(change(first, 3)), List.of(third, third));
+
+        assertThat(quantity(first)).isEqualTo(3);
+        assertThat(subtotal(first)).isEqualByComparingTo("30.00");
+        assertThat(lineCount(CART)).isEqualTo(2);
+
+        CartView view = cartService.getCartView(USER);
+        assertThat(view.version()).isGreaterThan(before);
+        assertThat(view.items()).extracting(CartItemResponse::id).containsExactlyInAnyOrder(first, second);
+        assertThat(view.total().subtotal()).isEqualByComparingTo("50.00");
+        assertThat(view.total().itemCount()).isEqualTo(2);
+    }
+
+    @Test
+    void aLineUpdatedTwiceIsRejected() {
+        long line = insertLine(CART, 1L, 1);
+
+        assertThatThrownBy(() -> batch(List.of(change(line, 2), change(line, 3)), null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("updated more than once");
+        assertThat(quantity(line)).isEqualTo(1);
+    }
+
+    @Test
+    void aLineBothUpdatedAndRemovedIsRejected() {
+        long line = insertLine(CART, 1L, 1);
+
+        assertThatThrownBy(() -> batch(List.of(change(line, 2)), List.of(line)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("both updated and removed");
+        assertThat(quantity(line)).isEqualTo(1);
+    }
+
+    @Test
+    void aLineOfAnotherUsersCartFailsTheWholeBatch() {
+        long own = insertLine(CART, 1L, 1);
+        long others = insertLine(OTHER_CART, 1L, 1);
+
+        assertThatThrownBy(() -> batch(List.of(change(own, 2), change(others, 5)), null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Cart item not found: " + others);
+        assertThatThrownBy(() -> batch(null, List.of(others)))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(quantity(own)).isEqualTo(1);
+        assertThat(quantity(others)).isEqualTo(1);
+    }
+
+    @Test
+    void anInvalidLineRollsBackTheValidOnes() {
+        long first = insertLine(CART, 1L, 1);
+        long second = insertLine(CART, 2L, 1);
+        CartView before = cartService.getCartView(USER);
+
+        assertThatThrownBy(() -> batch(List.of(change(first, 4)), List.of(second, 999L)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Cart item not found: 999");
+
+        assertThat(quantity(first)).isEqualTo(1);
+        assertThat(lineCount(CART)).isEqualTo(2);
+        assertThat(cartService.getCartView(USER)).isEqualTo(before);
+    }
+
+    @Test
+    void aBatchCanLowerButNotRaiseScannedLines() {
+        scan("E1", "E2", "F1");
+        long lowered = cartItemId(1L);
+        long raised = cartItemId(2L);
+
+        assertThatThrownBy(() -> batch(List.of(change(lowered, 1), change(raised, 3)), null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("holds 1 scanned items");
+        assertThat(quantity(lowered)).isEqualTo(2);
+
+        batch(List.of(change(lowered, 1)), null);
+        assertThat(quantity(lowered)).isEqualTo(1);
+
+        // The item taken out counts again when it is put back
+        scan("E2");
+        assertThat(quantity(lowered)).isEqualTo(2);
+    }
+
+    private void batch(List<CartBatchRequest.QuantityChange> updates, List<Long> removals) {
+        transactionTemplate.executeWithoutResult(
+                status -> cartService.updateCartItems(USER, new CartBatchRequest(updates, removals)));
+    }
+
+    private static CartBatchRequest.QuantityChange change(long cartItemId, int quantity) {
+        return new CartBatchRequest.QuantityChange(cartItemId, quantity);
+    }
+
+    private long insertLine(Long cartId, Long productId, int quantity) {
+        jdbcTemplate.update("INSERT INTO cart_items (cart_id, product_id, quantity, subtotal, added_at) "
+                + "VALUES (?, ?, ?, ?, NOW())", cartId, productId, quantity, BigDecimal.valueOf(productId * 10L * quantity));
+        return jdbcTemplate.queryForObject("SELECT MAX(cart_item_id) FROM cart_items", Long.class);
+    }
+
+    private int lineCount(Long cartId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cart_items WHERE cart_id = ?", Integer.class, cartId);
+    }
+
+    private void scan(String... tags) {
+        transactionTemplate.executeWithoutResult(status -> scanService.addScannedTags(USER, CART, List.of(tags)));
+    }
+
+    private void product(String tag, Long productId) {
+        products.put(tag, new RFIDTagCache.TagProduct(productId, BigDecimal.valueOf(productId * 10), true));
+    }
+
+    private long cartItemId(Long productId) {
+        return jdbcTemplate.queryForObject("SELECT cart_item_id FROM cart_items WHERE cart_id = ? AND product_id = ?",
+                Long.class, CART, productId);
+    }
+
+    private int quantity(long cartItemId) {
+        return jdbcTemplate.queryForObject("SELECT quantity FROM cart_items WHERE cart_item_id = ?", Integer.class, cartItemId);
+    }
+
+    private BigDecimal subtotal(long cartItemId) {
+        return jdbcTemplate.queryForObject("SELECT subtotal FROM cart_items WHERE cart_item_id = ?", BigDecimal.class, cartItemId);
+    }
+}
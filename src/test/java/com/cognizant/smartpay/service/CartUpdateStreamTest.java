@@ -0,0 +1,181 @@
+package com.cognizant.smartpay.service;
+
+import com.cognizant.smartpay.dto.CartDelta;
+import com.cognizant.smartpay.dto.CartItemResponse;
+import com.cognizant.smartpay.dto.CartTotalResponse;
+import com.cognizant.smartpay.dto.CartView;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CartUpdateStreamTest {
+
+    private static final Long USER = 1L;
+
+    private final List<CartUpdateStream> streams = new ArrayList<>();
+    private final List<RecordingEmitter> emitters = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        emitters.forEach(emitter -> emitter.gate.countDown());
+        streams.forEach(CartUpdateStream::shutdown);
+    }
+
+    @Test
+    void aBurstOfChangesIsSentAsOneDelta() throws InterruptedException {
+        CartUpdateStream stream = stream(100, 64, 10_000);
+        RecordingEmitter kiosk = emitter();
+        stream.subscribe(USER, () -> view(10), kiosk);
+
+        stream.lineChanged(USER, item(1L, 1), total(10), 11);
+        stream.lineChanged(USER, item(2L, 1), total(30), 12);
+        stream.lineChanged(USER, item(1L, 2), total(40), 13);
+        stream.lineRemoved(USER, 2L, total(20), 14);
+
+        await(() -> kiosk.sent.size() == 2);
+        assertThat(kiosk.sent.get(0)).isEqualTo(view(10));
+        CartDelta delta = (CartDelta) kiosk.sent.get(1);
+        assertThat(delta.changed()).containsExactly(item(1L, 2));
+        assertThat(delta.removed()).containsExactly(2L);
+        assertThat(delta.total()).isEqualTo(total(20));
+        assertThat(delta.version()).isEqualTo(14);
+        assertThat(stream.getStats()).containsEntry("changes", 4L).containsEntry("deltas", 1L)
+                .containsEntry("changesPerDelta", 4.0);
+    }
+
+    @Test
+    void theSnapshotComesFirstAndDeltasItCoversAreSkipped() throws InterruptedException {
+        CartUpdateStream stream = stream(20, 64, 10_000);
+        RecordingEmitter kiosk = emitter();
+
+        // Committed while the snapshot is read, and included in it
+        stream.subscribe(USER, () -> {
+            stream.lineChanged(USER, item(1L, 1), total(10), 11);
+            return view(11);
+        }, kiosk);
+        await(() -> stream.getStats().get("deltas").equals(1L));
+
+        stream.lineChanged(USER, item(1L, 2), total(20), 12);
+
+        await(() -> kiosk.sent.size() == 2);
+        assertThat(kiosk.sent.get(0)).isEqualTo(view(11));
+        assertThat(((CartDelta) kiosk.sent.get(1)).version()).isEqualTo(12);
+        assertThat(stream.getStats()).containsEntry("deltas", 2L);
+    }
+
+    @Test
+    void aSubscriberTooFarBehindIsDroppedAndTheOthersKeepGettingDeltas() throws InterruptedException {
+        CartUpdateStream stream = stream(1, 2, 10_000);
+        RecordingEmitter slow = emitter();
+        slow.blocked = true;
+        RecordingEmitter fast = emitter();
+        stream.subscribe(USER, () -> view(10), slow);
+        stream.subscribe(USER, () -> view(10), fast);
+
+        // One delta per flush; the slow kiosk is stuck sending its snapshot
+        for (int i = 1; i <= 4; i++) {
+            int sent = i + 1;
+            stream.lineChanged(USER, item(1L, i), total(10L * i), 10 + i);
+            await(() -> fast.sent.size() == sent);
+        }
+
+        assertThat(slow.error).hasMessage("Subscriber too far behind");
+        assertThat(fast.error).isNull();
+        assertThat(fast.sent).extracting(event -> event instanceof CartDelta delta ? delta.version() : null)
+                .containsExactly(null, 11L, 12L, 13L, 14L);
+        assertThat(stream.getStats()).containsEntry("slowSubscribers", 1L).containsEntry("subscribers", 1);
+        assertThat(stream.isWatched(USER)).isTrue();
+    }
+
+    @Test
+    void aSendBlockedTooLongIsDroppedOnTheHeartbeat() throws InterruptedException {
+        CartUpdateStream stream = stream(1, 64, 50);
+        RecordingEmitter slow = emitter();
+        slow.blocked = true;
+        stream.subscribe(USER, () -> view(10), slow);
+        await(() -> slow.sending);
+        Thread.sleep(100);
+
+        stream.heartbeat();
+
+        assertThat(slow.error).hasMessage("Send timed out");
+        assertThat(stream.isWatched(USER)).isFalse();
+    }
+
+    private CartUpdateStream stream(long coalesceMillis, int maxQueuedEvents, long sendTimeoutMillis) {
+        CartUpdateStream stream = new CartUpdateStream(coalesceMillis, 1_800_000, 4, sendTimeoutMillis, maxQueuedEvents);
+        streams.add(stream);
+        return stream;
+    }
+
+    private RecordingEmitter emitter() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        emitters.add(emitter);
+        return emitter;
+    }
+
+    private static CartItemResponse item(Long id, int quantity) {
+        return new CartItemResponse(id, USER, quantity, null);
+    }
+
+    private static CartTotalResponse total(long subtotal) {
+        return CartTotalResponse.of(BigDecimal.valueOf(subtotal), 1);
+    }
+
+    private static CartView view(long version) {
+        return new CartView(List.of(), CartTotalResponse.of(BigDecimal.ZERO, 0), version);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Records the cart and delta payloads sent, skipping comments; a blocked
+     * emitter holds its first send until the test ends
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        final List<Object> sent = new CopyOnWriteArrayList<>();
+        final CountDownLatch gate = new CountDownLatch(1);
+        volatile boolean blocked;
+        volatile boolean sending;
+        volatile Throwable error;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            sending = true;
+            if (blocked) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+                if (!(data.getData() instanceof String)) {
+                    sent.add(data.getData());
+                }
+            }
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            error = ex;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CredentialChangeLogTest {
+
+    private final CredentialChangeLog log = new CredentialChangeLog(3);
+
+    @Test
+    void reportsTheNetChangePerCredentialSinceAVersion() {
+        String start = log.currentVersion();
+        log.recordAdded("a");
+        log.recordAdded("b");
+        log.recordRevoked("a");
+
+        assertThat(log.changesSince(start)).contains(Map.of("a", false, "b", true));
+        assertThat(log.changesSince(log.currentVersion())).contains(Map.of());
+    }
+
+    @Test
+    void everyCommittedChangeMovesTheVersion() {
+        String before = log.currentVersion();
+        log.recordAdded("a");
+
+        assertThat(log.currentVersion()).isNotEqualTo(before);
+    }
+
+    @Test
+    void asksForAFullResyncOutsideTheRetainedWindow() {
+        String start = log.currentVersion();
+        for (int i = 0; i < 3; i++) {
+            log.recordAdded("c" + i);
+        }
+        // Still exactly the window
+        assertThat(log.changesSince(start)).isPresent();
+
+        log.recordAdded("c3");
+        assertThat(log.changesSince(start)).isEmpty();
+    }
+
+    @Test
+    void asksForAFullResyncForAnotherEpochOrAMalformedVersion() {
+        String current = log.currentVersion();
+        String sequence = current.substring(current.indexOf('-') + 1);
+
+        assertThat(log.changesSince("1-" + sequence)).isEmpty();
+        assertThat(log.changesSince(current + "-1")).isEmpty();
+        assertThat(log.changesSince("garbage")).isEmpty();
+        assertThat(log.changesSince(current.replace("-" + sequence, "-99"))).isEmpty();
+    }
+
+    @Test
+    void changesCountOnlyOnceTheirTransactionCommits() {
+        String start = log.currentVersion();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            log.recordAdded("pending");
+            assertThat(log.currentVersion()).isEqualTo(start);
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(log.changesSince(start)).contains(Map.of("pending", true));
+    }
+}
@@ -0,0 +1,232 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CredentialFilterTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactions;
+    private CredentialFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactions = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        filter = new CredentialFilter(jdbcTemplate, 1_000, 0.001);
+    }
+
+    @Test
+    void passesEverythingUntilLoaded() {
+        assertThat(filter.mightContain("anything")).isTrue();
+        assertThat(filter.getStats()).containsEntry("loaded", false);
+    }
+
+    @Test
+    void neverRejectsAnActiveCredentialAndRejectsMostUnknownOnes() {
+        createTable();
+        List<String> active = insertActive(500);
+        insertInactive("deactivated");
+        filter.rebuild();
+
+        assertThat(active).allMatch(filter::mightContain);
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("unknown-" + i)) {
+                falsePositives++;
+            }
+        }
+        // Sized for 0.1%; allow generous slack
+        assertThat(falsePositives).isLessThan(100);
+        assertThat(filter.mightContain("deactivated")).isFalse();
+    }
+
+    @Test
+    void removingOneCredentialDoesNotHideOthers() {
+        createTable();
+        List<String> active = insertActive(800);
+        filter.rebuild();
+
+        for (String id : active.subList(0, 400)) {
+            filter.remove(id);
+        }
+
+        assertThat(active.subList(400, 800)).allMatch(filter::mightContain);
+        assertThat(active.subList(0, 400).stream().filter(filter::mightContain).count()).isLessThan(10);
+        assertThat(filter.getStats()).containsEntry("credentials", 400);
+    }
+
+    @Test
+    void removingARejectedCredentialChangesNothing() {
+        createTable();
+        List<String> active = insertActive(200);
+        filter.rebuild();
+
+        // A false positive would take counts from others; remove() documents that as unsupported
+        for (int i = 0; i < 1_000; i++) {
+            if (!filter.mightContain("never-added-" + i)) {
+                filter.remove("never-added-" + i);
+            }
+        }
+
+        assertThat(active).allMatch(filter::mightContain);
+        assertThat(filter.getStats()).containsEntry("credentials", 200);
+    }
+
+    @Test
+    void saturatedCountersAreNeverDecremented() {
+        createTable();
+        filter.rebuild();
+
+        for (int i = 0; i < 300; i++) {
+            filter.add("busy");
+        }
+        for (int i = 0; i < 300; i++) {
+            filter.remove("busy");
+        }
+
+        assertThat(filter.mightContain("busy")).isTrue();
+    }
+
+    @Test
+    void addAndRemoveWaitForCommitAndAreDroppedOnRollback() {
+        createTable();
+        filter.rebuild();
+
+        transactions.executeWithoutResult(status -> {
+            filter.add("enrolled");
+            assertThat(filter.mightContain("enrolled")).isFalse();
+        });
+        assertThat(filter.mightContain("enrolled")).isTrue();
+
+        transactions.executeWithoutResult(status -> {
+            filter.remove("enrolled");
+            status.setRollbackOnly();
+        });
+        assertThat(filter.mightContain("enrolled")).isTrue();
+    }
+
+    @Test
+    void aRemovalThatRacesARebuildMarksTheFilterStale() {
+        createTable();
+        List<String> active = insertActive(10);
+        filter.rebuild();
+
+        transactions.executeWithoutResult(status -> {
+            filter.remove(active.get(0));
+            // Another node's rebuild completes before this removal commits
+            filter.rebuild();
+        });
+
+        assertThat(filter.getStats()).containsEntry("stale", true);
+        assertThat(active).allMatch(filter::mightContain);
+
+        jdbcTemplate.update("UPDATE biometrics SET is_active = 0 WHERE credential_id = ?", active.get(0));
+        filter.maintain();
+
+        assertThat(filter.getStats()).containsEntry("stale", false).containsEntry("rebuilds", 3L);
+        assertThat(filter.mightContain(active.get(0))).isFalse();
+    }
+
+    @Test
+    void aFailedLoadIsRetriedBySchedule() {
+        filter.onApplicationReady();
+        assertThat(filter.getStats()).containsEntry("loaded", false);
+        assertThatThrownBy(filter::rebuild).isInstanceOf(RuntimeException.class);
+
+        createTable();
+        insertActive(3);
+        filter.maintain();
+
+        assertThat(filter.getStats()).containsEntry("loaded", true).containsEntry("credentials", 3);
+        assertThat(filter.mightContain("missing")).isFalse();
+    }
+
+    @Test
+    void concurrentAddsAndRemovesNeverHideStableCredentials() throws Exception {
+        createTable();
+        List<String> stable = insertActive(300);
+        filter.rebuild();
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            int thread = t;
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    String id = "churn-" + thread + "-" + i;
+                    filter.add(id);
+                    filter.remove(id);
+                }
+            }));
+        }
+        List<Future<Boolean>> readers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            readers.add(executor.submit(() -> {
+                while (running.get()) {
+                    for (String id : stable) {
+                        if (!filter.mightContain(id)) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }));
+        }
+
+        for (Future<?> writer : writers) {
+            writer.get(30, TimeUnit.SECONDS);
+        }
+        running.set(false);
+        for (Future<Boolean> reader : readers) {
+            assertThat(reader.get(30, TimeUnit.SECONDS)).isTrue();
+        }
+        executor.shutdown();
+
+        assertThat(filter.getStats()).containsEntry("credentials", 300);
+    }
+
+    private void createTable() {
+        jdbcTemplate.execute("""
+            CREATE TABLE biometrics (
+                biometric_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                credential_id VARCHAR(255),
+                is_active TINYINT NOT NULL
+            )
+            """);
+    }
+
+    private List<String> insertActive(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String id = "credential-" + UUID.randomUUID();
+            jdbcTemplate.update("INSERT INTO biometrics (credential_id, is_active) VALUES (?, 1)", id);
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private void insertInactive(String id) {
+        jdbcTemplate.update("INSERT INTO biometrics (credential_id, is_active) VALUES (?, 0)", id);
+    }
+}
@@ -0,0 +1,221 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FingerprintGalleryTest {
+
+    private static final int TEMPLATE_SIZE = 64;
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(3);
+    private final TemplateMatcher matcher = new TemplateMatcher(Integer.MAX_VALUE, 1);
+    private final List<MappedTemplateStore> stores = new ArrayList<>();
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactions;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactions = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        jdbcTemplate.execute("""
+            CREATE TABLE biometrics (
+                biometric_id BIGINT PRIMARY KEY,
+                user_id BIGINT NOT NULL,
+                fingerprint_template VARBINARY(4096),
+                is_active TINYINT NOT NULL
+            )
+            """);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(MappedTemplateStore::close);
+        matcher.shutdown();
+    }
+
+    @Test
+    void candidatesNeverMissATemplateThatReachesTheThreshold() {
+        byte[] probe = randomTemplate(TEMPLATE_SIZE);
+        for (long id = 1; id <= 300; id++) {
+            insert(id, similar(probe, random.nextInt(TEMPLATE_SIZE + 1)));
+        }
+        FingerprintGallery gallery = gallery();
+
+        for (int minScore : new int[]{0, 30, 60, 90, 100}) {
+            List<Long> candidates = gallery.candidates(probe, minScore).stream()
+                    .map(FingerprintGallery.Entry::biometricId).toList();
+            for (FingerprintGallery.Entry entry : gallery.candidates(probe, 0)) {
+                if (matcher.score(probe, entry.template()) >= minScore) {
+                    assertThat(candidates).as("minScore %d", minScore).contains(entry.biometricId());
+                }
+            }
+        }
+        // The histogram bound has to prune something to be worth having
+        assertThat(gallery.candidates(probe, 90).size()).isLessThan(300);
+    }
+
+    @Test
+    void probesOnlySeeTemplatesOfTheirOwnLength() {
+        insert(1L, randomTemplate(TEMPLATE_SIZE));
+        insert(2L, randomTemplate(32));
+        FingerprintGallery gallery = gallery();
+
+        assertThat(gallery.candidates(randomTemplate(32), 0))
+                .extracting(FingerprintGallery.Entry::biometricId).containsExactly(2L);
+        assertThat(gallery.candidates(new byte[0], 0)).isEmpty();
+    }
+
+    @Test
+    void templatesTooLargeForTheStoreAreHeldOnHeap() {
+        insert(1L, randomTemplate(TEMPLATE_SIZE * 2));
+        FingerprintGallery gallery = gallery();
+
+        assertThat(gallery.size()).isEqualTo(1);
+        assertThat(gallery.candidates(randomTemplate(TEMPLATE_SIZE * 2), 0).get(0).slot()).isEqualTo(-1);
+    }
+
+    @Test
+    void enrollmentsAppearOnlyAfterCommitAndRemovalsFlagTheStore() {
+        FingerprintGallery gallery = gallery();
+        byte[] template = randomTemplate(TEMPLATE_SIZE);
+
+        transactions.executeWithoutResult(status -> {
+            gallery.add(5L, 50L, template);
+            assertThat(gallery.size()).isZero();
+        });
+        assertThat(gallery.candidates(template, 100)).extracting(FingerprintGallery.Entry::userId).containsExactly(50L);
+
+        transactions.executeWithoutResult(status -> {
+            gallery.add(6L, 60L, randomTemplate(TEMPLATE_SIZE));
+            status.setRollbackOnly();
+        });
+        assertThat(gallery.size()).isEqualTo(1);
+
+        gallery.remove(5L);
+        assertThat(gallery.size()).isZero();
+        assertThat(stores.get(0).isActive(0)).isFalse();
+    }
+
+    @Test
+    void restartReusesTheStoreAndCatchesUpWithTheDatabase() {
+        byte[] kept = randomTemplate(TEMPLATE_SIZE);
+        insert(1L, kept);
+        insert(2L, randomTemplate(TEMPLATE_SIZE));
+        insert(5L, randomTemplate(TEMPLATE_SIZE));
+        gallery();
+        stores.get(0).close();
+
+        // While the service was down: one row deactivated, one deleted, and a
+        // lower ID than the highest stored one committed late
+        jdbcTemplate.update("UPDATE biometrics SET is_active = 0 WHERE biometric_id = 2");
+        jdbcTemplate.update("DELETE FROM biometrics WHERE biometric_id = 5");
+        byte[] late = randomTemplate(TEMPLATE_SIZE);
+        insert(3L, late);
+
+        FingerprintGallery restarted = gallery();
+
+        assertThat(restarted.candidates(kept, 0)).extracting(FingerprintGallery.Entry::biometricId)
+                .containsExactlyInAnyOrder(1L, 3L);
+        assertThat(bytes(restarted.candidates(late, 100).get(0).template())).isEqualTo(late);
+
+        // The reused file was compacted and then appended to
+        MappedTemplateStore store = stores.get(1);
+        assertThat(store.count()).isEqualTo(2);
+        assertThat(store.view(0).biometricId()).isEqualTo(1L);
+        assertThat(store.view(1).biometricId()).isEqualTo(3L);
+    }
+
+    @Test
+    void reEnrollmentsDoNotGrowTheStoreAcrossRestarts() {
+        insert(1L, randomTemplate(TEMPLATE_SIZE));
+        for (int restart = 0; restart < 5; restart++) {
+            FingerprintGallery gallery = gallery();
+            // Re-enrolled: the old row is deactivated and a new one added
+            long id = restart + 2;
+            byte[] template = randomTemplate(TEMPLATE_SIZE);
+            transactions.executeWithoutResult(status -> {
+                jdbcTemplate.update("UPDATE biometrics SET is_active = 0 WHERE biometric_id = ?", id - 1);
+                gallery.remove(id - 1);
+                insert(id, template);
+                gallery.add(id, id * 10, template);
+            });
+            stores.get(restart).close();
+        }
+
+        FingerprintGallery restarted = gallery();
+
+        assertThat(restarted.size()).isEqualTo(1);
+        assertThat(stores.get(5).count()).isEqualTo(1);
+        assertThat(stores.get(5).view(0).biometricId()).isEqualTo(6L);
+    }
+
+    @Test
+    void reconcilingAnUpToDateStoreChangesNothing() {
+        for (long id = 1; id <= 20; id++) {
+            insert(id, randomTemplate(TEMPLATE_SIZE));
+        }
+        gallery();
+        stores.get(0).close();
+
+        FingerprintGallery restarted = gallery();
+
+        assertThat(restarted.size()).isEqualTo(20);
+        assertThat(stores.get(1).count()).isEqualTo(20);
+    }
+
+    private FingerprintGallery gallery() {
+        MappedTemplateStore store = new MappedTemplateStore(directory.resolve("templates.dat").toString(), TEMPLATE_SIZE);
+        stores.add(store);
+        FingerprintGallery gallery = new FingerprintGallery(jdbcTemplate, store);
+        gallery.reload();
+        return gallery;
+    }
+
+    private void insert(long biometricId, byte[] template) {
+        jdbcTemplate.update("INSERT INTO biometrics VALUES (?, ?, ?, 1)", biometricId, biometricId * 10, template);
+    }
+
+    private byte[] randomTemplate(int length) {
+        byte[] template = new byte[length];
+        random.nextBytes(template);
+        return template;
+    }
+
+    /**
+     * A copy of {@code template} with exactly {@code equal} bytes left unchanged
+     */
+    private byte[] similar(byte[] template, int equal) {
+        byte[] copy = template.clone();
+        for (int i = equal; i < copy.length; i++) {
+            copy[i] = (byte) (template[i] + 1 + random.nextInt(255));
+        }
+        return copy;
+    }
+
+    private static byte[] bytes(ByteBuffer view) {
+        byte[] copy = new byte[view.remaining()];
+        view.duplicate().get(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,87 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LaneSessionRegistryTest {
+
+    private final LaneSessionRegistry registry = new LaneSessionRegistry();
+
+    @Test
+    void aLaneResolvesToTheUserWhoSignedInThere() {
+        registry.open("1", 10L);
+        registry.open("2", 20L);
+
+        assertThat(registry.get("1").userId()).isEqualTo(10L);
+        assertThat(registry.get("2").userId()).isEqualTo(20L);
+        assertThat(registry.get("3")).isNull();
+        assertThat(registry.getStats()).containsEntry("lookups", 3L).containsEntry("misses", 1L);
+    }
+
+    @Test
+    void withoutALaneIdEveryoneSharesTheDefaultLane() {
+        registry.open(null, 10L);
+
+        assertThat(registry.get("").userId()).isEqualTo(10L);
+        assertThat(registry.get(ScanDeduplicator.DEFAULT_LANE).userId()).isEqualTo(10L);
+    }
+
+    @Test
+    void signingInAtAnotherLaneMovesTheUser() {
+        registry.open("1", 10L);
+        registry.open("2", 10L);
+
+        assertThat(registry.get("1")).isNull();
+        assertThat(registry.get("2").userId()).isEqualTo(10L);
+    }
+
+    @Test
+    void aNewShopperReplacesThePreviousOneWithoutLosingTheirNewLane() {
+        registry.open("1", 10L);
+        registry.open("2", 10L);
+        registry.open("1", 20L);
+
+        assertThat(registry.get("1").userId()).isEqualTo(20L);
+        assertThat(registry.get("2").userId()).isEqualTo(10L);
+
+        // Logging out the replaced shopper must not clear the lane they left
+        registry.open("1", 30L);
+        registry.close(20L);
+        assertThat(registry.get("1").userId()).isEqualTo(30L);
+    }
+
+    @Test
+    void logoutReleasesTheLane() {
+        registry.open("1", 10L);
+
+        registry.close(10L);
+
+        assertThat(registry.get("1")).isNull();
+        assertThat(registry.getStats()).containsEntry("lanes", 0);
+    }
+
+    @Test
+    void theCartIsOnlyAttachedForTheShopperAtTheLaneAndDetachedAtCheckout() {
+        registry.open("1", 10L);
+
+        registry.attachCart("1", 99L, 500L);
+        assertThat(registry.get("1").cartId()).isNull();
+
+        registry.attachCart("1", 10L, 100L);
+        assertThat(registry.get("1").cartId()).isEqualTo(100L);
+
+        registry.detachCart(10L);
+        assertThat(registry.get("1")).isEqualTo(new LaneSessionRegistry.LaneSession(10L, null));
+    }
+
+    @Test
+    void signingInAgainStartsWithoutACart() {
+        registry.open("1", 10L);
+        registry.attachCart("1", 10L, 100L);
+
+        registry.open("1", 10L);
+
+        assertThat(registry.get("1").cartId()).isNull();
+    }
+}
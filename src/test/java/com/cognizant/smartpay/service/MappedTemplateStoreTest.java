@@ -0,0 +1,179 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedTemplateStoreTest {
+
+    private static final int TEMPLATE_SIZE = 16;
+
+    @TempDir
+    Path directory;
+
+    private final List<MappedTemplateStore> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() {
+        opened.forEach(MappedTemplateStore::close);
+    }
+
+    @Test
+    void newFileStartsEmptyAndMustBeFilled() throws IOException {
+        MappedTemplateStore store = open(TEMPLATE_SIZE);
+
+        assertThat(store.isOpen()).isTrue();
+        assertThat(store.count()).isZero();
+    }
+
+    @Test
+    void recordsAndTheirActiveFlagsSurviveAReopen() throws IOException {
+        MappedTemplateStore store = open(TEMPLATE_SIZE);
+        store.append(11L, 1L, template(1, 16));
+        store.append(12L, 2L, template(2, 9));
+        store.deactivate(0);
+        store.close();
+
+        MappedTemplateStore reopened = new MappedTemplateStore(path().toString(), TEMPLATE_SIZE);
+        opened.add(reopened);
+
+        assertThat(reopened.open()).isTrue();
+        assertThat(reopened.count()).isEqualTo(2);
+        assertThat(reopened.isActive(0)).isFalse();
+        assertThat(reopened.isActive(1)).isTrue();
+
+        MappedTemplateStore.StoredTemplate second = reopened.view(1);
+        assertThat(second.biometricId()).isEqualTo(12L);
+        assertThat(second.userId()).isEqualTo(2L);
+        assertThat(bytes(second.template())).isEqualTo(template(2, 9));
+    }
+
+    @Test
+    void compactingKeepsActiveRecordsInOrderAndReusesTheFreedSlots() throws IOException {
+        MappedTemplateStore store = open(TEMPLATE_SIZE);
+        for (long id = 1; id <= 5; id++) {
+            store.append(id, id * 10, template((int) id, 16));
+        }
+        store.deactivate(0);
+        store.deactivate(2);
+
+        assertThat(store.compact()).isEqualTo(2);
+        assertThat(store.compact()).isZero();
+
+        assertThat(store.count()).isEqualTo(3);
+        assertThat(store.view(0).biometricId()).isEqualTo(2L);
+        assertThat(store.view(2).userId()).isEqualTo(50L);
+        assertThat(bytes(store.view(1).template())).isEqualTo(template(4, 16));
+        assertThat(store.isActive(2)).isTrue();
+
+        assertThat(store.append(6L, 60L, template(6, 16)).slot()).isEqualTo(3);
+        store.close();
+
+        MappedTemplateStore reopened = new MappedTemplateStore(path().toString(), TEMPLATE_SIZE);
+        opened.add(reopened);
+        assertThat(reopened.open()).isTrue();
+        assertThat(reopened.count()).isEqualTo(4);
+        assertThat(reopened.view(3).biometricId()).isEqualTo(6L);
+    }
+
+    @Test
+    void viewsTakenBeforeTheFileGrowsStayValid() throws IOException {
+        MappedTemplateStore store = open(TEMPLATE_SIZE);
+        MappedTemplateStore.StoredTemplate first = store.append(1L, 1L, template(7, 16));
+
+        // The initial mapping holds 1024 records
+        for (long id = 2; id <= 3_000; id++) {
+            store.append(id, id, template((int) id, 16));
+        }
+
+        assertThat(store.count()).isEqualTo(3_000);
+        assertThat(bytes(first.template())).isEqualTo(template(7, 16));
+        assertThat(bytes(store.view(2_999).template())).isEqualTo(template(3_000, 16));
+    }
+
+    @Test
+    void viewsAreReadOnly() throws IOException {
+        MappedTemplateStore store = open(TEMPLATE_SIZE);
+        ByteBuffer template = store.append(1L, 1L, template(1, 16)).template();
+
+        assertThat(template.isReadOnly()).isTrue();
+    }
+
+    @Test
+    void aFileWithAnotherTemplateSizeIsRecreated() throws IOException {
+        MappedTemplateStore store = open(TEMPLATE_SIZE);
+        store.append(1L, 1L, template(1, 16));
+        store.close();
+
+        MappedTemplateStore resized = new MappedTemplateStore(path().toString(), 32);
+        opened.add(resized);
+
+        assertThat(resized.open()).isFalse();
+        assertThat(resized.count()).isZero();
+    }
+
+    @Test
+    void aTruncatedFileIsRecreated() throws IOException {
+        MappedTemplateStore store = open(TEMPLATE_SIZE);
+        for (long id = 1; id <= 10; id++) {
+            store.append(id, id, template((int) id, 16));
+        }
+        store.close();
+
+        // The header still claims ten records
+        try (FileChannel channel = FileChannel.open(path(), StandardOpenOption.WRITE)) {
+            channel.truncate(32 + 3 * (24 + TEMPLATE_SIZE));
+        }
+
+        MappedTemplateStore reopened = new MappedTemplateStore(path().toString(), TEMPLATE_SIZE);
+        opened.add(reopened);
+
+        assertThat(reopened.open()).isFalse();
+        assertThat(reopened.count()).isZero();
+    }
+
+    @Test
+    void onlyNonEmptyTemplatesUpToTheRecordSizeFit() {
+        MappedTemplateStore store = new MappedTemplateStore(path().toString(), TEMPLATE_SIZE);
+
+        assertThat(store.fits(new byte[16])).isTrue();
+        assertThat(store.fits(new byte[17])).isFalse();
+        assertThat(store.fits(new byte[0])).isFalse();
+        assertThat(store.fits(null)).isFalse();
+    }
+
+    private MappedTemplateStore open(int templateSize) throws IOException {
+        MappedTemplateStore store = new MappedTemplateStore(path().toString(), templateSize);
+        opened.add(store);
+        assertThat(store.open()).isFalse();
+        return store;
+    }
+
+    private Path path() {
+        return directory.resolve("templates.dat");
+    }
+
+    private static byte[] template(int seed, int length) {
+        byte[] template = new byte[length];
+        for (int i = 0; i < length; i++) {
+            template[i] = (byte) (seed * 31 + i);
+        }
+        return template;
+    }
+
+    private static byte[] bytes(ByteBuffer view) {
+        byte[] copy = new byte[view.remaining()];
+        view.duplicate().get(copy);
+        return copy;
+    }
+}
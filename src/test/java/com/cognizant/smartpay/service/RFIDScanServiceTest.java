@@ -0,0 +1,146 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RFIDScanServiceTest {
+
+    private static final Long USER = 1L;
+    private static final Long CART = 100L;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private final RFIDTagCache tagCache = mock(RFIDTagCache.class);
+    private final CartAggregates aggregates = mock(CartAggregates.class);
+    private final Map<String, RFIDTagCache.TagProduct> products = new HashMap<>();
+    private RFIDScanService scanService;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        jdbcTemplate.execute("""
+            CREATE TABLE cart_items (
+                cart_item_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                cart_id BIGINT NOT NULL,
+                product_id BIGINT NOT NULL,
+                quantity INT NOT NULL,
+                unit_price DECIMAL(10,2),
+                subtotal DECIMAL(10,2) NOT NULL,
+                added_at TIMESTAMP NOT NULL,
+                updated_at TIMESTAMP
+            )
+            """);
+        jdbcTemplate.execute("""
+            CREATE TABLE cart_item_epcs (
+                cart_id BIGINT NOT NULL,
+                rfid_tag VARCHAR(64) NOT NULL,
+                product_id BIGINT NOT NULL,
+                added_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                PRIMARY KEY (cart_id, rfid_tag)
+            )
+            """);
+        product("E1", 1L);
+        product("E2", 1L);
+        product("F1", 2L);
+        product("G1", 3L);
+        when(tagCache.resolve(anyCollection())).thenAnswer(invocation -> {
+            Map<String, RFIDTagCache.TagProduct> resolved = new HashMap<>();
+            for (Object tag : invocation.getArgument(0, Collection.class)) {
+                if (products.containsKey(tag)) {
+                    resolved.put((String) tag, products.get(tag));
+                }
+            }
+            return resolved;
+        });
+
+        scanService = new RFIDScanService(jdbcTemplate, transactionTemplate, tagCache, mock(ScanAdmission.class),
+                mock(LaneSessionRegistry.class), new CartEpcs(jdbcTemplate, 3_600_000), aggregates);
+    }
+
+    @Test
+    void aMixedBatchInsertsNewLinesAndSetsExistingOnes() {
+        scan("E1");
+        long existing = cartItemId(1L);
+        clearInvocations(aggregates);
+
+        // A re-read, a new EPC read twice, two new products and an unknown tag
+        scan("E1", "E2", "X9", "F1", "E2", "G1");
+
+        assertThat(jdbcTemplate.queryForList(
+                "SELECT product_id, quantity, unit_price, subtotal FROM cart_items WHERE cart_id = ? ORDER BY product_id",
+                CART))
+                .extracting(row -> List.of(row.get("PRODUCT_ID"), row.get("QUANTITY"),
+                        ((BigDecimal) row.get("UNIT_PRICE")).intValue(), ((BigDecimal) row.get("SUBTOTAL")).intValue()))
+                .containsExactly(List.of(1L, 2, 10, 20), List.of(2L, 1, 20, 20), List.of(3L, 1, 30, 30));
+        assertThat(cartItemId(1L)).isEqualTo(existing);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cart_item_epcs", Integer.class)).isEqualTo(4);
+
+        verify(aggregates).quantityChanged(existing, 2, new BigDecimal("20"));
+        verify(aggregates).linesAdded(USER, CART, List.of(2L, 3L));
+    }
+
+    @Test
+    void aBatchOfRereadsAndUnknownTagsWritesNothing() {
+        scan("E1", "F1");
+        clearInvocations(aggregates);
+
+        scan("F1", "X9", "E1");
+
+        assertThat(quantity(cartItemId(1L))).isEqualTo(1);
+        assertThat(quantity(cartItemId(2L))).isEqualTo(1);
+        verify(aggregates, never()).quantityChanged(anyLong(), anyInt(), any());
+        verify(aggregates, never()).linesAdded(any(), any(), anyCollection());
+    }
+
+    @Test
+    void eachProductIsSetToItsDistinctEpcCount() {
+        scan("E1");
+        scan("E2", "E1");
+
+        assertThat(quantity(cartItemId(1L))).isEqualTo(2);
+        verify(aggregates).quantityChanged(eq(cartItemId(1L)), eq(2), any());
+    }
+
+    private void scan(String... tags) {
+        transactionTemplate.executeWithoutResult(status -> scanService.addScannedTags(USER, CART, List.of(tags)));
+    }
+
+    private void product(String tag, Long productId) {
+        products.put(tag, new RFIDTagCache.TagProduct(productId, BigDecimal.valueOf(productId * 10), true));
+    }
+
+    private long cartItemId(Long productId) {
+        return jdbcTemplate.queryForObject("SELECT cart_item_id FROM cart_items WHERE cart_id = ? AND product_id = ?",
+                Long.class, CART, productId);
+    }
+
+    private int quantity(long cartItemId) {
+        return jdbcTemplate.queryForObject("SELECT quantity FROM cart_items WHERE cart_item_id = ?", Integer.class, cartItemId);
+    }
+}
@@ -0,0 +1,166 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RFIDTagCacheTest {
+
+    private static final long LAG = 60_000;
+
+    private JdbcTemplate jdbcTemplate;
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("""
+            CREATE TABLE products (
+                product_id BIGINT PRIMARY KEY, selling_price DECIMAL(10, 2), updated_at TIMESTAMP
+            )
+            """);
+        jdbcTemplate.execute("""
+            CREATE TABLE rfid_tags (
+                rfid_tag VARCHAR(64) PRIMARY KEY, product_id BIGINT, is_active TINYINT, updated_at TIMESTAMP
+            )
+            """);
+        now = System.currentTimeMillis();
+        product(1L, "10.00", now - 100_000);
+        product(2L, "20.00", now - 100_000);
+        tag("E1", 1L, true, now - 100_000);
+        tag("E2", 2L, true, now - 90_000);
+        tag("OFF", 1L, false, now - 90_000);
+    }
+
+    @Test
+    void resolvesActiveTagsFromMemoryAndLeavesOutInactiveOnes() {
+        RFIDTagCache cache = loaded(900_000);
+
+        assertThat(cache.resolve(List.of("E1", "E2", "OFF"))).containsOnlyKeys("E1", "E2");
+        assertThat(cache.resolve("E2").price()).isEqualByComparingTo("20.00");
+        assertThat(cache.getStats()).containsEntry("hits", 4L).containsEntry("misses", 0L);
+    }
+
+    @Test
+    void tagsCreatedSinceTheLastPollAreReadOnceAndThenCached() {
+        RFIDTagCache cache = loaded(900_000);
+        tag("NEW", 2L, true, now);
+
+        assertThat(cache.resolve("NEW").productId()).isEqualTo(2L);
+        assertThat(cache.resolve("NEW").productId()).isEqualTo(2L);
+        assertThat(cache.resolve("UNKNOWN")).isNull();
+        assertThat(cache.getStats()).containsEntry("misses", 2L).containsEntry("hits", 1L);
+    }
+
+    @Test
+    void unknownTagsAreRememberedUntilAPollBringsThemIn() {
+        RFIDTagCache cache = loaded(900_000);
+
+        assertThat(cache.resolve(List.of("STRAY", "E1"))).containsOnlyKeys("E1");
+        // With the table gone, a second read can only be answered from memory
+        jdbcTemplate.execute("ALTER TABLE rfid_tags RENAME TO rfid_tags_away");
+        assertThat(cache.resolve(List.of("STRAY", "STRAY"))).isEmpty();
+        jdbcTemplate.execute("ALTER TABLE rfid_tags_away RENAME TO rfid_tags");
+        assertThat(cache.getStats()).containsEntry("misses", 1L).containsEntry("unknownHits", 2L)
+                .containsEntry("unknownSize", 1L);
+
+        tag("STRAY", 2L, true, now);
+        cache.refresh();
+
+        assertThat(cache.resolve("STRAY").productId()).isEqualTo(2L);
+        assertThat(cache.getStats()).containsEntry("unknownSize", 0L);
+    }
+
+    @Test
+    void unknownTagsAreLookedUpAgainOnceTheyExpire() throws InterruptedException {
+        RFIDTagCache cache = new RFIDTagCache(jdbcTemplate, LAG, 900_000, 1_000, Duration.ofMillis(20));
+        cache.reload();
+
+        assertThat(cache.resolve("LATE")).isNull();
+        // Created without a poll in between
+        tag("LATE", 1L, true, now);
+        Thread.sleep(50);
+
+        assertThat(cache.resolve("LATE").productId()).isEqualTo(1L);
+        assertThat(cache.getStats()).containsEntry("misses", 2L);
+    }
+
+    @Test
+    void refreshAppliesPriceAndAssignmentChanges() {
+        RFIDTagCache cache = loaded(900_000);
+
+        jdbcTemplate.update("UPDATE products SET selling_price = 12.50, updated_at = ? WHERE product_id = 1",
+                new Timestamp(now));
+        jdbcTemplate.update("UPDATE rfid_tags SET product_id = 1, updated_at = ? WHERE rfid_tag = 'E2'",
+                new Timestamp(now));
+        cache.refresh();
+
+        assertThat(cache.resolve("E1").price()).isEqualByComparingTo("12.50");
+        assertThat(cache.resolve("E2").productId()).isEqualTo(1L);
+        // E1 and the inactive OFF tag carry product 1's new price, E2 its new product
+        assertThat(cache.getStats()).containsEntry("changesApplied", 3L).containsEntry("reloads", 1L);
+    }
+
+    @Test
+    void aChangeCommittedBehindTheWatermarkIsStillPickedUp() {
+        tag("LATEST", 2L, true, now);
+        RFIDTagCache cache = loaded(900_000);
+
+        // Stamped before the watermark, but only committed after the load
+        jdbcTemplate.update("UPDATE rfid_tags SET is_active = 0, updated_at = ? WHERE rfid_tag = 'E1'",
+                new Timestamp(now - LAG / 2));
+        cache.refresh();
+
+        assertThat(cache.resolve("E1")).isNull();
+    }
+
+    @Test
+    void deletedTagsDisappearOnTheFullReload() {
+        RFIDTagCache cache = loaded(0);
+        jdbcTemplate.update("DELETE FROM rfid_tags WHERE rfid_tag = 'E1'");
+
+        cache.refresh();
+
+        assertThat(cache.resolve("E1")).isNull();
+        assertThat(cache.getStats()).containsEntry("reloads", 2L);
+    }
+
+    @Test
+    void refreshLoadsTheCacheWhenTheStartupLoadFailed() {
+        RFIDTagCache cache = new RFIDTagCache(jdbcTemplate, LAG, 900_000, 1_000, Duration.ofMinutes(1));
+        jdbcTemplate.execute("ALTER TABLE rfid_tags RENAME TO rfid_tags_away");
+        cache.onApplicationReady();
+        assertThat(cache.getStats()).containsEntry("reloads", 0L);
+
+        jdbcTemplate.execute("ALTER TABLE rfid_tags_away RENAME TO rfid_tags");
+        cache.refresh();
+
+        assertThat(cache.getStats()).containsEntry("reloads", 1L).containsEntry("size", 3);
+    }
+
+    private RFIDTagCache loaded(long fullReloadMillis) {
+        RFIDTagCache cache = new RFIDTagCache(jdbcTemplate, LAG, fullReloadMillis, 1_000, Duration.ofMinutes(1));
+        cache.reload();
+        return cache;
+    }
+
+    private void product(Long productId, String price, long updatedAt) {
+        jdbcTemplate.update("INSERT INTO products VALUES (?, ?, ?)", productId, new BigDecimal(price),
+                new Timestamp(updatedAt));
+    }
+
+    private void tag(String rfidTag, Long productId, boolean active, long updatedAt) {
+        jdbcTemplate.update("INSERT INTO rfid_tags VALUES (?, ?, ?, ?)", rfidTag, productId, active ? 1 : 0,
+                new Timestamp(updatedAt));
+    }
+}
@@ -0,0 +1,102 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReaderSequencesTest {
+
+    private final ReaderSequences sequences = new ReaderSequences(3_600_000);
+
+    @Test
+    void aBatchAtOrBelowTheMarkIsAReplay() {
+        assertThat(sequences.claim("r1", 10)).isEqualTo(Long.MIN_VALUE);
+        assertThat(sequences.claim("r1", 10)).isEqualTo(ReaderSequences.REPLAY);
+        assertThat(sequences.claim("r1", 9)).isEqualTo(ReaderSequences.REPLAY);
+        assertThat(sequences.claim("r1", 15)).isEqualTo(10);
+        assertThat(sequences.claim("r2", 1)).isEqualTo(Long.MIN_VALUE);
+
+        assertThat(sequences.getStats()).containsEntry("readers", 2).containsEntry("claimed", 3L)
+                .containsEntry("replays", 2L);
+    }
+
+    @Test
+    void aReleasedBatchIsTakenAgainOnRetry() {
+        sequences.claim("r1", 10);
+        long previous = sequences.claim("r1", 11);
+
+        sequences.release("r1", 11, previous);
+
+        assertThat(sequences.claim("r1", 11)).isEqualTo(10);
+    }
+
+    @Test
+    void aReleaseHasNoEffectOnceALaterBatchWasClaimed() {
+        long previous = sequences.claim("r1", 11);
+        sequences.claim("r1", 12);
+
+        sequences.release("r1", 11, previous);
+
+        assertThat(sequences.claim("r1", 11)).isEqualTo(ReaderSequences.REPLAY);
+        assertThat(sequences.claim("r1", 12)).isEqualTo(ReaderSequences.REPLAY);
+        sequences.release("unknown", 1, Long.MIN_VALUE);
+    }
+
+    @Test
+    void exactlyOneConcurrentClaimOfTheSameBatchWins() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (long sequence = 1; sequence <= 200; sequence++) {
+                long batch = sequence;
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Long>> claims = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    claims.add(executor.submit(() -> {
+                        start.await();
+                        return sequences.claim("r1", batch);
+                    }));
+                }
+                start.countDown();
+
+                int winners = 0;
+                for (Future<Long> claim : claims) {
+                    if (claim.get(10, TimeUnit.SECONDS) != ReaderSequences.REPLAY) {
+                        winners++;
+                    }
+                }
+                assertThat(winners).isEqualTo(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(sequences.getStats()).containsEntry("claimed", 200L).containsEntry("replays", 1400L);
+    }
+
+    @Test
+    void idleReadersAreForgotten() throws InterruptedException {
+        ReaderSequences idle = new ReaderSequences(0);
+        idle.claim("r1", 10);
+        Thread.sleep(5);
+
+        idle.sweep();
+
+        assertThat(idle.getStats()).containsEntry("readers", 0);
+        assertThat(idle.claim("r1", 10)).isEqualTo(Long.MIN_VALUE);
+    }
+
+    @Test
+    void batchesAreNumberedByTheReaderElseTheLane() {
+        assertThat(ReaderSequences.readerOf("reader-1", "lane-1")).isEqualTo("reader-1");
+        assertThat(ReaderSequences.readerOf(" ", "lane-1")).isEqualTo("lane-1");
+        assertThat(ReaderSequences.readerOf(null, null)).isEqualTo(ScanDeduplicator.DEFAULT_LANE);
+        assertThat(ReaderSequences.readerOf(null, "")).isEqualTo(ScanDeduplicator.DEFAULT_LANE);
+    }
+}
@@ -0,0 +1,58 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScanAdmissionTest {
+
+    private final ReaderSequences sequences = new ReaderSequences(3_600_000);
+    private final ScanAdmission admission = new ScanAdmission(new ScanDeduplicator(3_600_000), sequences);
+
+    @Test
+    void aReplayedBatchIsDroppedWholeBeforeDedup() {
+        ScanAdmission.Batch batch = admission.admit("1", null, 5L, List.of("A", "B"));
+
+        assertThat(batch).isEqualTo(new ScanAdmission.Batch("1", "1", 5L, Long.MIN_VALUE, List.of("A", "B")));
+        assertThat(admission.admit("1", null, 5L, List.of("C"))).isNull();
+        assertThat(admission.admit("1", null, 6L, List.of("A", "C")).tags()).containsExactly("C");
+    }
+
+    @Test
+    void batchesWithoutASequenceAreOnlyDeduplicated() {
+        assertThat(admission.admit(null, null, null, List.of("A")))
+                .isEqualTo(new ScanAdmission.Batch(ScanDeduplicator.DEFAULT_LANE, ScanDeduplicator.DEFAULT_LANE,
+                        null, ReaderSequences.REPLAY, List.of("A")));
+        assertThat(admission.admit(null, null, null, List.of("A"))).isNull();
+        assertThat(sequences.getStats()).containsEntry("readers", 0);
+    }
+
+    @Test
+    void readersOnOneLaneAreNumberedSeparately() {
+        assertThat(admission.admit("1", "r1", 5L, List.of("A"))).isNotNull();
+        assertThat(admission.admit("1", "r2", 5L, List.of("B"))).isNotNull();
+        assertThat(admission.admit("1", "r1", 5L, List.of("C"))).isNull();
+    }
+
+    @Test
+    void aReleasedBatchIsAdmittedAgainOnRetry() {
+        ScanAdmission.Batch batch = admission.admit("1", null, 5L, List.of("A", "B"));
+
+        admission.release(batch);
+
+        assertThat(admission.admit("1", null, 5L, List.of("A", "B")).tags()).containsExactly("A", "B");
+    }
+
+    @Test
+    void aReleaseAfterALaterBatchOnlyForgetsTheTags() {
+        ScanAdmission.Batch batch = admission.admit("1", null, 5L, List.of("A"));
+        admission.admit("1", null, 6L, List.of("B"));
+
+        admission.release(batch);
+
+        assertThat(admission.admit("1", null, 5L, List.of("A"))).isNull();
+        assertThat(admission.admit("1", null, 7L, List.of("A", "B")).tags()).containsExactly("A");
+    }
+}
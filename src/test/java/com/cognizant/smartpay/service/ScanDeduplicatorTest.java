@@ -0,0 +1,135 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScanDeduplicatorTest {
+
+    private final ScanDeduplicator longWindow = new ScanDeduplicator(3_600_000);
+
+    @Test
+    void repeatedReadsWithinTheWindowAreDroppedAndOrderIsKept() {
+        assertThat(longWindow.filter("1", List.of("C", "A", "C", "B"))).containsExactly("C", "A", "B");
+        assertThat(longWindow.filter("1", List.of("B", "D", "A"))).containsExactly("D");
+        assertThat(longWindow.getStats()).containsEntry("received", 7L).containsEntry("dropped", 3L);
+    }
+
+    @Test
+    void lanesAreIndependentAndABlankLaneIsTheDefaultOne() {
+        longWindow.filter("1", List.of("A"));
+
+        assertThat(longWindow.filter("2", List.of("A"))).containsExactly("A");
+        assertThat(longWindow.filter(null, List.of("B"))).containsExactly("B");
+        assertThat(longWindow.filter(" ", List.of("B"))).isEmpty();
+    }
+
+    @Test
+    void emptyAndNullTagsAreNeverPassedOn() {
+        assertThat(longWindow.filter("1", Arrays.asList("A", null, ""))).containsExactly("A");
+        assertThat(longWindow.filter("1", null)).isEmpty();
+    }
+
+    @Test
+    void theWindowSlidesWhileAnItemKeepsBeingReported() throws InterruptedException {
+        ScanDeduplicator deduplicator = new ScanDeduplicator(1_000);
+        assertThat(deduplicator.filter("1", List.of("A"))).containsExactly("A");
+
+        // Read every 100 ms for 1.5 s: never a full window apart
+        for (int i = 0; i < 15; i++) {
+            Thread.sleep(100);
+            assertThat(deduplicator.filter("1", List.of("A"))).isEmpty();
+        }
+
+        Thread.sleep(1_100);
+        assertThat(deduplicator.filter("1", List.of("A"))).containsExactly("A");
+    }
+
+    @Test
+    void expiredEntriesAreReadAgainAfterTheTableGrows() throws InterruptedException {
+        ScanDeduplicator deduplicator = new ScanDeduplicator(500);
+        List<String> tags = epcs(5_000);
+
+        assertThat(deduplicator.filter("1", tags)).hasSize(5_000);
+        assertThat(deduplicator.filter("1", tags)).isEmpty();
+
+        Thread.sleep(600);
+        assertThat(deduplicator.filter("1", tags)).hasSize(5_000);
+    }
+
+    @Test
+    void forgottenTagsAreTakenOnRetry() {
+        longWindow.filter("1", List.of("A", "B"));
+
+        longWindow.forget("1", List.of("A"));
+
+        assertThat(longWindow.filter("1", List.of("A", "B"))).containsExactly("A");
+    }
+
+    @Test
+    void sweepDropsIdleLanesOnly() throws InterruptedException {
+        ScanDeduplicator deduplicator = new ScanDeduplicator(500);
+        deduplicator.filter("idle", List.of("A"));
+        Thread.sleep(600);
+        deduplicator.filter("busy", List.of("B"));
+
+        deduplicator.sweep();
+
+        assertThat(deduplicator.getStats()).containsEntry("lanes", 1);
+        assertThat(deduplicator.filter("busy", List.of("B"))).isEmpty();
+    }
+
+    @Test
+    void concurrentBatchesOnOneLanePassEachTagOnce() throws Exception {
+        List<String> tags = epcs(2_000);
+        ConcurrentLinkedQueue<String> passed = new ConcurrentLinkedQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<?>> readers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            readers.add(executor.submit(() -> {
+                start.await();
+                for (int from = 0; from < tags.size(); from += 50) {
+                    passed.addAll(longWindow.filter("1", tags.subList(from, from + 50)));
+                    // Sweeps never find this lane idle, so they must not disturb it
+                    longWindow.sweep();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> reader : readers) {
+            reader.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(passed).hasSize(2_000).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void epcKeysAreNeverZeroAndDoNotCollideInPractice() {
+        List<String> tags = epcs(200_000);
+
+        assertThat(tags.stream().mapToLong(EpcKeys::key).distinct().count()).isEqualTo(200_000);
+        assertThat(tags.stream().mapToLong(EpcKeys::key).noneMatch(key -> key == 0)).isTrue();
+    }
+
+    private static List<String> epcs(int count) {
+        List<String> tags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tags.add(String.format("E28011%018X", i));
+        }
+        return tags;
+    }
+}
@@ -0,0 +1,125 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ScanFrameListenerTest {
+
+    private final ScanIngestQueue ingestQueue = mock(ScanIngestQueue.class);
+    private ScanFrameListener listener;
+    private int tcpPort;
+    private int udpPort;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try (ServerSocket tcp = new ServerSocket(0); DatagramSocket udp = new DatagramSocket(0)) {
+            tcpPort = tcp.getLocalPort();
+            udpPort = udp.getLocalPort();
+        }
+        when(ingestQueue.submit(any(), isNull(), anyLong(), any())).thenReturn(true);
+        listener = new ScanFrameListener(ingestQueue, "127.0.0.1", tcpPort, udpPort);
+        listener.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        listener.stop();
+    }
+
+    @Test
+    void pipelinedTcpFramesAreQueuedAndAnsweredInOrder() throws IOException {
+        when(ingestQueue.submit(eq("2"), isNull(), anyLong(), any())).thenReturn(false);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), tcpPort)) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            send(out, new ScanFrame("1", 10, List.of("0A", "0B")).encode());
+            send(out, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+            send(out, new ScanFrame("2", 11, List.of("0C")).encode());
+            send(out, new ScanFrame("1", 12, List.of()).encode());
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertThat(new byte[] {in.readByte(), in.readByte(), in.readByte(), in.readByte()}).containsExactly(
+                    ScanFrameListener.ACCEPTED, ScanFrameListener.MALFORMED, ScanFrameListener.BUSY,
+                    ScanFrameListener.ACCEPTED);
+        }
+
+        verify(ingestQueue).submit("1", null, 10L, List.of("0A", "0B"));
+        verify(ingestQueue).submit("1", null, 12L, List.of());
+        assertThat(listener.getStats()).containsEntry("frames", 3L).containsEntry("epcs", 3L)
+                .containsEntry("busy", 1L).containsEntry("malformed", 1L);
+    }
+
+    @Test
+    void aFrameSplitAcrossWritesIsReassembled() throws Exception {
+        byte[] frame = new byte[4 + 64];
+        ByteBuffer encoded = new ScanFrame("1", 5, List.of("ABCD")).encode();
+        int length = encoded.remaining();
+        ByteBuffer.wrap(frame).putInt(length).put(encoded);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), tcpPort)) {
+            socket.setTcpNoDelay(true);
+            for (int i = 0; i < 4 + length; i++) {
+                socket.getOutputStream().write(frame[i]);
+                socket.getOutputStream().flush();
+            }
+            assertThat(socket.getInputStream().read()).isEqualTo(ScanFrameListener.ACCEPTED);
+        }
+        verify(ingestQueue).submit("1", null, 5L, List.of("ABCD"));
+    }
+
+    @Test
+    void aBadLengthPrefixClosesTheConnection() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), tcpPort)) {
+            new DataOutputStream(socket.getOutputStream()).writeInt(ScanFrame.MAX_FRAME_BYTES + 1);
+
+            socket.setSoTimeout(5000);
+            assertThat(socket.getInputStream().read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void udpDatagramsHoldOneFrameEach() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket()) {
+            byte[] frame = bytes(new ScanFrame("3", 7, List.of("01", "02")).encode());
+            socket.send(new DatagramPacket(frame, frame.length, InetAddress.getLoopbackAddress(), udpPort));
+            socket.send(new DatagramPacket(new byte[] {0}, 1, InetAddress.getLoopbackAddress(), udpPort));
+        }
+
+        verify(ingestQueue, timeout(5000)).submit("3", null, 7L, List.of("01", "02"));
+        verify(ingestQueue, timeout(5000).times(1)).submit(any(), isNull(), anyLong(), any());
+    }
+
+    private static void send(DataOutputStream out, ByteBuffer frame) throws IOException {
+        out.writeInt(frame.remaining());
+        out.write(bytes(frame));
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
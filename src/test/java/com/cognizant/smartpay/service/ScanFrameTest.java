@@ -0,0 +1,89 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ScanFrameTest {
+
+    private static final ScanFrame FRAME = new ScanFrame("lane-é", 0x0102030405060708L,
+            List.of("E2801160600002084F8A1B2C", "00", "ABCDEF"));
+
+    @Test
+    void aFrameSurvivesEncodingAndEpcsComeBackAsUpperCaseHex() {
+        assertThat(ScanFrame.decode(FRAME.encode())).isEqualTo(FRAME);
+
+        ScanFrame lowerCase = new ScanFrame("1", 1, List.of("abcdef"));
+        assertThat(ScanFrame.decode(lowerCase.encode()).epcs()).containsExactly("ABCDEF");
+    }
+
+    @Test
+    void theLayoutIsBigEndianWithLengthPrefixedFields() {
+        ByteBuffer buffer = new ScanFrame("L1", 258, List.of("0A0B")).encode();
+
+        assertThat(buffer.remaining()).isEqualTo(2 + 1 + 1 + 2 + 8 + 2 + 1 + 2);
+        assertThat(buffer.getShort() & 0xffff).isEqualTo(ScanFrame.MAGIC);
+        assertThat(buffer.get()).isEqualTo((byte) ScanFrame.VERSION);
+        assertThat(buffer.get()).isEqualTo((byte) 2);
+        assertThat(new byte[] {buffer.get(), buffer.get()}).containsExactly('L', '1');
+        assertThat(buffer.getLong()).isEqualTo(258);
+        assertThat(buffer.getShort()).isEqualTo((short) 1);
+        assertThat(new byte[] {buffer.get(), buffer.get(), buffer.get()}).containsExactly(2, 0x0A, 0x0B);
+    }
+
+    @Test
+    void aFrameWithoutEpcsIsValid() {
+        ScanFrame empty = new ScanFrame("", -1, List.of());
+
+        assertThat(ScanFrame.decode(empty.encode())).isEqualTo(empty);
+    }
+
+    @Test
+    void malformedFramesAreRejectedWithIllegalArgumentException() {
+        byte[] valid = bytes(FRAME.encode());
+
+        byte[] badMagic = valid.clone();
+        badMagic[0] = 0;
+        assertThatThrownBy(() -> ScanFrame.decode(ByteBuffer.wrap(badMagic)))
+                .isInstanceOf(IllegalArgumentException.class).hasMessage("Not a scan frame");
+
+        byte[] badVersion = valid.clone();
+        badVersion[2] = 9;
+        assertThatThrownBy(() -> ScanFrame.decode(ByteBuffer.wrap(badVersion)))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("version: 9");
+
+        for (int length = 0; length < valid.length; length++) {
+            ByteBuffer truncated = ByteBuffer.wrap(valid, 0, length);
+            assertThatThrownBy(() -> ScanFrame.decode(truncated))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+
+        byte[] trailing = new byte[valid.length + 1];
+        System.arraycopy(valid, 0, trailing, 0, valid.length);
+        assertThatThrownBy(() -> ScanFrame.decode(ByteBuffer.wrap(trailing)))
+                .isInstanceOf(IllegalArgumentException.class).hasMessage("Trailing bytes after scan frame");
+    }
+
+    @Test
+    void framesThatCannotBeEncodedAreRejected() {
+        assertThatThrownBy(() -> new ScanFrame("x".repeat(256), 1, List.of()).encode())
+                .isInstanceOf(IllegalArgumentException.class).hasMessage("Scan frame too large");
+        assertThatThrownBy(() -> new ScanFrame("1", 1, Collections.nCopies(3_000, "00".repeat(30))).encode())
+                .isInstanceOf(IllegalArgumentException.class).hasMessage("Scan frame too large");
+        assertThatThrownBy(() -> new ScanFrame("1", 1, List.of("00".repeat(256))).encode())
+                .isInstanceOf(IllegalArgumentException.class).hasMessage("EPC too long");
+        assertThatThrownBy(() -> new ScanFrame("1", 1, List.of("XYZ")).encode())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
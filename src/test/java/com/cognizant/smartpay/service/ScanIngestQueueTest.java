@@ -0,0 +1,161 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class ScanIngestQueueTest {
+
+    private final RFIDScanService scanService = mock(RFIDScanService.class);
+    private final ScanAdmission admission =
+            new ScanAdmission(new ScanDeduplicator(3_600_000), new ReaderSequences(3_600_000));
+    private final List<ScanIngestQueue> queues = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        for (ScanIngestQueue queue : queues) {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void batchesQueuedWithinTheLingerAreWrittenTogether() {
+        ScanIngestQueue queue = queue(4, 200);
+
+        assertThat(queue.submit("1", null, null, List.of("A", "B"))).isTrue();
+        assertThat(queue.submit("1", null, null, List.of("B", "C"))).isTrue();
+        assertThat(queue.submit("1", null, null, List.of("D"))).isTrue();
+
+        verify(scanService, timeout(5_000)).ingest("1", List.of("A", "B", "C", "D"));
+        assertThat(queue.getStats()).containsEntry("writes", 1L).containsEntry("batchesPerWrite", 3.0);
+    }
+
+    @Test
+    void aFullLaneRejectsTheBatchAndForgetsItsTags() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return null;
+        }).when(scanService).ingest(eq("1"), any());
+        ScanIngestQueue queue = queue(1, 0);
+
+        assertThat(queue.submit("1", null, null, List.of("A"))).isTrue();
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(queue.submit("1", null, null, List.of("B"))).isTrue();
+        assertThat(queue.submit("1", null, null, List.of("C"))).isFalse();
+        release.countDown();
+
+        // The rejected tags are not treated as duplicates when the reader retries
+        verify(scanService, timeout(5_000)).ingest("1", List.of("B"));
+        assertThat(queue.submit("1", null, null, List.of("C"))).isTrue();
+        verify(scanService, timeout(5_000)).ingest("1", List.of("C"));
+        assertThat(queue.getStats()).containsEntry("rejected", 1L);
+    }
+
+    @Test
+    void aFailedWriteReleasesItsBatchesSoTheRetryIsTaken() throws InterruptedException {
+        doThrow(new IllegalStateException("database down")).doNothing().when(scanService).ingest(eq("1"), any());
+        ScanIngestQueue queue = queue(4, 0);
+
+        queue.submit("1", "reader-1", 7L, List.of("A"));
+        verify(scanService, timeout(5_000)).ingest("1", List.of("A"));
+        await(() -> queue.getStats().get("failedWrites").equals(1L));
+
+        assertThat(queue.submit("1", "reader-1", 7L, List.of("A"))).isTrue();
+        verify(scanService, timeout(5_000).times(2)).ingest("1", List.of("A"));
+        assertThat(queue.getStats()).containsEntry("writes", 1L);
+    }
+
+    @Test
+    void replaysAndRepeatedReadsAreAcceptedButNeverWritten() throws InterruptedException {
+        ScanIngestQueue queue = queue(4, 0);
+        queue.submit("1", "reader-1", 1L, List.of("A"));
+        verify(scanService, timeout(5_000)).ingest("1", List.of("A"));
+
+        assertThat(queue.submit("1", "reader-1", 1L, List.of("B"))).isTrue();
+        assertThat(queue.submit("1", "reader-1", 2L, List.of("A"))).isTrue();
+        Thread.sleep(100);
+
+        assertThat(queue.getStats()).containsEntry("writes", 1L).containsEntry("queued", 0);
+    }
+
+    @Test
+    void eachLaneIsWrittenInOrderOneDrainAtATime() throws InterruptedException {
+        Map<String, List<String>> written = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> active = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        doAnswer(invocation -> {
+            String lane = invocation.getArgument(0);
+            AtomicInteger running = active.computeIfAbsent(lane, k -> new AtomicInteger());
+            if (running.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            Thread.sleep(1);
+            written.computeIfAbsent(lane, k -> Collections.synchronizedList(new ArrayList<>()))
+                    .addAll(invocation.getArgument(1));
+            running.decrementAndGet();
+            return null;
+        }).when(scanService).ingest(any(), any());
+        ScanIngestQueue queue = queue(1_000, 1);
+
+        for (int i = 0; i < 500; i++) {
+            for (String lane : List.of("1", "2", "3")) {
+                assertThat(queue.submit(lane, null, null, List.of(lane + "-" + i))).isTrue();
+            }
+        }
+        await(() -> written.values().stream().mapToInt(List::size).sum() == 1_500);
+
+        assertThat(overlaps).hasValue(0);
+        for (String lane : List.of("1", "2", "3")) {
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                expected.add(lane + "-" + i);
+            }
+            assertThat(written.get(lane)).containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    void shutdownWritesOutWhatIsStillQueued() throws InterruptedException {
+        ScanIngestQueue queue = queue(4, 500);
+        queue.submit("1", null, null, List.of("A"));
+
+        queue.shutdown();
+
+        verify(scanService).ingest("1", List.of("A"));
+    }
+
+    private ScanIngestQueue queue(int capacity, long lingerMillis) {
+        ScanIngestQueue queue = new ScanIngestQueue(scanService, admission, capacity, lingerMillis, 1_000, 4);
+        queues.add(queue);
+        return queue;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TemplateMatcherTest {
+
+    private final TemplateMatcher sequential = new TemplateMatcher(Integer.MAX_VALUE, 1);
+    private final TemplateMatcher parallel = new TemplateMatcher(1, 4);
+    private final Random random = new Random(7);
+
+    @AfterEach
+    void shutdown() {
+        sequential.shutdown();
+        parallel.shutdown();
+    }
+
+    @Test
+    void scoreMatchesByteLoopForEveryLengthAndByteValue() {
+        for (int length = 1; length <= 67; length++) {
+            for (int round = 0; round < 50; round++) {
+                byte[] a = randomTemplate(length);
+                byte[] b = similar(a, random.nextInt(length + 1));
+
+                assertThat(sequential.score(a, b)).as("length %d", length).isEqualTo(byteLoopScore(a, b));
+            }
+        }
+    }
+
+    @Test
+    void zeroByteCountIsNotFooledByHighBitsOrBorrows() {
+        // 0x80 and 0x01 bytes next to zero bytes break naive "has zero byte" tricks
+        byte[] a = new byte[16];
+        byte[] b = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            a[i] = (byte) (i % 2 == 0 ? 0x80 : 0x01);
+            b[i] = (byte) (i % 3 == 0 ? 0x00 : a[i]);
+        }
+
+        assertThat(sequential.score(a, b)).isEqualTo(byteLoopScore(a, b));
+        assertThat(sequential.score(a, a.clone())).isEqualTo(100);
+    }
+
+    @Test
+    void reachesAgreesWithScoreAtEveryThreshold() {
+        for (int round = 0; round < 200; round++) {
+            int length = 1 + random.nextInt(100);
+            byte[] probe = randomTemplate(length);
+            byte[] stored = similar(probe, random.nextInt(length + 1));
+            int score = byteLoopScore(probe, stored);
+
+            for (int minScore = 0; minScore <= 101; minScore++) {
+                assertThat(sequential.reaches(probe, view(stored), minScore))
+                        .as("score %d, minScore %d", score, minScore)
+                        .isEqualTo(score >= minScore);
+            }
+        }
+    }
+
+    @Test
+    void templatesOfDifferentLengthScoreZero() {
+        byte[] probe = randomTemplate(32);
+
+        assertThat(sequential.score(probe, probe.clone())).isEqualTo(100);
+        assertThat(sequential.score(probe, new byte[31])).isZero();
+        assertThat(sequential.score(probe, (byte[]) null)).isZero();
+        assertThat(sequential.reaches(probe, view(new byte[33]), 1)).isFalse();
+    }
+
+    @Test
+    void parallelFindFirstReturnsTheFirstMatchInListOrder() {
+        byte[] probe = randomTemplate(64);
+        List<byte[]> candidates = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            candidates.add(randomTemplate(64));
+        }
+        candidates.set(1_500, similar(probe, 60));
+        candidates.set(700, similar(probe, 58));
+
+        Optional<byte[]> first = parallel.findFirst(probe, candidates, TemplateMatcherTest::view, 90);
+
+        assertThat(first).containsSame(candidates.get(700));
+        assertThat(sequential.findFirst(probe, candidates, TemplateMatcherTest::view, 90)).containsSame(candidates.get(700));
+    }
+
+    @Test
+    void rankOrdersByScoreThenPositionAndDoesNotDependOnSplitting() {
+        byte[] probe = randomTemplate(100);
+        List<byte[]> candidates = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            candidates.add(randomTemplate(100));
+        }
+        candidates.set(900, similar(probe, 95));
+        candidates.set(100, similar(probe, 90));
+        candidates.set(50, similar(probe, 90));
+        candidates.set(10, probe.clone());
+
+        TemplateMatcher.Ranking<byte[]> ranked = parallel.rank(probe, candidates, TemplateMatcherTest::view, 80, 3);
+
+        assertThat(ranked.comparisons()).isEqualTo(1_000);
+        assertThat(ranked.matches()).extracting(TemplateMatcher.Match::score).containsExactly(100, 95, 90);
+        assertThat(ranked.matches().get(2).candidate()).isSameAs(candidates.get(50));
+        assertThat(sequential.rank(probe, candidates, TemplateMatcherTest::view, 80, 3).matches())
+                .extracting(TemplateMatcher.Match::candidate)
+                .containsExactlyElementsOf(ranked.matches().stream().map(TemplateMatcher.Match::candidate).toList());
+    }
+
+    @Test
+    void rankDropsCandidatesBelowTheMinimum() {
+        byte[] probe = randomTemplate(40);
+        List<byte[]> candidates = List.of(similar(probe, 20), similar(probe, 39));
+
+        TemplateMatcher.Ranking<byte[]> ranked = sequential.rank(probe, candidates, TemplateMatcherTest::view, 90, 5);
+
+        assertThat(ranked.matches()).hasSize(1);
+        assertThat(ranked.best()).get().extracting(TemplateMatcher.Match::score).isEqualTo(97);
+    }
+
+    /**
+     * The matcher's original scoring loop
+     */
+    private static int byteLoopScore(byte[] a, byte[] b) {
+        int matches = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                matches++;
+            }
+        }
+        return (int) ((double) matches / a.length * 100);
+    }
+
+    private static ByteBuffer view(byte[] template) {
+        return ByteBuffer.wrap(template).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private byte[] randomTemplate(int length) {
+        byte[] template = new byte[length];
+        random.nextBytes(template);
+        return template;
+    }
+
+    /**
+     * A copy of {@code template} with exactly {@code equal} bytes left unchanged
+     */
+    private byte[] similar(byte[] template, int equal) {
+        byte[] copy = template.clone();
+        for (int i = equal; i < copy.length; i++) {
+            copy[i] = (byte) (template[i] + 1 + random.nextInt(255));
+        }
+        return copy;
+    }
+}
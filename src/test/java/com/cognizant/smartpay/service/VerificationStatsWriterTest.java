@@ -0,0 +1,129 @@
+package com.cognizant.smartpay.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VerificationStatsWriterTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private VerificationStatsWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("""
+            CREATE TABLE biometrics (
+                biometric_id BIGINT PRIMARY KEY,
+                verification_count INT NOT NULL DEFAULT 0 CHECK (verification_count < 1000000),
+                last_verified_at TIMESTAMP
+            )
+            """);
+        for (long id = 1; id <= 10; id++) {
+            jdbcTemplate.update("INSERT INTO biometrics (biometric_id) VALUES (?)", id);
+        }
+        writer = new VerificationStatsWriter(jdbcTemplate,
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+    }
+
+    @Test
+    void verificationsAreOnlyWrittenOnFlushAndCoalescedPerBiometric() {
+        for (int i = 0; i < 5; i++) {
+            writer.record(1L);
+        }
+        writer.record(2L);
+
+        assertThat(count(1L)).isZero();
+
+        writer.flush();
+
+        assertThat(count(1L)).isEqualTo(5);
+        assertThat(count(2L)).isEqualTo(1);
+        assertThat(writer.getStats()).containsEntry("flushes", 1L).containsEntry("flushedRows", 2L)
+                .containsEntry("pendingBiometrics", 0);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT last_verified_at FROM biometrics WHERE biometric_id = 1", Object.class)).isNotNull();
+    }
+
+    @Test
+    void aFailedFlushKeepsItsCountsForTheNextOne() {
+        writer.record(3L);
+        writer.record(3L);
+
+        jdbcTemplate.execute("ALTER TABLE biometrics RENAME TO biometrics_away");
+        writer.flush();
+        writer.record(3L);
+        jdbcTemplate.execute("ALTER TABLE biometrics_away RENAME TO biometrics");
+        writer.flush();
+
+        assertThat(count(3L)).isEqualTo(3);
+    }
+
+    @Test
+    void aBatchFailingPartWayIsRetriedWithoutCountingTheRowsBeforeItTwice() {
+        jdbcTemplate.update("UPDATE biometrics SET verification_count = 999999 WHERE biometric_id = 5");
+        writer.record(1L);
+        writer.record(5L);
+        writer.record(9L);
+
+        // Biometric 5 breaks the batch after biometric 1 was updated
+        writer.flush();
+        assertThat(count(1L)).isZero();
+        assertThat(writer.getStats()).containsEntry("pendingBiometrics", 3);
+
+        jdbcTemplate.update("UPDATE biometrics SET verification_count = 0 WHERE biometric_id = 5");
+        writer.flush();
+
+        assertThat(count(1L)).isEqualTo(1);
+        assertThat(count(5L)).isEqualTo(1);
+        assertThat(count(9L)).isEqualTo(1);
+    }
+
+    @Test
+    void noVerificationIsLostWhileFlushesRunConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        List<Future<?>> recorders = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            recorders.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    writer.record(1L + i % 10);
+                }
+            }));
+        }
+        Future<?> flusher = executor.submit(() -> {
+            while (recorders.stream().anyMatch(recorder -> !recorder.isDone())) {
+                writer.flush();
+            }
+        });
+
+        for (Future<?> recorder : recorders) {
+            recorder.get(30, TimeUnit.SECONDS);
+        }
+        flusher.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+        writer.shutdown();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT SUM(verification_count) FROM biometrics", Integer.class))
+                .isEqualTo(40_000);
+    }
+
+    private int count(Long biometricId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT verification_count FROM biometrics WHERE biometric_id = ?", Integer.class, biometricId);
+    }
+}
@@ -0,0 +1,263 @@
+package com.cognizant.smartpay.service;
+
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WebAuthnVerifierTest {
+
+    private static final String RP_ID = "kiosk.example";
+    private static final String ORIGIN = "https://kiosk.example";
+    // The first byte after a challenge's nonce, inside its signed expiry
+    private static final int NONCE_END = 16;
+
+    private final WebAuthnVerifier strict = verifier(true);
+    private final KeyPair p256 = generate("secp256r1");
+
+    @Test
+    void acceptsAValidAssertionOnceForEachChallenge() throws Exception {
+        byte[] cose = coseKey(p256, -7, 1);
+        Map<String, Object> assertion = sign(p256, "SHA256withECDSA", strict.issueChallenge(), ORIGIN, RP_ID, true);
+
+        assertThat(strict.verify(1L, cose, assertion)).isTrue();
+        assertThat(strict.verify(1L, cose, assertion)).isFalse();
+    }
+
+    @Test
+    void requiresAnIssuedChallengeOnlyWhenConfigured() throws Exception {
+        byte[] cose = coseKey(p256, -7, 1);
+        Map<String, Object> unchallenged = sign(p256, "SHA256withECDSA", randomChallenge(), ORIGIN, RP_ID, true);
+        WebAuthnVerifier lenient = verifier(false);
+
+        assertThat(strict.verify(1L, cose, unchallenged)).isFalse();
+        assertThat(lenient.verify(1L, cose, unchallenged)).isTrue();
+        assertThat(lenient.getStats()).containsEntry("unchallenged", 1L);
+    }
+
+    @Test
+    void acceptsOnlyUnexpiredChallengesSignedWithItsSecret() throws Exception {
+        byte[] cose = coseKey(p256, -7, 1);
+        WebAuthnVerifier first = verifier(true, Duration.ofMinutes(2), "shared-secret");
+        WebAuthnVerifier second = verifier(true, Duration.ofMinutes(2), "shared-secret");
+        WebAuthnVerifier shortLived = verifier(true, Duration.ofMillis(1), "");
+
+        // Another instance with the same secret accepts it; one with its own does not
+        assertThat(second.verify(1L, cose,
+                sign(p256, "SHA256withECDSA", first.issueChallenge(), ORIGIN, RP_ID, true))).isTrue();
+        assertThat(strict.verify(1L, cose,
+                sign(p256, "SHA256withECDSA", first.issueChallenge(), ORIGIN, RP_ID, true))).isFalse();
+
+        byte[] tampered = Base64.getUrlDecoder().decode(first.issueChallenge());
+        tampered[NONCE_END] ^= 1;
+        assertThat(first.verify(1L, cose, sign(p256, "SHA256withECDSA",
+                Base64.getUrlEncoder().withoutPadding().encodeToString(tampered), ORIGIN, RP_ID, true))).isFalse();
+
+        String expired = shortLived.issueChallenge();
+        Thread.sleep(5);
+        assertThat(shortLived.verify(1L, cose,
+                sign(p256, "SHA256withECDSA", expired, ORIGIN, RP_ID, true))).isFalse();
+    }
+
+    @Test
+    void issuingChallengesStoresNothingAndOnlyVerifiedOnesAreRemembered() throws Exception {
+        byte[] cose = coseKey(p256, -7, 1);
+        for (int i = 0; i < 1_000; i++) {
+            strict.issueChallenge();
+        }
+        String challenge = strict.issueChallenge();
+        assertThat(strict.getStats()).containsEntry("usedChallenges", 0L);
+
+        // A forged signature does not use the challenge up
+        assertThat(strict.verify(1L, cose,
+                sign(generate("secp256r1"), "SHA256withECDSA", challenge, ORIGIN, RP_ID, true))).isFalse();
+        assertThat(strict.verify(1L, cose,
+                sign(p256, "SHA256withECDSA", challenge, ORIGIN, RP_ID, true))).isTrue();
+        assertThat(strict.getStats()).containsEntry("usedChallenges", 1L);
+    }
+
+    @Test
+    void rejectsWrongOriginRpIdPresenceOrSignature() throws Exception {
+        byte[] cose = coseKey(p256, -7, 1);
+
+        assertThat(strict.verify(1L, cose,
+                sign(p256, "SHA256withECDSA", strict.issueChallenge(), "https://evil.example", RP_ID, true))).isFalse();
+        assertThat(strict.verify(1L, cose,
+                sign(p256, "SHA256withECDSA", strict.issueChallenge(), ORIGIN, "evil.example", true))).isFalse();
+        assertThat(strict.verify(1L, cose,
+                sign(p256, "SHA256withECDSA", strict.issueChallenge(), ORIGIN, RP_ID, false))).isFalse();
+        assertThat(strict.verify(1L, cose,
+                sign(generate("secp256r1"), "SHA256withECDSA", strict.issueChallenge(), ORIGIN, RP_ID, true))).isFalse();
+        assertThat(strict.getStats()).containsEntry("rejected", 4L);
+    }
+
+    @Test
+    void rejectsACoseAlgThatDoesNotMatchTheCurve() throws Exception {
+        Map<String, Object> es384OnP256 = sign(p256, "SHA384withECDSA", strict.issueChallenge(), ORIGIN, RP_ID, true);
+
+        assertThat(strict.verify(1L, coseKey(p256, -35, 1), es384OnP256)).isFalse();
+    }
+
+    @Test
+    void rejectsAnUnknownCoseAlgInsteadOfAssumingSha256() throws Exception {
+        Map<String, Object> assertion = sign(p256, "SHA256withECDSA", strict.issueChallenge(), ORIGIN, RP_ID, true);
+
+        assertThat(strict.verify(1L, coseKey(p256, -999, 1), assertion)).isFalse();
+    }
+
+    @Test
+    void hashesX509EcKeysByTheirCurve() throws Exception {
+        KeyPair p384 = generate("secp384r1");
+        Map<String, Object> assertion = sign(p384, "SHA384withECDSA", strict.issueChallenge(), ORIGIN, RP_ID, true);
+
+        assertThat(strict.verify(2L, p384.getPublic().getEncoded(), assertion)).isTrue();
+    }
+
+    @Test
+    void storesX509RsaKeysWithTheAlgTheBrowserReported() throws Exception {
+        KeyPair rsa = generateRsa();
+        byte[] stored = WebAuthnVerifier.enrollmentKey(rsa.getPublic().getEncoded(), -258);
+
+        assertThat(strict.verify(3L, stored,
+                sign(rsa, "SHA384withRSA", strict.issueChallenge(), ORIGIN, RP_ID, true))).isTrue();
+        assertThat(strict.verify(3L, stored,
+                sign(rsa, "SHA256withRSA", strict.issueChallenge(), ORIGIN, RP_ID, true))).isFalse();
+    }
+
+    @Test
+    void rejectsAnX509RsaKeyWithoutItsAlgAtEnrollment() {
+        byte[] spki = generateRsa().getPublic().getEncoded();
+
+        assertThatThrownBy(() -> WebAuthnVerifier.enrollmentKey(spki, null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("publicKeyAlgorithm");
+        assertThatThrownBy(() -> WebAuthnVerifier.enrollmentKey(spki, -7))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unsupported RSA alg: -7");
+        assertThatThrownBy(() -> WebAuthnVerifier.enrollmentKey(new byte[]{0x30, 0x00}, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void storesOtherKeysAsSent() throws Exception {
+        byte[] spki = p256.getPublic().getEncoded();
+        byte[] cose = coseKey(p256, -7, 1);
+
+        assertThat(WebAuthnVerifier.enrollmentKey(spki, null)).isEqualTo(spki);
+        assertThat(WebAuthnVerifier.enrollmentKey(cose, -7)).isEqualTo(cose);
+    }
+
+    @Test
+    void poolsParsedKeysUntilInvalidated() throws Exception {
+        byte[] cose = coseKey(p256, -7, 1);
+        strict.verify(1L, cose, sign(p256, "SHA256withECDSA", strict.issueChallenge(), ORIGIN, RP_ID, true));
+
+        // The pooled key is used even though the stored bytes changed
+        KeyPair replacement = generate("secp256r1");
+        byte[] replaced = coseKey(replacement, -7, 1);
+        assertThat(strict.verify(1L, replaced,
+                sign(replacement, "SHA256withECDSA", strict.issueChallenge(), ORIGIN, RP_ID, true))).isFalse();
+
+        strict.invalidateKey(1L);
+        assertThat(strict.verify(1L, replaced,
+                sign(replacement, "SHA256withECDSA", strict.issueChallenge(), ORIGIN, RP_ID, true))).isTrue();
+    }
+
+    private static WebAuthnVerifier verifier(boolean requireChallenge) {
+        return verifier(requireChallenge, Duration.ofMinutes(2), "");
+    }
+
+    private static WebAuthnVerifier verifier(boolean requireChallenge, Duration challengeTtl, String challengeSecret) {
+        return new WebAuthnVerifier(RP_ID, ORIGIN + "/", requireChallenge, challengeTtl, challengeSecret, 100);
+    }
+
+    private static KeyPair generate(String curve) {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec(curve));
+            return generator.generateKeyPair();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static KeyPair generateRsa() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] coseKey(KeyPair keyPair, int alg, int crv) throws Exception {
+        ECPublicKey publicKey = (ECPublicKey) keyPair.getPublic();
+        int size = (publicKey.getParams().getCurve().getField().getFieldSize() + 7) / 8;
+
+        Map<Integer, Object> cose = new LinkedHashMap<>();
+        cose.put(1, 2);
+        cose.put(3, alg);
+        cose.put(-1, crv);
+        cose.put(-2, unsigned(publicKey.getW().getAffineX(), size));
+        cose.put(-3, unsigned(publicKey.getW().getAffineY(), size));
+        return new CBORMapper().writeValueAsBytes(cose);
+    }
+
+    private static Map<String, Object> sign(KeyPair keyPair, String algorithm, String challenge, String origin,
+                                            String rpId, boolean userPresent) throws Exception {
+        byte[] clientData = """
+            {"type":"webauthn.get","challenge":"%s","origin":"%s"}""".formatted(challenge, origin)
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] authenticatorData = ByteBuffer.allocate(37)
+                .put(sha256(rpId.getBytes(StandardCharsets.UTF_8)))
+                .put((byte) (userPresent ? 0x01 : 0x00))
+                .putInt(1)
+                .array();
+
+        Signature signature = Signature.getInstance(algorithm);
+        signature.initSign(keyPair.getPrivate());
+        signature.update(authenticatorData);
+        signature.update(sha256(clientData));
+
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return Map.of(
+                "signature", encoder.encodeToString(signature.sign()),
+                "authenticatorData", encoder.encodeToString(authenticatorData),
+                "clientDataJSON", encoder.encodeToString(clientData));
+    }
+
+    private static String randomChallenge() {
+        byte[] challenge = new byte[32];
+        new SecureRandom().nextBytes(challenge);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(challenge);
+    }
+
+    private static byte[] unsigned(BigInteger value, int size) {
+        byte[] bytes = value.toByteArray();
+        byte[] result = new byte[size];
+        int copy = Math.min(bytes.length, size);
+        System.arraycopy(bytes, bytes.length - copy, result, size - copy, copy);
+        return result;
+    }
+
+    private static byte[] sha256(byte[] input) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(input);
+    }
+}